@@ -0,0 +1,64 @@
+package systems.opalia.commons.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.commons.scripting.calculator.{Calculator, FunctionApp}
+import systems.opalia.commons.scripting.js.JsScriptService
+import systems.opalia.interfaces.scripting.ScriptSession
+import systems.opalia.interfaces.soa.Terminatable
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class CalculatorBenchmark {
+
+  var session: ScriptSession = _
+  var calc: Calculator = _
+  var recursive: FunctionApp = _
+
+  @Setup
+  def setup(): Unit = {
+
+    session = (new JsScriptService()).newScriptEngine().newSession()
+    calc = new Calculator(session)
+
+    calc.bindDefaultFunctions()
+
+    calc.bindFunctions(
+      """
+        |foo a b :
+        |  if (b = 0)
+        |    a
+        |    (foo (a + b) (b - 1))
+        |
+      """.stripMargin)
+
+    recursive = calc.getFunction("foo")
+  }
+
+  @TearDown
+  def tearDown(): Unit =
+    session match {
+      case x: Terminatable[_] => x.shutdown()
+      case _ =>
+    }
+
+  @Benchmark
+  def evalArithmetic(): Double =
+    calc.eval("(3 + 4) * 2 ^ 3 - 10 / 4").value()
+
+  @Benchmark
+  def evalLambda(): Double =
+    calc.eval("((f a b) c . f c 2) (a b . a * b) 3").value()
+
+  @Benchmark
+  def invokeRecursive(): Double =
+    recursive.invoke(Vector(
+      FunctionApp.wrap(FunctionApp.fromDouble(3)),
+      FunctionApp.wrap(FunctionApp.fromDouble(100))
+    )).value()
+}
@@ -0,0 +1,50 @@
+package systems.opalia.commons.benchmarks
+
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.commons.codec.{Base64, Hex}
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class CodecBenchmark {
+
+  @Param(Array("32", "4096", "1048576"))
+  var size: Int = _
+
+  var bytes: Array[Byte] = _
+  var hex: String = _
+  var base64: String = _
+
+  @Setup
+  def setup(): Unit = {
+
+    bytes = new Array[Byte](size)
+
+    new Random(size).nextBytes(bytes)
+
+    hex = Hex.encode(bytes)
+    base64 = Base64.encode(bytes)
+  }
+
+  @Benchmark
+  def encodeHex(): String =
+    Hex.encode(bytes)
+
+  @Benchmark
+  def decodeHex(): Array[Byte] =
+    Hex.decodeToBytes(hex)
+
+  @Benchmark
+  def encodeBase64(): String =
+    Base64.encode(bytes)
+
+  @Benchmark
+  def decodeBase64(): Array[Byte] =
+    Base64.decodeToBytes(base64)
+}
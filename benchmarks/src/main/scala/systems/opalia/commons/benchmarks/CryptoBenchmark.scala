@@ -0,0 +1,57 @@
+package systems.opalia.commons.benchmarks
+
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.commons.crypto.{Cipher, CipherSettings, Digest, Provider}
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class CryptoBenchmark {
+
+  @Param(Array("64", "16384"))
+  var size: Int = _
+
+  var bytes: Array[Byte] = _
+  var encrypted: IndexedSeq[Byte] = _
+
+  val sha256 = Digest(Digest.Algorithm.SHA256)
+  val sha256Jdk = Digest(Digest.Algorithm.SHA256, Provider.Jdk)
+  val hmac = Digest(Digest.Algorithm.SHA256, "secret key")
+  val cipher = Cipher(CipherSettings.AES_GCM, "secret key", Cipher.KeyDerivation.Session())
+
+  @Setup
+  def setup(): Unit = {
+
+    bytes = new Array[Byte](size)
+
+    new Random(size).nextBytes(bytes)
+
+    encrypted = cipher.encrypt(bytes.toIndexedSeq)
+  }
+
+  @Benchmark
+  def signSha256(): IndexedSeq[Byte] =
+    sha256.sign(bytes, 0, bytes.length)
+
+  @Benchmark
+  def signSha256Jdk(): IndexedSeq[Byte] =
+    sha256Jdk.sign(bytes, 0, bytes.length)
+
+  @Benchmark
+  def signHmacSha256(): IndexedSeq[Byte] =
+    hmac.sign(bytes, 0, bytes.length)
+
+  @Benchmark
+  def encryptAesGcm(): IndexedSeq[Byte] =
+    cipher.encrypt(bytes.toIndexedSeq)
+
+  @Benchmark
+  def decryptAesGcm(): IndexedSeq[Byte] =
+    cipher.decrypt(encrypted)
+}
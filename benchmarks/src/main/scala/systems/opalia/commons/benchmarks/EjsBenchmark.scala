@@ -0,0 +1,93 @@
+package systems.opalia.commons.benchmarks
+
+import java.io.IOException
+import java.nio.file.{Path, Paths}
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import scala.collection.immutable.ListMap
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, ExecutionContext, Future}
+import scala.io.Source
+import systems.opalia.commons.scripting.ejs.{Ejs, EjsConfiguration, EjsDefaultConfiguration}
+import systems.opalia.commons.scripting.js.JsScriptService
+import systems.opalia.interfaces.json.JsonAst
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class EjsBenchmark {
+
+  val files = Map(
+
+    Paths.get("/inc/main.html.ejs") ->
+      """
+        |<% macros.main = function(title, contentBody) { -%>
+        |<!DOCTYPE html>
+        |<html>
+        |<head>
+        |    <title><%= title %></title>
+        |</head>
+        |<body>
+        |<% contentBody(); -%>
+        |</body>
+        |</html>
+        |<% } -%>
+      """.stripMargin.trim,
+
+    Paths.get("/content/list.html.ejs") ->
+      """
+        |<% include ../inc/main.html.ejs -%>
+        |<% macros.main(locals.title, content); -%>
+        |<% function content() { -%>
+        |    <ul>
+        |<% locals.items.forEach(function(item) { -%>
+        |        <li><%= item %></li>
+        |<% }); -%>
+        |    </ul>
+        |<% } -%>
+      """.stripMargin.trim)
+
+  val path = Paths.get("/content/list.html.ejs")
+
+  val data =
+    JsonAst.JsonObject(ListMap(
+      "title" -> JsonAst.JsonString("Page Title"),
+      "items" -> JsonAst.JsonArray((1 to 100).map(i => JsonAst.JsonString(s"item <$i>")).toVector)
+    ))
+
+  var ejs: Ejs = _
+  var template: Ejs#Template = _
+
+  @Setup
+  def setup(): Unit = {
+
+    val scriptEngine = (new JsScriptService()).newScriptEngine()
+
+    ejs =
+      Ejs(scriptEngine, new EjsConfiguration {
+
+        val openWith = EjsDefaultConfiguration.openWith
+        val closeWith = EjsDefaultConfiguration.closeWith
+
+        def resolve(path: Path)
+                   (implicit executor: ExecutionContext): Future[Source] =
+          Future.successful(files.get(path).map(Source.fromString)
+            .getOrElse(throw new IOException(s"Cannot resolve path $path.")))
+      })
+
+    template = Await.result(ejs.compile(path), Duration.Inf)
+  }
+
+  @Benchmark
+  def renderTemplate(): String =
+    Await.result(template.render(data), Duration.Inf)
+
+  @Benchmark
+  def compileAndRender(): String =
+    Await.result(ejs.render(path, data), Duration.Inf)
+}
@@ -0,0 +1,33 @@
+package systems.opalia.commons.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.commons.control.geodesy.{Ellipsoid, InverseResult}
+import systems.opalia.commons.control.units._
+import systems.opalia.commons.number._
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class GeodesyBenchmark {
+
+  val pDresden = GeoLocation(51.049259.toRadians, 13.73836.toRadians)
+  val pTokyo = GeoLocation(35.683889.toRadians, 139.774444.toRadians)
+  val pMelbourne = GeoLocation(-37.8.toRadians, 144.95.toRadians)
+
+  @Benchmark
+  def solveInverseProblemWGS84(): InverseResult =
+    Ellipsoid.WGS84.solveInverseProblem(pDresden, pTokyo)
+
+  @Benchmark
+  def solveInverseProblemWGS84Southern(): InverseResult =
+    Ellipsoid.WGS84.solveInverseProblem(pDresden, pMelbourne)
+
+  @Benchmark
+  def solveInverseProblemSphere(): InverseResult =
+    Ellipsoid.Sphere.solveInverseProblem(pDresden, pTokyo)
+}
@@ -0,0 +1,38 @@
+package systems.opalia.commons.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.commons.identifier.ObjectId
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class IdentifierBenchmark {
+
+  val target = new Array[Byte](ObjectId.length * 1024)
+
+  @Benchmark
+  def newObjectId(): ObjectId =
+    ObjectId.getNew
+
+  @Benchmark
+  @Threads(4)
+  def newObjectIdContended(): ObjectId =
+    ObjectId.getNew
+
+  @Benchmark
+  @OperationsPerInvocation(1024)
+  def fillObjectIds(): Array[Byte] = {
+
+    ObjectId.fill(target, 0, 1024)
+    target
+  }
+
+  @Benchmark
+  def renderObjectId(): String =
+    ObjectId.getNew.toString
+}
@@ -0,0 +1,85 @@
+package systems.opalia.commons.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.commons.scripting.oql.{Ast, ObjectQueryLanguage}
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class ObjectQueryLanguageBenchmark {
+
+  case class Category(id: Int, name: String)
+
+  case class Item(id: Int, name: String, price: BigDecimal, category: Category)
+
+  @Param(Array("1000", "100000"))
+  var size: Int = _
+
+  var oql: ObjectQueryLanguage = _
+
+  @Setup
+  def setup(): Unit = {
+
+    val categories = (0 until 16).map(i => Category(i, s"category $i"))
+
+    val items =
+      (0 until size).map {
+        i =>
+
+          Item(i, s"item ${(i * 7919) % size}", BigDecimal(i % 1000) / 10, categories(i % categories.size))
+      }
+
+    oql =
+      new ObjectQueryLanguage(items.toList) {
+
+        def checkRootKey(obj: AnyRef, key: String): Boolean =
+          obj match {
+            case item: Item => item.id.toString == key
+            case category: Category => category.id.toString == key
+            case _ => false
+          }
+
+        def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+          (obj, segment) match {
+            case (item: Item, Ast.FieldSegment("category")) => Some(item.category)
+            case _ => None
+          }
+
+        def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+          (obj, segment) match {
+            case (item: Item, Ast.FieldSegment("id")) => Some(item.id)
+            case (item: Item, Ast.FieldSegment("name")) => Some(item.name)
+            case (item: Item, Ast.FieldSegment("price")) => Some(item.price)
+            case (category: Category, Ast.FieldSegment("id")) => Some(category.id)
+            case (category: Category, Ast.FieldSegment("name")) => Some(category.name)
+            case _ => None
+          }
+      }
+  }
+
+  @Benchmark
+  def filter(): ObjectQueryLanguage.Filter =
+    oql
+      .doFilter()
+      .filter("and(price?ge(10),price?lt(50),category.name?eq(category 3))")
+
+  @Benchmark
+  def order(): ObjectQueryLanguage.Pagination =
+    oql
+      .doFilter()
+      .doPagination()
+      .order("(+)category.id;(-)name")
+
+  @Benchmark
+  def orderAndLimit(): ObjectQueryLanguage.Pagination =
+    oql
+      .doFilter()
+      .doPagination()
+      .order("(-)price")
+      .limit(10)
+}
@@ -1,37 +1,70 @@
 package systems.opalia.commons.codec
 
-import java.nio.charset.Charset
+import java.io.{InputStream, OutputStream}
+import java.nio.ByteBuffer
+import java.nio.charset.{Charset, StandardCharsets}
+import java.util.regex.Pattern
 import java.util.{Base64 => Base64Handler}
 import scala.util.Try
 import systems.opalia.interfaces.rendering.Renderer
 
 
-object Base64
+class Base64 private(encoder: Base64Handler.Encoder,
+                     decoder: Base64Handler.Decoder,
+                     pattern: Pattern,
+                     lineSeparated: Boolean)
   extends Codec {
 
   def encode(data: Seq[Byte]): String =
     encode(data, Renderer.appDefaultCharset)
 
   def encode(data: Seq[Byte], charset: Charset): String =
-    new String(Base64Handler.getEncoder.encode(data.toArray), charset)
+    new String(encoder.encode(data.toArray), charset)
+
+  def encode(data: Array[Byte]): String =
+    new String(encoder.encode(data), StandardCharsets.US_ASCII)
+
+  def encode(data: ByteBuffer): String =
+    StandardCharsets.US_ASCII.decode(encoder.encode(data)).toString
+
+  def encodeToBytes(data: Array[Byte]): Array[Byte] =
+    encoder.encode(data)
+
+  def encodeToBuffer(data: ByteBuffer): ByteBuffer =
+    encoder.encode(data)
+
+  def encodeTo(out: OutputStream): OutputStream =
+    encoder.wrap(out)
 
   def encodeFromString(data: String): String =
     encodeFromString(data, Renderer.appDefaultCharset)
 
   def encodeFromString(data: String, charset: Charset): String =
-    encode(data.getBytes(charset), charset)
+    new String(encoder.encode(data.getBytes(charset)), charset)
 
   def decode(data: String): IndexedSeq[Byte] =
     decode(data, Renderer.appDefaultCharset)
 
   def decode(data: String, charset: Charset): IndexedSeq[Byte] =
-    Base64Handler.getDecoder.decode(data.getBytes(charset)).toIndexedSeq
+    decoder.decode(data.getBytes(charset))
+
+  def decodeToBytes(data: String): Array[Byte] =
+    decoder.decode(data)
+
+  def decodeToBytes(data: Array[Byte]): Array[Byte] =
+    decoder.decode(data)
+
+  def decodeToBuffer(data: ByteBuffer): ByteBuffer =
+    decoder.decode(data)
+
+  def wrap(in: InputStream): InputStream =
+    decoder.wrap(in)
 
   def decodeToString(data: String): String =
     decodeToString(data, Renderer.appDefaultCharset)
 
   def decodeToString(data: String, charset: Charset): String =
-    new String(decode(data, charset).toArray, charset)
+    new String(decoder.decode(data.getBytes(charset)), charset)
 
   def decodeOpt(data: String): Option[IndexedSeq[Byte]] =
     decodeOpt(data, Renderer.appDefaultCharset)
@@ -43,8 +76,33 @@ object Base64
     decodeToStringOpt(data, Renderer.appDefaultCharset)
 
   def decodeToStringOpt(data: String, charset: Charset): Option[String] =
-    decodeOpt(data, charset).map(x => new String(x.toArray, charset))
+    Try(decodeToString(data, charset)).toOption
 
   def isValid(data: String): Boolean =
-    data.matches("""^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$""")
+    if (lineSeparated)
+      pattern.matcher(data.replace("\r\n", "")).matches
+    else
+      pattern.matcher(data).matches
+}
+
+object Base64
+  extends Base64(
+    Base64Handler.getEncoder,
+    Base64Handler.getDecoder,
+    Pattern.compile("""^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$"""),
+    false) {
+
+  val UrlSafe: Codec =
+    new Base64(
+      Base64Handler.getUrlEncoder,
+      Base64Handler.getUrlDecoder,
+      Pattern.compile("""^([A-Za-z0-9_-]{4})*([A-Za-z0-9_-]{4}|[A-Za-z0-9_-]{3}=?|[A-Za-z0-9_-]{2}(==)?)$"""),
+      false)
+
+  val Mime: Codec =
+    new Base64(
+      Base64Handler.getMimeEncoder,
+      Base64Handler.getMimeDecoder,
+      Pattern.compile("""^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$"""),
+      true)
 }
@@ -1,5 +1,7 @@
 package systems.opalia.commons.codec
 
+import java.io.{InputStream, OutputStream}
+import java.nio.ByteBuffer
 import java.nio.charset.Charset
 
 
@@ -9,6 +11,16 @@ trait Codec {
 
   def encode(data: Seq[Byte], charset: Charset): String
 
+  def encode(data: Array[Byte]): String
+
+  def encode(data: ByteBuffer): String
+
+  def encodeToBytes(data: Array[Byte]): Array[Byte]
+
+  def encodeToBuffer(data: ByteBuffer): ByteBuffer
+
+  def encodeTo(out: OutputStream): OutputStream
+
   def encodeFromString(data: String): String
 
   def encodeFromString(data: String, charset: Charset): String
@@ -17,6 +29,14 @@ trait Codec {
 
   def decode(data: String, charset: Charset): IndexedSeq[Byte]
 
+  def decodeToBytes(data: String): Array[Byte]
+
+  def decodeToBytes(data: Array[Byte]): Array[Byte]
+
+  def decodeToBuffer(data: ByteBuffer): ByteBuffer
+
+  def wrap(in: InputStream): InputStream
+
   def decodeToString(data: String): String
 
   def decodeToString(data: String, charset: Charset): String
@@ -1,48 +1,210 @@
 package systems.opalia.commons.codec
 
-import java.nio.charset.Charset
+import java.io.{InputStream, OutputStream}
+import java.nio.charset.{Charset, StandardCharsets}
+import java.nio.{ByteBuffer, CharBuffer}
+import scala.collection.mutable
 import scala.util.Try
-import systems.opalia.commons.number.NumberUtils
 import systems.opalia.interfaces.rendering.Renderer
 
 
 object Hex
   extends Codec {
 
+  private[codec] val digits: Array[Char] =
+    "0123456789abcdef".toCharArray
+
+  private val values: Array[Int] = {
+
+    val table = Array.fill(128)(-1)
+
+    for (i <- 0 until 10)
+      table('0' + i) = i
+
+    for (i <- 0 until 6) {
+
+      table('a' + i) = 10 + i
+      table('A' + i) = 10 + i
+    }
+
+    table
+  }
+
   def encode(data: Seq[Byte]): String =
-    encode(data, Renderer.appDefaultCharset)
+    data match {
+      case x: mutable.WrappedArray.ofByte => encode(x.array)
+      case x => encode(x.toArray)
+    }
 
   def encode(data: Seq[Byte], charset: Charset): String =
-    data.map("%02x" format _).mkString
+    encode(data)
+
+  def encode(data: Array[Byte]): String =
+    encode(data, 0, data.length)
+
+  def encode(data: Array[Byte], offset: Int, length: Int): String = {
+
+    val chars = new Array[Char](length * 2)
+
+    encode(data, offset, length, chars, 0)
+
+    new String(chars)
+  }
+
+  def encode(data: ByteBuffer): String = {
+
+    val chars = CharBuffer.allocate(data.remaining * 2)
+
+    encode(data, chars)
+
+    new String(chars.array)
+  }
+
+  def encode(source: Array[Byte], sourceOffset: Int, length: Int, target: Array[Char], targetOffset: Int): Unit = {
+
+    var i = 0
+
+    while (i < length) {
+
+      val value = source(sourceOffset + i)
+
+      target(targetOffset + i * 2) = digits((value >> 4) & 0xF)
+      target(targetOffset + i * 2 + 1) = digits(value & 0xF)
+
+      i += 1
+    }
+  }
+
+  def encode(source: ByteBuffer, target: CharBuffer): Unit = {
+
+    if (target.remaining < source.remaining * 2)
+      throw new IllegalArgumentException(
+        s"Expect at least ${source.remaining * 2} characters of space in target buffer but got ${target.remaining}.")
+
+    if (source.hasArray && target.hasArray) {
+
+      val length = source.remaining
+
+      encode(
+        source.array,
+        source.arrayOffset + source.position,
+        length,
+        target.array,
+        target.arrayOffset + target.position)
+
+      source.position(source.position + length)
+      target.position(target.position + length * 2)
+
+    } else
+      while (source.hasRemaining) {
+
+        val value = source.get
+
+        target.put(digits((value >> 4) & 0xF))
+        target.put(digits(value & 0xF))
+      }
+  }
+
+  def encodeToBytes(data: Array[Byte]): Array[Byte] =
+    encode(data).getBytes(StandardCharsets.US_ASCII)
+
+  def encodeToBuffer(data: ByteBuffer): ByteBuffer = {
+
+    val target = ByteBuffer.allocate(data.remaining * 2)
+
+    while (data.hasRemaining) {
+
+      val value = data.get
+
+      target.put(digits((value >> 4) & 0xF).toByte)
+      target.put(digits(value & 0xF).toByte)
+    }
+
+    target.flip()
+    target
+  }
+
+  def encodeTo(out: OutputStream): OutputStream =
+    new HexEncodingOutputStream(out)
 
   def encodeFromString(data: String): String =
     encodeFromString(data, Renderer.appDefaultCharset)
 
   def encodeFromString(data: String, charset: Charset): String =
-    encode(data.getBytes(charset), charset)
+    encode(data.getBytes(charset))
 
   def decode(data: String): IndexedSeq[Byte] =
     decode(data, Renderer.appDefaultCharset)
 
   def decode(data: String, charset: Charset): IndexedSeq[Byte] =
-    data.toList
-      .sliding(2, 2)
-      .map {
-        octet =>
+    decodeToBytes(data)
 
-          if (octet.size != 2)
-            throw new IllegalArgumentException("Expect octet sequence.")
+  def decodeToBytes(data: String): Array[Byte] = {
 
-          NumberUtils.hex2Long(octet, 1).toByte
+    if (data.length % 2 != 0)
+      throw new IllegalArgumentException("Expect octet sequence.")
 
-      }
-      .toVector
+    val bytes = new Array[Byte](data.length / 2)
+    var i = 0
+
+    while (i < bytes.length) {
+
+      bytes(i) = ((value(data.charAt(i * 2)) << 4) | value(data.charAt(i * 2 + 1))).toByte
+
+      i += 1
+    }
+
+    bytes
+  }
+
+  def decodeToBytes(data: Array[Byte]): Array[Byte] =
+    decodeToBytes(new String(data, StandardCharsets.US_ASCII))
+
+  def decodeToBuffer(data: ByteBuffer): ByteBuffer = {
+
+    if (data.remaining % 2 != 0)
+      throw new IllegalArgumentException("Expect octet sequence.")
+
+    val target = ByteBuffer.allocate(data.remaining / 2)
+
+    while (data.hasRemaining) {
+
+      val high = value((data.get & 0xFF).toChar)
+      val low = value((data.get & 0xFF).toChar)
+
+      target.put(((high << 4) | low).toByte)
+    }
+
+    target.flip()
+    target
+  }
+
+  def wrap(in: InputStream): InputStream =
+    new HexDecodingInputStream(in)
+
+  def decode(source: CharBuffer, target: ByteBuffer): Unit = {
+
+    if (source.remaining % 2 != 0)
+      throw new IllegalArgumentException("Expect octet sequence.")
+
+    if (target.remaining < source.remaining / 2)
+      throw new IllegalArgumentException(
+        s"Expect at least ${source.remaining / 2} bytes of space in target buffer but got ${target.remaining}.")
+
+    while (source.hasRemaining) {
+
+      val high = value(source.get)
+      val low = value(source.get)
+
+      target.put(((high << 4) | low).toByte)
+    }
+  }
 
   def decodeToString(data: String): String =
     decodeToString(data, Renderer.appDefaultCharset)
 
   def decodeToString(data: String, charset: Charset): String =
-    new String(decode(data, charset).toArray, charset)
+    new String(decodeToBytes(data), charset)
 
   def decodeOpt(data: String): Option[IndexedSeq[Byte]] =
     decodeOpt(data, Renderer.appDefaultCharset)
@@ -54,8 +216,17 @@ object Hex
     decodeToStringOpt(data, Renderer.appDefaultCharset)
 
   def decodeToStringOpt(data: String, charset: Charset): Option[String] =
-    decodeOpt(data, charset).map(x => new String(x.toArray, charset))
+    Try(decodeToString(data, charset)).toOption
 
   def isValid(data: String): Boolean =
-    data.matches( """^([0-9A-Fa-f]{2})+$""")
+    data.nonEmpty && data.length % 2 == 0 && (0 until data.length).forall(i => isDigit(data.charAt(i)))
+
+  private[codec] def isDigit(char: Char): Boolean =
+    char < 128 && values(char) >= 0
+
+  private[codec] def value(char: Char): Int =
+    if (isDigit(char))
+      values(char)
+    else
+      throw new IllegalArgumentException(s"Expect hexadecimal digit but got '$char'.")
 }
@@ -0,0 +1,96 @@
+package systems.opalia.commons.codec
+
+import java.io.{FilterInputStream, IOException, InputStream}
+
+
+class HexDecodingInputStream(in: InputStream, bufferSize: Int)
+  extends FilterInputStream(in) {
+
+  if (bufferSize < 2)
+    throw new IllegalArgumentException(s"Expect buffer size of at least 2 but got $bufferSize.")
+
+  private val buffer = new Array[Byte](bufferSize)
+
+  def this(in: InputStream) =
+    this(in, 8192)
+
+  override def read(): Int = {
+
+    val high = in.read()
+
+    if (high == -1)
+      -1
+    else {
+
+      val low = in.read()
+
+      if (low == -1)
+        throw new IOException("Expect octet sequence.")
+
+      (decode(high) << 4) | decode(low)
+    }
+  }
+
+  override def read(data: Array[Byte], offset: Int, length: Int): Int = {
+
+    if (offset < 0 || length < 0 || offset + length > data.length)
+      throw new IndexOutOfBoundsException(s"Cannot access range $offset until ${offset + length}.")
+
+    if (length == 0)
+      0
+    else {
+
+      val count = readFully(math.min(length.toLong * 2, (buffer.length - buffer.length % 2).toLong).toInt)
+
+      if (count == 0)
+        -1
+      else if (count % 2 != 0)
+        throw new IOException("Expect octet sequence.")
+      else {
+
+        for (i <- 0 until count / 2)
+          data(offset + i) = ((decode(buffer(i * 2)) << 4) | decode(buffer(i * 2 + 1))).toByte
+
+        count / 2
+      }
+    }
+  }
+
+  override def skip(n: Long): Long = {
+
+    var skipped = 0L
+
+    while (skipped < n && read() != -1)
+      skipped += 1
+
+    skipped
+  }
+
+  override def available(): Int =
+    in.available() / 2
+
+  override def markSupported(): Boolean =
+    false
+
+  private def readFully(length: Int): Int = {
+
+    var count = 0
+    var result = 0
+
+    while (count < length && result != -1) {
+
+      result = in.read(buffer, count, length - count)
+
+      if (result > 0)
+        count += result
+    }
+
+    count
+  }
+
+  private def decode(value: Int): Int =
+    if (Hex.isDigit(value.toChar))
+      Hex.value(value.toChar)
+    else
+      throw new IOException(s"Expect hexadecimal digit but got byte $value.")
+}
@@ -0,0 +1,62 @@
+package systems.opalia.commons.codec
+
+import java.io.{FilterOutputStream, OutputStream}
+
+
+class HexEncodingOutputStream(out: OutputStream, bufferSize: Int)
+  extends FilterOutputStream(out) {
+
+  if (bufferSize < 2)
+    throw new IllegalArgumentException(s"Expect buffer size of at least 2 but got $bufferSize.")
+
+  private val buffer = new Array[Byte](bufferSize - bufferSize % 2)
+  private var position = 0
+
+  def this(out: OutputStream) =
+    this(out, 8192)
+
+  override def write(value: Int): Unit = {
+
+    if (position == buffer.length)
+      flushBuffer()
+
+    buffer(position) = Hex.digits((value >> 4) & 0xF).toByte
+    buffer(position + 1) = Hex.digits(value & 0xF).toByte
+    position += 2
+  }
+
+  override def write(data: Array[Byte], offset: Int, length: Int): Unit = {
+
+    if (offset < 0 || length < 0 || offset + length > data.length)
+      throw new IndexOutOfBoundsException(s"Cannot access range $offset until ${offset + length}.")
+
+    var i = offset
+
+    while (i < offset + length) {
+
+      if (position == buffer.length)
+        flushBuffer()
+
+      val value = data(i)
+
+      buffer(position) = Hex.digits((value >> 4) & 0xF).toByte
+      buffer(position + 1) = Hex.digits(value & 0xF).toByte
+      position += 2
+      i += 1
+    }
+  }
+
+  override def flush(): Unit = {
+
+    flushBuffer()
+    out.flush()
+  }
+
+  private def flushBuffer(): Unit = {
+
+    if (position > 0)
+      out.write(buffer, 0, position)
+
+    position = 0
+  }
+}
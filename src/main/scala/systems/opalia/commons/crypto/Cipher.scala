@@ -1,10 +1,13 @@
 package systems.opalia.commons.crypto
 
 import java.io._
+import java.nio.ByteBuffer
 import java.nio.charset.Charset
-import java.security.{SecureRandom, Security}
+import java.security.{GeneralSecurityException, SecureRandom}
+import javax.crypto.spec.SecretKeySpec
 import javax.crypto.{CipherInputStream, Cipher => JCipher}
-import org.bouncycastle.jce.provider.BouncyCastleProvider
+import systems.opalia.commons.utility.LruCache
+import systems.opalia.commons.utility.instrumentation.Instrumentation
 import systems.opalia.interfaces.rendering.Renderer
 
 
@@ -31,21 +34,204 @@ trait Cipher {
 
 object Cipher {
 
-  def apply(settings: CipherSettings, secret: String): Cipher = {
+  sealed trait KeyDerivation
+
+  object KeyDerivation {
+
+    case object PerMessage
+      extends KeyDerivation
+
+    // per-message ciphertexts whose random salt starts with the session magic are decrypted as a fallback by
+    // the byte array variant only; stream decryption reads the envelope once and cannot retry with another one
+    case class Session(cacheSize: Int = 64)
+      extends KeyDerivation
+
+  }
+
+  private val sessionMagic = Array[Byte](0x4F, 0x43, 0x45, 0x01)
+  private val sessionSaltLength = 32
+
+  private val encryptTimer = Instrumentation.timer("crypto.cipher.encrypt")
+  private val decryptTimer = Instrumentation.timer("crypto.cipher.decrypt")
+
+  def apply(settings: CipherSettings, secret: String): Cipher =
+    apply(settings, secret, KeyDerivation.PerMessage)
+
+  def apply(settings: CipherSettings, secret: String, keyDerivation: KeyDerivation): Cipher = {
 
     if (secret.isEmpty)
       throw new IllegalArgumentException("Expect non empty secret.")
 
-    Security.addProvider(new BouncyCastleProvider())
+    Provider.register()
 
-    create(settings, secret)
+    keyDerivation match {
+      case KeyDerivation.PerMessage =>
+        create(settings, new PerMessageEnvelope(settings, secret))
+      case KeyDerivation.Session(cacheSize) =>
+        create(settings, new SessionEnvelope(settings, secret, cacheSize))
+    }
   }
 
-  private def create(_settings: CipherSettings, secret: String): Cipher = {
+  private abstract class Envelope(settings: CipherSettings) {
 
-    new Cipher {
+    protected val random = new SecureRandom()
+
+    private val handlers =
+      new EnginePool[JCipher](() => Provider.BouncyCastle.createCipher(settings.transformation), _ => ())
+
+    val probeLength: Int
+
+    val maximumHeaderLength: Int
+
+    def headerLength(header: Array[Byte]): Int
+
+    def createEncryption(): (Array[Byte], JCipher)
+
+    def createDecryption(header: Array[Byte]): JCipher
+
+    def alternative(header: Array[Byte]): Option[Envelope] =
+      None
+
+    def release(handler: JCipher): Unit =
+      handlers.release(handler)
+
+    protected def createHandler(enc: Boolean, key: SecretKeySpec, iv: Array[Byte], aad: Array[Byte]): JCipher = {
+
+      val handler = handlers.borrow()
+
+      handler.init(
+        if (enc) JCipher.ENCRYPT_MODE else JCipher.DECRYPT_MODE,
+        key,
+        settings.createAlgorithmParameterSpec(iv)
+      )
+
+      if (settings.supportAEAD)
+        handler.updateAAD(aad)
+
+      handler
+    }
+
+    protected def nextBytes(length: Int): Array[Byte] = {
+
+      val bytes = new Array[Byte](length)
+
+      random.nextBytes(bytes)
+
+      bytes
+    }
+  }
+
+  private class PerMessageEnvelope(settings: CipherSettings, secret: String)
+    extends Envelope(settings) {
+
+    val probeLength: Int = 0
+
+    val maximumHeaderLength: Int = settings.keySaltLength + settings.ivLength
+
+    def headerLength(header: Array[Byte]): Int =
+      maximumHeaderLength
+
+    def createEncryption(): (Array[Byte], JCipher) = {
+
+      val salt = nextBytes(settings.keySaltLength)
+      val iv = nextBytes(settings.ivLength)
+      val header = salt ++ iv
+
+      (header, createHandler(enc = true, settings.createSecretKeySpec(secret, salt), iv, header))
+    }
+
+    def createDecryption(header: Array[Byte]): JCipher = {
+
+      val salt = header.slice(0, settings.keySaltLength)
+      val iv = header.slice(settings.keySaltLength, settings.keySaltLength + settings.ivLength)
+
+      createHandler(enc = false, settings.createSecretKeySpec(secret, salt), iv, header)
+    }
+  }
+
+  private class SessionEnvelope(settings: CipherSettings, secret: String, cacheSize: Int)
+    extends Envelope(settings) {
+
+    private val fallback = new PerMessageEnvelope(settings, secret)
+    private val masterKeySalt = nextBytes(settings.masterKeySaltLength)
+    private val masterKey = settings.createMasterKey(secret, masterKeySalt)
+    private val masterKeys = new LruCache[ByteBuffer, Array[Byte]](cacheSize)
+
+    private val sessionHeaderLength =
+      sessionMagic.length + settings.masterKeySaltLength + sessionSaltLength + settings.ivLength
+
+    val probeLength: Int = sessionMagic.length
+
+    val maximumHeaderLength: Int = math.max(sessionHeaderLength, fallback.maximumHeaderLength)
+
+    def headerLength(header: Array[Byte]): Int =
+      if (isSessionHeader(header))
+        sessionHeaderLength
+      else
+        fallback.headerLength(header)
+
+    def createEncryption(): (Array[Byte], JCipher) = {
+
+      val salt = nextBytes(sessionSaltLength)
+      val iv = nextBytes(settings.ivLength)
+      val header = sessionMagic ++ masterKeySalt ++ salt ++ iv
+
+      (header, createHandler(enc = true, settings.createSecretKeySpec(masterKey, salt), iv, header))
+    }
+
+    def createDecryption(header: Array[Byte]): JCipher =
+      if (isSessionHeader(header)) {
+
+        val saltOffset = sessionMagic.length + settings.masterKeySaltLength
+        val ivOffset = saltOffset + sessionSaltLength
+
+        val headerMasterKeySalt = header.slice(sessionMagic.length, saltOffset)
+        val salt = header.slice(saltOffset, ivOffset)
+        val iv = header.slice(ivOffset, ivOffset + settings.ivLength)
+
+        val headerMasterKey =
+          if (headerMasterKeySalt.sameElements(masterKeySalt))
+            masterKey
+          else
+            masterKeys.getOrElseUpdate(
+              ByteBuffer.wrap(headerMasterKeySalt),
+              settings.createMasterKey(secret, headerMasterKeySalt))
+
+        createHandler(enc = false, settings.createSecretKeySpec(headerMasterKey, salt), iv, header)
+
+      } else
+        fallback.createDecryption(header)
+
+    // per-message headers begin with a random salt, which can start with the session magic by chance
+    override def alternative(header: Array[Byte]): Option[Envelope] =
+      if (isSessionHeader(header))
+        Some(fallback)
+      else
+        None
+
+    private def isSessionHeader(header: Array[Byte]): Boolean =
+      header.length >= sessionMagic.length && sessionMagic.indices.forall(i => header(i) == sessionMagic(i))
+  }
 
-      private val random = new SecureRandom()
+  private def readFully(in: InputStream, buffer: Array[Byte], offset: Int, length: Int): Int = {
+
+    var count = 0
+    var result = 0
+
+    while (count < length && result != -1) {
+
+      result = in.read(buffer, offset + count, length - count)
+
+      if (result > 0)
+        count += result
+    }
+
+    count
+  }
+
+  private def create(_settings: CipherSettings, envelope: Envelope): Cipher = {
+
+    new Cipher {
 
       val settings: CipherSettings = _settings
 
@@ -57,149 +243,161 @@ object Cipher {
 
       def encrypt(data: IndexedSeq[Byte]): IndexedSeq[Byte] = {
 
-        val outputStream = new ByteArrayOutputStream()
-        val outputStreamCypher = encrypt(outputStream)
+        encryptTimer.time {
+
+          val (header, handler) = envelope.createEncryption()
+
+          try {
 
-        outputStreamCypher.write(data.toArray)
-        outputStreamCypher.flush()
-        outputStreamCypher.close()
+            header ++ handler.doFinal(data.toArray)
 
-        outputStream.toByteArray
+          } finally {
+
+            envelope.release(handler)
+          }
+        }
       }
 
       def encrypt(data: InputStream): InputStream = {
 
-        val salt = new Array[Byte](_settings.keySaltLength)
-        val iv = new Array[Byte](_settings.ivLength)
-        val handler = createHandler(enc = true, salt, iv)
+        val (header, handler) = envelope.createEncryption()
 
         new SequenceInputStream(
-          new ByteArrayInputStream(salt ++ iv),
+          new ByteArrayInputStream(header),
           new CipherInputStream(data, handler)
         )
       }
 
       def encrypt(data: OutputStream): OutputStream = {
 
-        val salt = new Array[Byte](_settings.keySaltLength)
-        val iv = new Array[Byte](_settings.ivLength)
-        val handler = createHandler(enc = true, salt, iv)
+        val (header, handler) = envelope.createEncryption()
 
-        data.write(salt)
-        data.write(iv)
+        data.write(header)
 
         new CipherOutputStream(data, handler)
       }
 
       def decrypt(data: IndexedSeq[Byte]): IndexedSeq[Byte] = {
 
-        val outputStream = new ByteArrayOutputStream()
-        val outputStreamCypher = decrypt(outputStream)
+        decryptTimer.time {
 
-        outputStreamCypher.write(data.toArray)
-        outputStreamCypher.flush()
-        outputStreamCypher.close()
+          val bytes = data.toArray
 
-        outputStream.toByteArray
-      }
+          try {
 
-      def decrypt(data: InputStream): InputStream = {
+            decrypt(envelope, bytes)
 
-        val salt = new Array[Byte](_settings.keySaltLength)
-        val iv = new Array[Byte](_settings.ivLength)
+          } catch {
 
-        val saltRead = data.read(salt)
-        val ivRead = data.read(iv)
+            case e@(_: GeneralSecurityException | _: IllegalArgumentException) =>
+              envelope.alternative(bytes) match {
 
-        if (saltRead != salt.length || ivRead != iv.length)
-          throw new IllegalArgumentException("Expect more bytes on the input stream to extract initial parameters.")
+                case Some(alternative) => {
+
+                  try {
+
+                    decrypt(alternative, bytes)
+
+                  } catch {
+
+                    case _: GeneralSecurityException | _: IllegalArgumentException =>
+                      throw e
+                  }
+                }
 
-        new CipherInputStream(data, createHandler(enc = false, salt, iv))
+                case None =>
+                  throw e
+              }
+          }
+        }
       }
 
-      def decrypt(data: OutputStream): OutputStream = {
+      private def decrypt(envelope: Envelope, bytes: Array[Byte]): IndexedSeq[Byte] = {
 
-        new OutputStream {
+        val length = envelope.headerLength(bytes)
+
+        if (bytes.length < length)
+          throw new IllegalArgumentException("Expect more bytes on the input stream to extract initial parameters.")
 
-          private var out: OutputStream =
-            new OutputStream {
+        val handler = envelope.createDecryption(bytes.take(length))
 
-              private val aad = new Array[Byte](_settings.keySaltLength + _settings.ivLength)
-              private var index = 0
+        try {
 
-              override def write(value: Int): Unit = {
+          handler.doFinal(bytes, length, bytes.length - length)
 
-                if (index < aad.length) {
+        } finally {
 
-                  aad(index) = value.toByte
+          envelope.release(handler)
+        }
+      }
 
-                  index += 1
+      def decrypt(data: InputStream): InputStream = {
 
-                } else {
+        val header = new Array[Byte](envelope.maximumHeaderLength)
 
-                  if (out == this) {
+        if (readFully(data, header, 0, envelope.probeLength) != envelope.probeLength)
+          throw new IllegalArgumentException("Expect more bytes on the input stream to extract initial parameters.")
 
-                    val salt = aad.slice(0, _settings.keySaltLength)
-                    val iv = aad.slice(_settings.keySaltLength, _settings.keySaltLength + _settings.ivLength)
+        val length = envelope.headerLength(header)
 
-                    val handler = createHandler(enc = false, salt, iv)
+        if (readFully(data, header, envelope.probeLength, length - envelope.probeLength) != length - envelope.probeLength)
+          throw new IllegalArgumentException("Expect more bytes on the input stream to extract initial parameters.")
 
-                    out = new CipherOutputStream(data, handler)
-                  }
+        new CipherInputStream(data, envelope.createDecryption(header.take(length)))
+      }
 
-                  out.write(value)
-                }
-              }
-            }
+      def decrypt(data: OutputStream): OutputStream = {
+
+        new OutputStream {
+
+          private val header = new Array[Byte](envelope.maximumHeaderLength)
+          private var index = 0
+          private var out: OutputStream = _
 
           override def write(value: Int): Unit = {
 
-            out.write(value)
+            write(Array(value.toByte), 0, 1)
           }
 
           override def write(bytes: Array[Byte]): Unit = {
 
-            out.write(bytes)
+            write(bytes, 0, bytes.length)
           }
 
           override def write(bytes: Array[Byte], offset: Int, length: Int): Unit = {
 
-            out.write(bytes, offset, length)
+            var position = offset
+
+            while (out == null && position < offset + length) {
+
+              header(index) = bytes(position)
+
+              index += 1
+              position += 1
+
+              if (index >= envelope.probeLength && index == envelope.headerLength(header))
+                out = new CipherOutputStream(data, envelope.createDecryption(header.take(index)))
+            }
+
+            if (out != null && position < offset + length)
+              out.write(bytes, position, offset + length - position)
           }
 
           override def flush(): Unit = {
 
-            out.flush()
+            if (out != null)
+              out.flush()
           }
 
           override def close(): Unit = {
 
+            if (out == null)
+              throw new IllegalArgumentException("Expect more bytes on the output stream to extract initial parameters.")
+
             out.close()
           }
         }
       }
-
-      private def createHandler(enc: Boolean, salt: Array[Byte], iv: Array[Byte]): JCipher = {
-
-        if (enc) {
-
-          random.nextBytes(salt)
-          random.nextBytes(iv)
-        }
-
-        val handler = JCipher.getInstance(_settings.transformation, "BC")
-
-        handler.init(
-          if (enc) JCipher.ENCRYPT_MODE else JCipher.DECRYPT_MODE,
-          _settings.createSecretKeySpec(secret, salt),
-          _settings.createAlgorithmParameterSpec(iv)
-        )
-
-        if (_settings.supportAEAD)
-          handler.updateAAD(salt ++ iv)
-
-        handler
-      }
     }
   }
 }
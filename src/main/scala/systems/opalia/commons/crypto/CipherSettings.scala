@@ -3,8 +3,8 @@ package systems.opalia.commons.crypto
 import java.security.spec.AlgorithmParameterSpec
 import javax.crypto.spec._
 import org.bouncycastle.crypto.digests.SHA256Digest
-import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator
-import org.bouncycastle.crypto.params.KeyParameter
+import org.bouncycastle.crypto.generators.{HKDFBytesGenerator, PKCS5S2ParametersGenerator}
+import org.bouncycastle.crypto.params.{HKDFParameters, KeyParameter}
 
 
 trait CipherSettings {
@@ -12,6 +12,8 @@ trait CipherSettings {
   val algorithm: String
   val transformation: String
   val keySaltLength: Int = 64
+  val masterKeySaltLength: Int = 16
+  val masterKeyLength: Int = 32
   val keyLength: Int
   val ivLength: Int
   val supportAEAD: Boolean
@@ -23,14 +25,33 @@ trait CipherSettings {
 
   def createSecretKeySpec(secret: String, salt: Array[Byte]): SecretKeySpec = {
 
-    val generator = new PKCS5S2ParametersGenerator(new SHA256Digest())
+    new SecretKeySpec(deriveFromSecret(secret, salt, keyLength), algorithm)
+  }
 
-    generator.init(secret.getBytes("UTF-8"), salt, 65536)
+  def createMasterKey(secret: String, salt: Array[Byte]): Array[Byte] = {
+
+    deriveFromSecret(secret, salt, masterKeyLength)
+  }
+
+  def createSecretKeySpec(masterKey: Array[Byte], salt: Array[Byte]): SecretKeySpec = {
+
+    val generator = new HKDFBytesGenerator(new SHA256Digest())
+    val bytes = new Array[Byte](keyLength)
 
-    val bytes = generator.generateDerivedParameters(keyLength * 8).asInstanceOf[KeyParameter].getKey
+    generator.init(new HKDFParameters(masterKey, salt, transformation.getBytes("UTF-8")))
+    generator.generateBytes(bytes, 0, bytes.length)
 
     new SecretKeySpec(bytes, algorithm)
   }
+
+  private def deriveFromSecret(secret: String, salt: Array[Byte], length: Int): Array[Byte] = {
+
+    val generator = new PKCS5S2ParametersGenerator(new SHA256Digest())
+
+    generator.init(secret.getBytes("UTF-8"), salt, 65536)
+
+    generator.generateDerivedParameters(length * 8).asInstanceOf[KeyParameter].getKey
+  }
 }
 
 object CipherSettings {
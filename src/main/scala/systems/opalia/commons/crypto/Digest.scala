@@ -1,18 +1,19 @@
 package systems.opalia.commons.crypto
 
-import java.io.{ByteArrayInputStream, InputStream}
+import java.io.InputStream
+import java.nio.ByteBuffer
 import java.nio.charset.Charset
-import java.security.{MessageDigest, Security}
-import javax.crypto.Mac
+import java.security.MessageDigest
 import javax.crypto.spec.SecretKeySpec
-import org.bouncycastle.jce.provider.BouncyCastleProvider
 import systems.opalia.commons.codec.Hex
+import systems.opalia.commons.utility.instrumentation.Instrumentation
 import systems.opalia.interfaces.rendering.Renderer
 
 
 trait Digest {
 
   val algorithm: Digest.Algorithm
+  val provider: Provider
   val hmac: Boolean
 
   def sign(data: String): IndexedSeq[Byte]
@@ -21,6 +22,10 @@ trait Digest {
 
   def sign(data: IndexedSeq[Byte]): IndexedSeq[Byte]
 
+  def sign(data: Array[Byte], offset: Int, length: Int): IndexedSeq[Byte]
+
+  def sign(data: ByteBuffer): IndexedSeq[Byte]
+
   def sign(data: InputStream): DigestInputStream
 
   def signToOctetString(data: String): String
@@ -32,12 +37,13 @@ trait Digest {
 
 object Digest {
 
-  def apply(algorithm: Algorithm): Digest = {
+  private val signTimer = Instrumentation.timer("crypto.digest.sign")
 
-    Security.addProvider(new BouncyCastleProvider())
+  def apply(algorithm: Algorithm): Digest =
+    apply(algorithm, Provider.BouncyCastle)
 
-    create(algorithm, None)
-  }
+  def apply(algorithm: Algorithm, provider: Provider): Digest =
+    create(algorithm, provider, None)
 
   def apply(algorithm: Algorithm, secret: String): Digest =
     apply(algorithm, secret, Renderer.appDefaultCharset)
@@ -45,100 +51,143 @@ object Digest {
   def apply(algorithm: Algorithm, secret: String, charset: Charset): Digest =
     apply(algorithm, secret.getBytes(charset))
 
-  def apply(algorithm: Algorithm, secret: IndexedSeq[Byte]): Digest = {
+  def apply(algorithm: Algorithm, secret: IndexedSeq[Byte]): Digest =
+    apply(algorithm, secret, Provider.BouncyCastle)
+
+  def apply(algorithm: Algorithm, secret: IndexedSeq[Byte], provider: Provider): Digest = {
 
     if (secret.isEmpty)
       throw new IllegalArgumentException("Expect non empty secret.")
 
-    Security.addProvider(new BouncyCastleProvider())
+    create(algorithm, provider, Some(new SecretKeySpec(secret.toArray, macName(algorithm))))
+  }
+
+  private abstract class Engine {
 
-    create(algorithm, Some(secret))
+    def update(byte: Byte): Unit
+
+    def update(bytes: Array[Byte], offset: Int, length: Int): Unit
+
+    def update(buffer: ByteBuffer): Unit
+
+    def doFinal(): Array[Byte]
+
+    def reset(): Unit
   }
 
-  private def create(algorithmChoice: Algorithm, secret: Option[IndexedSeq[Byte]]): Digest = {
+  private def createEngine(algorithm: Algorithm, provider: Provider, key: Option[SecretKeySpec]): Engine =
+    key match {
+      case None => {
 
-    new Digest {
+        val handler = createMessageDigest(algorithm, provider)
 
-      val algorithm: Algorithm = algorithmChoice
-      val hmac: Boolean = secret.isDefined
+        new Engine {
 
-      def sign(data: String): IndexedSeq[Byte] =
-        sign(data, Renderer.appDefaultCharset)
+          def update(byte: Byte): Unit =
+            handler.update(byte)
 
-      def sign(data: String, charset: Charset): IndexedSeq[Byte] =
-        sign(data.getBytes(charset))
+          def update(bytes: Array[Byte], offset: Int, length: Int): Unit =
+            handler.update(bytes, offset, length)
 
-      def sign(data: IndexedSeq[Byte]): IndexedSeq[Byte] = {
+          def update(buffer: ByteBuffer): Unit =
+            handler.update(buffer)
 
-        val inputStream = sign(new ByteArrayInputStream(data.toArray))
+          def doFinal(): Array[Byte] =
+            handler.digest()
 
-        inputStream.readAll()
-        inputStream.doFinal()
+          def reset(): Unit =
+            handler.reset()
+        }
       }
 
-      def sign(data: InputStream): DigestInputStream = {
+      case Some(key) => {
 
-        secret match {
-          case None => {
+        val handler = provider.createMac(macName(algorithm))
 
-            val algorithmName =
-              algorithmChoice match {
-                case Algorithm.MD5 => "MD5"
-                case Algorithm.SHA1 => "SHA-1"
-                case Algorithm.SHA256 => "SHA-256"
-                case Algorithm.SHA384 => "SHA-384"
-                case Algorithm.SHA512 => "SHA-512"
-              }
+        handler.init(key)
 
-            val handler = MessageDigest.getInstance(algorithmName, "BC")
+        new Engine {
 
-            new DigestInputStream(data) {
+          def update(byte: Byte): Unit =
+            handler.update(byte)
 
-              def update(byte: Byte): Unit =
-                handler.update(byte)
+          def update(bytes: Array[Byte], offset: Int, length: Int): Unit =
+            handler.update(bytes, offset, length)
 
-              def update(bytes: Array[Byte]): Unit =
-                handler.update(bytes)
+          def update(buffer: ByteBuffer): Unit =
+            handler.update(buffer)
 
-              def update(bytes: Array[Byte], offset: Int, length: Int): Unit =
-                handler.update(bytes, offset, length)
+          def doFinal(): Array[Byte] =
+            handler.doFinal()
 
-              def doFinal(): Array[Byte] =
-                handler.digest()
-            }
-          }
+          def reset(): Unit =
+            handler.reset()
+        }
+      }
+    }
 
-          case Some(secret) => {
+  private def create(algorithmChoice: Algorithm, providerChoice: Provider, key: Option[SecretKeySpec]): Digest = {
 
-            val algorithmName =
-              algorithm match {
-                case Algorithm.MD5 => "HmacMD5"
-                case Algorithm.SHA1 => "HmacSHA1"
-                case Algorithm.SHA256 => "HmacSHA256"
-                case Algorithm.SHA384 => "HmacSHA384"
-                case Algorithm.SHA512 => "HmacSHA512"
-              }
+    new Digest {
 
-            val handler = Mac.getInstance(algorithmName, "BC")
+      private val engines =
+        new EnginePool[Engine](() => createEngine(algorithmChoice, providerChoice, key), _.reset())
 
-            handler.init(new SecretKeySpec(secret.toArray, algorithmName))
+      val algorithm: Algorithm = algorithmChoice
+      val provider: Provider = providerChoice
+      val hmac: Boolean = key.isDefined
 
-            new DigestInputStream(data) {
+      def sign(data: String): IndexedSeq[Byte] =
+        sign(data, Renderer.appDefaultCharset)
+
+      def sign(data: String, charset: Charset): IndexedSeq[Byte] = {
+
+        val bytes = data.getBytes(charset)
 
-              def update(byte: Byte): Unit =
-                handler.update(byte)
+        sign(bytes, 0, bytes.length)
+      }
 
-              def update(bytes: Array[Byte]): Unit =
-                handler.update(bytes)
+      def sign(data: IndexedSeq[Byte]): IndexedSeq[Byte] =
+        sign(data.toArray, 0, data.length)
 
-              def update(bytes: Array[Byte], offset: Int, length: Int): Unit =
-                handler.update(bytes, offset, length)
+      def sign(data: Array[Byte], offset: Int, length: Int): IndexedSeq[Byte] =
+        signTimer.time {
+          engines {
+            engine =>
 
-              def doFinal(): Array[Byte] =
-                handler.doFinal()
-            }
+              engine.update(data, offset, length)
+              engine.doFinal()
           }
         }
+
+      def sign(data: ByteBuffer): IndexedSeq[Byte] =
+        signTimer.time {
+          engines {
+            engine =>
+
+              engine.update(data)
+              engine.doFinal()
+          }
+        }
+
+      def sign(data: InputStream): DigestInputStream = {
+
+        val engine = createEngine(algorithmChoice, providerChoice, key)
+
+        new DigestInputStream(data) {
+
+          def update(byte: Byte): Unit =
+            engine.update(byte)
+
+          def update(bytes: Array[Byte]): Unit =
+            engine.update(bytes, 0, bytes.length)
+
+          def update(bytes: Array[Byte], offset: Int, length: Int): Unit =
+            engine.update(bytes, offset, length)
+
+          def doFinal(): Array[Byte] =
+            engine.doFinal()
+        }
       }
 
       def signToOctetString(data: String): String =
@@ -152,6 +201,27 @@ object Digest {
     }
   }
 
+  private[crypto] def digestName(algorithm: Algorithm): String =
+    algorithm match {
+      case Algorithm.MD5 => "MD5"
+      case Algorithm.SHA1 => "SHA-1"
+      case Algorithm.SHA256 => "SHA-256"
+      case Algorithm.SHA384 => "SHA-384"
+      case Algorithm.SHA512 => "SHA-512"
+    }
+
+  private[crypto] def macName(algorithm: Algorithm): String =
+    algorithm match {
+      case Algorithm.MD5 => "HmacMD5"
+      case Algorithm.SHA1 => "HmacSHA1"
+      case Algorithm.SHA256 => "HmacSHA256"
+      case Algorithm.SHA384 => "HmacSHA384"
+      case Algorithm.SHA512 => "HmacSHA512"
+    }
+
+  private[crypto] def createMessageDigest(algorithm: Algorithm, provider: Provider): MessageDigest =
+    provider.createMessageDigest(digestName(algorithm))
+
   sealed trait Algorithm
 
   object Algorithm {
@@ -0,0 +1,51 @@
+package systems.opalia.commons.crypto
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+
+private[crypto] class EnginePool[T <: AnyRef](create: () => T, reset: T => Unit, capacity: Int) {
+
+  private val queue = new ConcurrentLinkedQueue[T]()
+  private val count = new AtomicInteger(0)
+
+  def this(create: () => T, reset: T => Unit) =
+    this(create, reset, Runtime.getRuntime.availableProcessors * 2)
+
+  def borrow(): T = {
+
+    val engine = queue.poll()
+
+    if (engine == null)
+      create()
+    else {
+
+      count.decrementAndGet()
+      engine
+    }
+  }
+
+  def release(engine: T): Unit = {
+
+    reset(engine)
+
+    if (count.incrementAndGet() <= capacity)
+      queue.offer(engine)
+    else
+      count.decrementAndGet()
+  }
+
+  def apply[R](block: T => R): R = {
+
+    val engine = borrow()
+
+    try {
+
+      block(engine)
+
+    } finally {
+
+      release(engine)
+    }
+  }
+}
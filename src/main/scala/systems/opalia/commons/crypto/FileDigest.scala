@@ -0,0 +1,183 @@
+package systems.opalia.commons.crypto
+
+import java.io.InputStream
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Path, StandardOpenOption}
+import java.security.MessageDigest
+import java.util.concurrent.{ForkJoinPool, RecursiveTask}
+
+
+object FileDigest {
+
+  private val regionSize = 1L << 26
+  private val blockSize = 1 << 20
+  private val sequentialTreeSize = 1L << 23
+  private val leafPrefix = 0x00.toByte
+  private val nodePrefix = 0x01.toByte
+
+  def sign(path: Path, algorithms: Seq[Digest.Algorithm]): Map[Digest.Algorithm, IndexedSeq[Byte]] = {
+
+    val handlers = createHandlers(algorithms)
+    val channel = FileChannel.open(path, StandardOpenOption.READ)
+
+    try {
+
+      val size = channel.size
+      var position = 0L
+
+      while (position < size) {
+
+        val region = channel.map(FileChannel.MapMode.READ_ONLY, position, math.min(regionSize, size - position))
+
+        while (region.hasRemaining) {
+
+          val block = region.duplicate()
+
+          block.limit(math.min(region.limit, region.position + blockSize))
+          handlers.foreach(handler => handler.update(block.duplicate()))
+          region.position(block.limit)
+        }
+
+        position += region.capacity
+      }
+
+    } finally {
+
+      channel.close()
+    }
+
+    finish(algorithms, handlers)
+  }
+
+  def sign(data: InputStream, algorithms: Seq[Digest.Algorithm]): Map[Digest.Algorithm, IndexedSeq[Byte]] = {
+
+    val handlers = createHandlers(algorithms)
+    val buffer = new Array[Byte](blockSize)
+    var length = data.read(buffer)
+
+    while (length != -1) {
+
+      handlers.foreach(handler => handler.update(buffer, 0, length))
+      length = data.read(buffer)
+    }
+
+    finish(algorithms, handlers)
+  }
+
+  def signTree(path: Path, algorithm: Digest.Algorithm): IndexedSeq[Byte] =
+    signTree(path, algorithm, blockSize, ForkJoinPool.commonPool())
+
+  def signTree(path: Path, algorithm: Digest.Algorithm, leafSize: Int, pool: ForkJoinPool): IndexedSeq[Byte] = {
+
+    if (leafSize < 1)
+      throw new IllegalArgumentException(s"Expect positive leaf size but got $leafSize.")
+
+    val channel = FileChannel.open(path, StandardOpenOption.READ)
+
+    try {
+
+      val size = channel.size
+      val count = math.max(1L, (size + leafSize - 1) / leafSize)
+
+      pool.invoke(new TreeTask(channel, size, algorithm, leafSize, 0, count)).toIndexedSeq
+
+    } finally {
+
+      channel.close()
+    }
+  }
+
+  private def createHandlers(algorithms: Seq[Digest.Algorithm]): Seq[MessageDigest] = {
+
+    if (algorithms.isEmpty)
+      throw new IllegalArgumentException("Expect at least one algorithm.")
+
+    if (algorithms.distinct.size != algorithms.size)
+      throw new IllegalArgumentException("Expect distinct algorithms.")
+
+    algorithms.map(algorithm => Digest.createMessageDigest(algorithm, Provider.Jdk))
+  }
+
+  private def finish(algorithms: Seq[Digest.Algorithm],
+                     handlers: Seq[MessageDigest]): Map[Digest.Algorithm, IndexedSeq[Byte]] =
+    algorithms.zip(handlers).map {
+      case (algorithm, handler) => algorithm -> (handler.digest(): IndexedSeq[Byte])
+    }.toMap
+
+  private class TreeTask(channel: FileChannel,
+                         size: Long,
+                         algorithm: Digest.Algorithm,
+                         leafSize: Int,
+                         from: Long,
+                         to: Long)
+    extends RecursiveTask[Array[Byte]] {
+
+    def compute(): Array[Byte] =
+      if (to - from == 1 || (to - from) * leafSize <= sequentialTreeSize) {
+
+        val offset = from * leafSize
+        val length = math.max(0L, math.min(to * leafSize, size) - offset)
+
+        val region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+
+        computeSequential(Digest.createMessageDigest(algorithm, Provider.Jdk), region, offset, from, to)
+
+      } else {
+
+        val middle = from + split(to - from)
+        val left = new TreeTask(channel, size, algorithm, leafSize, from, middle)
+        val right = new TreeTask(channel, size, algorithm, leafSize, middle, to)
+
+        left.fork()
+
+        val rightHash = right.compute()
+
+        combine(Digest.createMessageDigest(algorithm, Provider.Jdk), left.join(), rightHash)
+      }
+
+    private def computeSequential(handler: MessageDigest,
+                                  region: MappedByteBuffer,
+                                  offset: Long,
+                                  from: Long,
+                                  to: Long): Array[Byte] =
+      if (to - from == 1) {
+
+        val start = from * leafSize
+        val length = math.min(leafSize.toLong, size - start)
+
+        handler.update(leafPrefix)
+
+        if (length > 0) {
+
+          val leaf = region.duplicate()
+
+          leaf.limit((start - offset + length).toInt)
+          leaf.position((start - offset).toInt)
+          handler.update(leaf)
+        }
+
+        handler.digest()
+
+      } else {
+
+        val middle = from + split(to - from)
+
+        combine(handler,
+          computeSequential(handler, region, offset, from, middle),
+          computeSequential(handler, region, offset, middle, to))
+      }
+
+    private def combine(handler: MessageDigest, left: Array[Byte], right: Array[Byte]): Array[Byte] = {
+
+      handler.update(nodePrefix)
+      handler.update(left)
+      handler.update(right)
+      handler.digest()
+    }
+
+    // largest power of two strictly less than the number of leaves
+    private def split(count: Long): Long =
+      java.lang.Long.highestOneBit(count - 1)
+  }
+}
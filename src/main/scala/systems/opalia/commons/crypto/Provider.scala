@@ -0,0 +1,71 @@
+package systems.opalia.commons.crypto
+
+import java.security.{MessageDigest, Security}
+import javax.crypto.{Mac, Cipher => JCipher}
+import org.bouncycastle.jce.provider.BouncyCastleProvider
+
+
+sealed trait Provider {
+
+  private[crypto] def createMessageDigest(algorithm: String): MessageDigest
+
+  private[crypto] def createMac(algorithm: String): Mac
+
+  private[crypto] def createCipher(transformation: String): JCipher
+}
+
+object Provider {
+
+  private lazy val registration: Unit = {
+
+    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null)
+      Security.addProvider(new BouncyCastleProvider())
+  }
+
+  private[crypto] def register(): Unit =
+    registration
+
+  case object BouncyCastle
+    extends Provider {
+
+    private[crypto] def createMessageDigest(algorithm: String): MessageDigest = {
+
+      register()
+      MessageDigest.getInstance(algorithm, BouncyCastleProvider.PROVIDER_NAME)
+    }
+
+    private[crypto] def createMac(algorithm: String): Mac = {
+
+      register()
+      Mac.getInstance(algorithm, BouncyCastleProvider.PROVIDER_NAME)
+    }
+
+    private[crypto] def createCipher(transformation: String): JCipher = {
+
+      register()
+      JCipher.getInstance(transformation, BouncyCastleProvider.PROVIDER_NAME)
+    }
+  }
+
+  case object Jdk
+    extends Provider {
+
+    private[crypto] def createMessageDigest(algorithm: String): MessageDigest =
+      MessageDigest.getInstance(algorithm)
+
+    private[crypto] def createMac(algorithm: String): Mac =
+      Mac.getInstance(algorithm)
+
+    private[crypto] def createCipher(transformation: String): JCipher =
+      JCipher.getInstance(transformation)
+  }
+
+  val values: Seq[Provider] =
+    BouncyCastle :: Jdk :: Nil
+
+  def withNameOpt(string: String): Option[Provider] =
+    values.find(_.toString.toLowerCase == string.toLowerCase)
+
+  def withName(string: String): Provider =
+    withNameOpt(string).getOrElse(throw new IllegalArgumentException(s"Cannot find provider with name “$string”."))
+}
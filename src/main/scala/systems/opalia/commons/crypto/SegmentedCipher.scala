@@ -0,0 +1,547 @@
+package systems.opalia.commons.crypto
+
+import java.io.IOException
+import java.nio.channels.{ClosedChannelException, FileChannel, NonWritableChannelException, SeekableByteChannel}
+import java.nio.file.{Path, StandardOpenOption}
+import java.nio.{ByteBuffer, ByteOrder}
+import java.security.{MessageDigest, SecureRandom}
+import java.util.concurrent.{ForkJoinPool, RecursiveAction}
+import javax.crypto.spec.{GCMParameterSpec, IvParameterSpec, SecretKeySpec}
+import javax.crypto.{AEADBadTagException, Cipher => JCipher}
+import org.bouncycastle.crypto.digests.SHA256Digest
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator
+import org.bouncycastle.crypto.params.HKDFParameters
+import systems.opalia.commons.utility.LruCache
+
+
+trait SegmentedCipher {
+
+  val settings: CipherSettings
+  val segmentSize: Int
+
+  def encrypt(source: Path, target: Path): Unit
+
+  def decrypt(source: Path, target: Path): Unit
+
+  def open(source: Path): SeekableByteChannel
+
+  def encryptedSize(plaintextSize: Long): Long
+
+  def plaintextSize(encryptedSize: Long): Long
+}
+
+object SegmentedCipher {
+
+  private val magic = Array[Byte](0x4F, 0x43, 0x53, 0x01)
+  private val saltLength = 32
+  private val noncePrefixLength = 7
+  private val tagLength = 16
+  private val segmentsPerTask = 8
+  private val maximumSegmentSize = 1 << 24
+
+  def apply(settings: CipherSettings, secret: String): SegmentedCipher =
+    apply(settings, secret, 1 << 16, ForkJoinPool.commonPool())
+
+  def apply(settings: CipherSettings, secret: String, segmentSize: Int): SegmentedCipher =
+    apply(settings, secret, segmentSize, ForkJoinPool.commonPool())
+
+  def apply(settings: CipherSettings, secret: String, segmentSize: Int, pool: ForkJoinPool): SegmentedCipher = {
+
+    if (secret.isEmpty)
+      throw new IllegalArgumentException("Expect non empty secret.")
+
+    if (segmentSize < 1 || segmentSize > maximumSegmentSize)
+      throw new IllegalArgumentException(
+        s"Expect segment size between 1 and $maximumSegmentSize but got $segmentSize.")
+
+    if (settings != CipherSettings.AES_GCM && settings != CipherSettings.AES_CTR)
+      throw new IllegalArgumentException("Expect AES_GCM or AES_CTR settings for segmented encryption.")
+
+    create(settings, secret, segmentSize, pool)
+  }
+
+  private case class Header(bytes: Array[Byte],
+                            segmentSize: Int,
+                            masterKeySalt: Array[Byte],
+                            salt: Array[Byte],
+                            noncePrefix: Array[Byte])
+
+  private class SegmentCodec(settings: CipherSettings, masterKey: Array[Byte], header: Header) {
+
+    private val authenticated = settings == CipherSettings.AES_GCM
+    private val key = settings.createSecretKeySpec(masterKey, header.salt)
+
+    private val handler =
+      Provider.BouncyCastle.createCipher(if (authenticated) "AES/GCM/NoPadding" else "AES/CTR/NoPadding")
+
+    private val mac =
+      if (authenticated)
+        None
+      else {
+
+        val generator = new HKDFBytesGenerator(new SHA256Digest())
+        val bytes = new Array[Byte](32)
+        val mac = Provider.BouncyCastle.createMac("HmacSHA256")
+
+        generator.init(new HKDFParameters(masterKey, header.salt, "segment authentication".getBytes("UTF-8")))
+        generator.generateBytes(bytes, 0, bytes.length)
+        mac.init(new SecretKeySpec(bytes, "HmacSHA256"))
+
+        Some(mac)
+      }
+
+    def encrypt(index: Long, last: Boolean, input: ByteBuffer, output: ByteBuffer): Unit = {
+
+      val nonce = createNonce(index, last)
+
+      if (authenticated) {
+
+        handler.init(JCipher.ENCRYPT_MODE, key, new GCMParameterSpec(tagLength * 8, nonce))
+        handler.updateAAD(header.bytes)
+        handler.doFinal(input, output)
+
+      } else {
+
+        val start = output.position
+
+        handler.init(JCipher.ENCRYPT_MODE, key, new IvParameterSpec(nonce ++ new Array[Byte](4)))
+        handler.doFinal(input, output)
+
+        val cipherText = output.duplicate()
+
+        cipherText.limit(output.position)
+        cipherText.position(start)
+
+        output.put(authenticate(nonce, cipherText))
+      }
+    }
+
+    def decrypt(index: Long, last: Boolean, input: ByteBuffer, output: ByteBuffer): Unit = {
+
+      val nonce = createNonce(index, last)
+
+      if (input.remaining < tagLength)
+        throw new AEADBadTagException(s"Expect at least $tagLength bytes in segment $index.")
+
+      if (authenticated) {
+
+        handler.init(JCipher.DECRYPT_MODE, key, new GCMParameterSpec(tagLength * 8, nonce))
+        handler.updateAAD(header.bytes)
+        handler.doFinal(input, output)
+
+      } else {
+
+        val cipherText = input.duplicate()
+        val tag = new Array[Byte](tagLength)
+
+        cipherText.limit(input.limit - tagLength)
+        input.position(input.limit - tagLength)
+        input.get(tag)
+
+        if (!MessageDigest.isEqual(tag, authenticate(nonce, cipherText.duplicate())))
+          throw new AEADBadTagException(s"Cannot authenticate segment $index.")
+
+        handler.init(JCipher.DECRYPT_MODE, key, new IvParameterSpec(nonce ++ new Array[Byte](4)))
+        handler.doFinal(cipherText, output)
+      }
+    }
+
+    private def authenticate(nonce: Array[Byte], cipherText: ByteBuffer): Array[Byte] = {
+
+      val engine = mac.get
+
+      engine.update(header.bytes)
+      engine.update(nonce)
+      engine.update(cipherText)
+      engine.doFinal().take(tagLength)
+    }
+
+    private def createNonce(index: Long, last: Boolean): Array[Byte] = {
+
+      if (index > Int.MaxValue)
+        throw new IllegalArgumentException(s"Cannot handle more than ${Int.MaxValue} segments.")
+
+      ByteBuffer.allocate(noncePrefixLength + 5)
+        .order(ByteOrder.BIG_ENDIAN)
+        .put(header.noncePrefix)
+        .putInt(index.toInt)
+        .put(if (last) 1.toByte else 0.toByte)
+        .array
+    }
+  }
+
+  private def create(_settings: CipherSettings,
+                     secret: String,
+                     _segmentSize: Int,
+                     pool: ForkJoinPool): SegmentedCipher = {
+
+    new SegmentedCipher {
+
+      private val random = new SecureRandom()
+      private val masterKeySalt = nextBytes(_settings.masterKeySaltLength)
+      private val masterKey = _settings.createMasterKey(secret, masterKeySalt)
+      private val masterKeys = new LruCache[ByteBuffer, Array[Byte]](64)
+
+      private val headerLength =
+        magic.length + 4 + _settings.masterKeySaltLength + saltLength + noncePrefixLength
+
+      val settings: CipherSettings = _settings
+      val segmentSize: Int = _segmentSize
+
+      def encryptedSize(plaintextSize: Long): Long =
+        encryptedSize(plaintextSize, segmentSize)
+
+      def plaintextSize(encryptedSize: Long): Long =
+        plaintextSize(encryptedSize, segmentSize)
+
+      def encrypt(source: Path, target: Path): Unit = {
+
+        val header = createHeader()
+
+        withChannels(source, target) {
+          (in, out) =>
+
+            val size = in.size
+            val count = segmentCount(size, header.segmentSize)
+
+            writeFully(out, ByteBuffer.wrap(header.bytes), 0)
+
+            pool.invoke(new SegmentTask(0, count, {
+              (from, to) =>
+
+                val codec = new SegmentCodec(settings, masterKey, header)
+                val output = ByteBuffer.allocate(header.segmentSize + tagLength)
+                val start = from * header.segmentSize
+                val end = math.min(size, to * header.segmentSize)
+                val input = in.map(FileChannel.MapMode.READ_ONLY, start, end - start)
+
+                for (index <- from until to) {
+
+                  val position = (index - from) * header.segmentSize
+
+                  input.limit(math.min(input.capacity, position + header.segmentSize).toInt)
+                  input.position(position.toInt)
+                  output.clear()
+
+                  codec.encrypt(index, index == count - 1, input, output)
+
+                  output.flip()
+                  writeFully(out, output, headerLength + index * (header.segmentSize + tagLength))
+                }
+            }))
+        }
+      }
+
+      def decrypt(source: Path, target: Path): Unit = {
+
+        withChannels(source, target) {
+          (in, out) =>
+
+            val header = readHeader(in)
+            val headerMasterKey = resolveMasterKey(header)
+            val size = in.size - headerLength
+            val stride = header.segmentSize + tagLength
+            val count = (size + stride - 1) / stride
+
+            checkSize(in.size, header.segmentSize)
+
+            pool.invoke(new SegmentTask(0, count, {
+              (from, to) =>
+
+                val codec = new SegmentCodec(settings, headerMasterKey, header)
+                val output = ByteBuffer.allocate(header.segmentSize)
+                val start = headerLength + from * stride
+                val end = math.min(in.size, headerLength + to * stride)
+                val input = in.map(FileChannel.MapMode.READ_ONLY, start, end - start)
+
+                for (index <- from until to) {
+
+                  val position = (index - from) * stride
+
+                  input.limit(math.min(input.capacity, position + stride).toInt)
+                  input.position(position.toInt)
+                  output.clear()
+
+                  codec.decrypt(index, index == count - 1, input, output)
+
+                  output.flip()
+                  writeFully(out, output, index * header.segmentSize)
+                }
+            }))
+        }
+      }
+
+      def open(source: Path): SeekableByteChannel = {
+
+        val channel = FileChannel.open(source, StandardOpenOption.READ)
+
+        try {
+
+          val header = readHeader(channel)
+
+          checkSize(channel.size, header.segmentSize)
+
+          val codec = new SegmentCodec(settings, resolveMasterKey(header), header)
+
+          new DecryptingChannel(channel, codec, header.segmentSize)
+
+        } catch {
+
+          case e: Throwable =>
+
+            channel.close()
+            throw e
+        }
+      }
+
+      private class DecryptingChannel(channel: FileChannel, codec: SegmentCodec, segmentSize: Int)
+        extends SeekableByteChannel {
+
+        private val stride = segmentSize + tagLength
+        private val count = (channel.size - headerLength + stride - 1) / stride
+        private val plaintext = plaintextSize(channel.size, segmentSize)
+        private val input = ByteBuffer.allocate(stride)
+        private val output = ByteBuffer.allocate(segmentSize)
+        private var segment = -1L
+        private var current = 0L
+
+        def read(target: ByteBuffer): Int =
+          synchronized {
+
+            ensureOpen()
+
+            if (current >= plaintext)
+              -1
+            else {
+
+              var total = 0
+
+              while (target.hasRemaining && current < plaintext) {
+
+                load(current / segmentSize)
+
+                val offset = (current % segmentSize).toInt
+                val length = math.min(target.remaining, output.limit - offset)
+                val view = output.duplicate()
+
+                view.position(offset)
+                view.limit(offset + length)
+                target.put(view)
+
+                current += length
+                total += length
+              }
+
+              total
+            }
+          }
+
+        def write(source: ByteBuffer): Int =
+          throw new NonWritableChannelException()
+
+        def position: Long =
+          synchronized {
+
+            ensureOpen()
+            current
+          }
+
+        def position(newPosition: Long): SeekableByteChannel =
+          synchronized {
+
+            ensureOpen()
+
+            if (newPosition < 0)
+              throw new IllegalArgumentException(s"Expect non-negative position but got $newPosition.")
+
+            current = newPosition
+            this
+          }
+
+        def size: Long =
+          synchronized {
+
+            ensureOpen()
+            plaintext
+          }
+
+        def truncate(size: Long): SeekableByteChannel =
+          throw new NonWritableChannelException()
+
+        def isOpen: Boolean =
+          channel.isOpen
+
+        def close(): Unit =
+          channel.close()
+
+        private def ensureOpen(): Unit =
+          if (!channel.isOpen)
+            throw new ClosedChannelException()
+
+        private def load(index: Long): Unit =
+          if (segment != index) {
+
+            val start = headerLength + index * stride
+
+            input.clear()
+            input.limit(math.min(stride.toLong, channel.size - start).toInt)
+
+            while (input.hasRemaining)
+              if (channel.read(input, start + input.position) < 0)
+                throw new IOException("Unexpected end of encrypted file.")
+
+            input.flip()
+            output.clear()
+            segment = -1
+
+            codec.decrypt(index, index == count - 1, input, output)
+
+            output.flip()
+            segment = index
+          }
+      }
+
+      private def createHeader(): Header = {
+
+        val salt = nextBytes(saltLength)
+        val noncePrefix = nextBytes(noncePrefixLength)
+
+        val bytes =
+          ByteBuffer.allocate(headerLength)
+            .order(ByteOrder.BIG_ENDIAN)
+            .put(magic)
+            .putInt(segmentSize)
+            .put(masterKeySalt)
+            .put(salt)
+            .put(noncePrefix)
+            .array
+
+        Header(bytes, segmentSize, masterKeySalt, salt, noncePrefix)
+      }
+
+      private def readHeader(channel: FileChannel): Header = {
+
+        val buffer = ByteBuffer.allocate(headerLength).order(ByteOrder.BIG_ENDIAN)
+
+        while (buffer.hasRemaining)
+          if (channel.read(buffer, buffer.position) < 0)
+            throw new IOException("Expect segmented encryption header.")
+
+        buffer.flip()
+
+        val bytes = buffer.array.clone
+        val headerMagic = new Array[Byte](magic.length)
+
+        buffer.get(headerMagic)
+
+        if (!headerMagic.sameElements(magic))
+          throw new IOException("Expect segmented encryption header.")
+
+        val headerSegmentSize = buffer.getInt
+        val headerMasterKeySalt = new Array[Byte](settings.masterKeySaltLength)
+        val salt = new Array[Byte](saltLength)
+        val noncePrefix = new Array[Byte](noncePrefixLength)
+
+        if (headerSegmentSize < 1 || headerSegmentSize > maximumSegmentSize)
+          throw new IOException(s"Expect valid segment size but got $headerSegmentSize.")
+
+        buffer.get(headerMasterKeySalt)
+        buffer.get(salt)
+        buffer.get(noncePrefix)
+
+        Header(bytes, headerSegmentSize, headerMasterKeySalt, salt, noncePrefix)
+      }
+
+      private def resolveMasterKey(header: Header): Array[Byte] =
+        if (header.masterKeySalt.sameElements(masterKeySalt))
+          masterKey
+        else
+          masterKeys.getOrElseUpdate(
+            ByteBuffer.wrap(header.masterKeySalt),
+            settings.createMasterKey(secret, header.masterKeySalt))
+
+      private def checkSize(size: Long, segmentSize: Int): Unit = {
+
+        val stride = segmentSize + tagLength
+        val body = size - headerLength
+
+        if (body < tagLength || (body % stride != 0 && body % stride < tagLength))
+          throw new IOException("Expect complete encrypted segments.")
+      }
+
+      private def encryptedSize(plaintextSize: Long, segmentSize: Int): Long =
+        headerLength + plaintextSize + segmentCount(plaintextSize, segmentSize) * tagLength
+
+      private def plaintextSize(encryptedSize: Long, segmentSize: Int): Long = {
+
+        val stride = segmentSize + tagLength
+        val body = encryptedSize - headerLength
+
+        body - ((body + stride - 1) / stride) * tagLength
+      }
+
+      private def nextBytes(length: Int): Array[Byte] = {
+
+        val bytes = new Array[Byte](length)
+
+        random.nextBytes(bytes)
+
+        bytes
+      }
+    }
+  }
+
+  private def segmentCount(size: Long, segmentSize: Int): Long =
+    math.max(1L, (size + segmentSize - 1) / segmentSize)
+
+  private def withChannels(source: Path, target: Path)(block: (FileChannel, FileChannel) => Unit): Unit = {
+
+    val in = FileChannel.open(source, StandardOpenOption.READ)
+
+    try {
+
+      val out =
+        FileChannel.open(
+          target,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)
+
+      try {
+
+        block(in, out)
+
+      } finally {
+
+        out.close()
+      }
+
+    } finally {
+
+      in.close()
+    }
+  }
+
+  private def writeFully(channel: FileChannel, buffer: ByteBuffer, position: Long): Unit = {
+
+    var offset = position
+
+    while (buffer.hasRemaining)
+      offset += channel.write(buffer, offset)
+  }
+
+  private class SegmentTask(from: Long, to: Long, process: (Long, Long) => Unit)
+    extends RecursiveAction {
+
+    def compute(): Unit =
+      if (to - from <= segmentsPerTask)
+        process(from, to)
+      else {
+
+        val middle = from + (to - from) / 2
+
+        RecursiveAction.invokeAll(new SegmentTask(from, middle, process), new SegmentTask(middle, to, process))
+      }
+  }
+
+}
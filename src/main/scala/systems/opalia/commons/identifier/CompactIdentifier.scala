@@ -0,0 +1,122 @@
+package systems.opalia.commons.identifier
+
+import java.nio.{ByteBuffer, ByteOrder}
+import systems.opalia.interfaces.identifier._
+
+
+abstract class CompactIdentifier(val mostSignificantBits: Long, val leastSignificantBits: Long)
+  extends Identifier {
+
+  protected lazy val data: Vector[Byte] =
+    CompactIdentifier.toBytes(mostSignificantBits, leastSignificantBits).toVector
+
+  override def apply(index: Int): Byte =
+    if (index >= 0 && index < 8)
+      (mostSignificantBits >>> (56 - index * 8)).toByte
+    else if (index >= 8 && index < 16)
+      (leastSignificantBits >>> (56 - (index - 8) * 8)).toByte
+    else
+      throw new IndexOutOfBoundsException(index.toString)
+
+  def writeTo(buffer: ByteBuffer): ByteBuffer =
+    CompactIdentifier.writeBits(buffer, mostSignificantBits, leastSignificantBits)
+
+  def toByteArray: Array[Byte] =
+    CompactIdentifier.toBytes(mostSignificantBits, leastSignificantBits)
+
+  protected def compareBits(that: CompactIdentifier): Int = {
+
+    val result = java.lang.Long.compareUnsigned(mostSignificantBits, that.mostSignificantBits)
+
+    if (result != 0)
+      result
+    else
+      java.lang.Long.compareUnsigned(leastSignificantBits, that.leastSignificantBits)
+  }
+
+  protected def equalBits(that: CompactIdentifier): Boolean =
+    mostSignificantBits == that.mostSignificantBits && leastSignificantBits == that.leastSignificantBits
+
+  override def hashCode: Int =
+    CompactIdentifier.hash(mostSignificantBits, leastSignificantBits)
+}
+
+object CompactIdentifier {
+
+  private val digits = "0123456789abcdef".toCharArray
+
+  def hash(mostSignificantBits: Long, leastSignificantBits: Long): Int = {
+
+    val x = (mostSignificantBits ^ (leastSignificantBits * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L
+
+    (x ^ (x >>> 31)).toInt
+  }
+
+  private[identifier] def toBytes(mostSignificantBits: Long, leastSignificantBits: Long): Array[Byte] = {
+
+    val bytes = new Array[Byte](16)
+
+    for (i <- 0 until 8) {
+
+      bytes(i) = (mostSignificantBits >>> (56 - i * 8)).toByte
+      bytes(i + 8) = (leastSignificantBits >>> (56 - i * 8)).toByte
+    }
+
+    bytes
+  }
+
+  private[identifier] def readBits(bytes: Array[Byte], offset: Int): Long = {
+
+    var result = 0L
+
+    for (i <- offset until offset + 8)
+      result = (result << 8) | (bytes(i) & 0xFF)
+
+    result
+  }
+
+  private[identifier] def writeBits(buffer: ByteBuffer,
+                                    mostSignificantBits: Long,
+                                    leastSignificantBits: Long): ByteBuffer =
+    if (buffer.order == ByteOrder.BIG_ENDIAN)
+      buffer
+        .putLong(mostSignificantBits)
+        .putLong(leastSignificantBits)
+    else
+      buffer
+        .putLong(java.lang.Long.reverseBytes(mostSignificantBits))
+        .putLong(java.lang.Long.reverseBytes(leastSignificantBits))
+
+  private[identifier] def readBits(buffer: ByteBuffer): Long =
+    if (buffer.order == ByteOrder.BIG_ENDIAN)
+      buffer.getLong
+    else
+      java.lang.Long.reverseBytes(buffer.getLong)
+
+  private[identifier] def writeHex(target: Array[Char], offset: Int, value: Long, count: Int): Unit =
+    for (i <- 0 until count)
+      target(offset + i) = digits(((value >>> ((count - 1 - i) * 4)) & 0xF).toInt)
+
+  private[identifier] def isHex(source: String, from: Int, to: Int): Boolean =
+    (from until to).forall(i => hexValue(source.charAt(i)) >= 0)
+
+  private[identifier] def readHex(source: String, from: Int, to: Int): Long = {
+
+    var result = 0L
+
+    for (i <- from until to)
+      result = (result << 4) | hexValue(source.charAt(i))
+
+    result
+  }
+
+  private def hexValue(char: Char): Int =
+    if (char >= '0' && char <= '9')
+      char - '0'
+    else if (char >= 'a' && char <= 'f')
+      char - 'a' + 10
+    else if (char >= 'A' && char <= 'F')
+      char - 'A' + 10
+    else
+      -1
+}
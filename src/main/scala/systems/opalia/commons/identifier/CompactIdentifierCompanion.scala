@@ -0,0 +1,19 @@
+package systems.opalia.commons.identifier
+
+import java.nio.ByteBuffer
+import systems.opalia.interfaces.identifier._
+
+
+trait CompactIdentifierCompanion[T <: CompactIdentifier]
+  extends IdentifierCompanion[T] {
+
+  def getFrom(mostSignificantBits: Long, leastSignificantBits: Long): T
+
+  def readFrom(buffer: ByteBuffer): T = {
+
+    val mostSignificantBits = CompactIdentifier.readBits(buffer)
+    val leastSignificantBits = CompactIdentifier.readBits(buffer)
+
+    getFrom(mostSignificantBits, leastSignificantBits)
+  }
+}
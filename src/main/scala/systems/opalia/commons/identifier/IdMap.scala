@@ -0,0 +1,197 @@
+package systems.opalia.commons.identifier
+
+
+final class IdMap[K <: CompactIdentifier, V](companion: CompactIdentifierCompanion[K], initialCapacity: Int) {
+
+  private var mostSignificantBits: Array[Long] = _
+  private var leastSignificantBits: Array[Long] = _
+  private var values: Array[AnyRef] = _
+  private var used: Array[Boolean] = _
+  private var count = 0
+
+  if (initialCapacity < 0)
+    throw new IllegalArgumentException(s"Expect non-negative capacity but got $initialCapacity.")
+
+  allocate(IdSet.tableSize(initialCapacity))
+
+  def this(companion: CompactIdentifierCompanion[K]) =
+    this(companion, 16)
+
+  def size: Int =
+    count
+
+  def isEmpty: Boolean =
+    count == 0
+
+  def nonEmpty: Boolean =
+    count != 0
+
+  def contains(key: K): Boolean =
+    used(slot(key.mostSignificantBits, key.leastSignificantBits))
+
+  def get(key: K): Option[V] = {
+
+    val index = slot(key.mostSignificantBits, key.leastSignificantBits)
+
+    if (used(index))
+      Some(values(index).asInstanceOf[V])
+    else
+      None
+  }
+
+  def getOrElse[V1 >: V](key: K, default: => V1): V1 = {
+
+    val index = slot(key.mostSignificantBits, key.leastSignificantBits)
+
+    if (used(index))
+      values(index).asInstanceOf[V]
+    else
+      default
+  }
+
+  def apply(key: K): V =
+    getOrElse(key, throw new NoSuchElementException(s"Cannot find key: $key"))
+
+  def put(key: K, value: V): Option[V] = {
+
+    val msb = key.mostSignificantBits
+    val lsb = key.leastSignificantBits
+    val index = slot(msb, lsb)
+
+    if (used(index)) {
+
+      val previous = values(index).asInstanceOf[V]
+
+      values(index) = value.asInstanceOf[AnyRef]
+
+      Some(previous)
+
+    } else {
+
+      mostSignificantBits(index) = msb
+      leastSignificantBits(index) = lsb
+      values(index) = value.asInstanceOf[AnyRef]
+      used(index) = true
+      count += 1
+
+      if (count * 4 > used.length * 3)
+        rehash(used.length * 2)
+
+      None
+    }
+  }
+
+  def update(key: K, value: V): Unit =
+    put(key, value)
+
+  def remove(key: K): Option[V] = {
+
+    val index = slot(key.mostSignificantBits, key.leastSignificantBits)
+
+    if (!used(index))
+      None
+    else {
+
+      val previous = values(index).asInstanceOf[V]
+
+      delete(index)
+      count -= 1
+
+      Some(previous)
+    }
+  }
+
+  def clear(): Unit = {
+
+    java.util.Arrays.fill(used, false)
+    java.util.Arrays.fill(values, null)
+    count = 0
+  }
+
+  def foreach[U](f: ((K, V)) => U): Unit =
+    for (i <- used.indices)
+      if (used(i))
+        f((companion.getFrom(mostSignificantBits(i), leastSignificantBits(i)), values(i).asInstanceOf[V]))
+
+  def iterator: Iterator[(K, V)] =
+    used.indices.iterator
+      .filter(used(_))
+      .map((i) => (companion.getFrom(mostSignificantBits(i), leastSignificantBits(i)), values(i).asInstanceOf[V]))
+
+  def keysIterator: Iterator[K] =
+    iterator.map(_._1)
+
+  def valuesIterator: Iterator[V] =
+    used.indices.iterator
+      .filter(used(_))
+      .map((i) => values(i).asInstanceOf[V])
+
+  def toMap: Map[K, V] =
+    iterator.toMap
+
+  private def mask: Int =
+    used.length - 1
+
+  private def slot(msb: Long, lsb: Long): Int = {
+
+    var index = CompactIdentifier.hash(msb, lsb) & mask
+
+    while (used(index) && (mostSignificantBits(index) != msb || leastSignificantBits(index) != lsb))
+      index = (index + 1) & mask
+
+    index
+  }
+
+  private def delete(index: Int): Unit = {
+
+    var gap = index
+    var next = (index + 1) & mask
+
+    while (used(next)) {
+
+      val home = CompactIdentifier.hash(mostSignificantBits(next), leastSignificantBits(next)) & mask
+
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+
+        mostSignificantBits(gap) = mostSignificantBits(next)
+        leastSignificantBits(gap) = leastSignificantBits(next)
+        values(gap) = values(next)
+        gap = next
+      }
+
+      next = (next + 1) & mask
+    }
+
+    used(gap) = false
+    values(gap) = null
+  }
+
+  private def allocate(capacity: Int): Unit = {
+
+    mostSignificantBits = new Array[Long](capacity)
+    leastSignificantBits = new Array[Long](capacity)
+    values = new Array[AnyRef](capacity)
+    used = new Array[Boolean](capacity)
+  }
+
+  private def rehash(capacity: Int): Unit = {
+
+    val oldMostSignificantBits = mostSignificantBits
+    val oldLeastSignificantBits = leastSignificantBits
+    val oldValues = values
+    val oldUsed = used
+
+    allocate(capacity)
+
+    for (i <- oldUsed.indices)
+      if (oldUsed(i)) {
+
+        val index = slot(oldMostSignificantBits(i), oldLeastSignificantBits(i))
+
+        mostSignificantBits(index) = oldMostSignificantBits(i)
+        leastSignificantBits(index) = oldLeastSignificantBits(i)
+        values(index) = oldValues(i)
+        used(index) = true
+      }
+  }
+}
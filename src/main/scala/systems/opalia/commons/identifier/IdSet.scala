@@ -0,0 +1,164 @@
+package systems.opalia.commons.identifier
+
+
+final class IdSet[T <: CompactIdentifier](companion: CompactIdentifierCompanion[T], initialCapacity: Int) {
+
+  private var mostSignificantBits: Array[Long] = _
+  private var leastSignificantBits: Array[Long] = _
+  private var used: Array[Boolean] = _
+  private var count = 0
+
+  if (initialCapacity < 0)
+    throw new IllegalArgumentException(s"Expect non-negative capacity but got $initialCapacity.")
+
+  allocate(IdSet.tableSize(initialCapacity))
+
+  def this(companion: CompactIdentifierCompanion[T]) =
+    this(companion, 16)
+
+  def size: Int =
+    count
+
+  def isEmpty: Boolean =
+    count == 0
+
+  def nonEmpty: Boolean =
+    count != 0
+
+  def contains(id: T): Boolean =
+    contains(id.mostSignificantBits, id.leastSignificantBits)
+
+  def contains(msb: Long, lsb: Long): Boolean =
+    used(slot(msb, lsb))
+
+  def add(id: T): Boolean =
+    add(id.mostSignificantBits, id.leastSignificantBits)
+
+  def add(msb: Long, lsb: Long): Boolean = {
+
+    val index = slot(msb, lsb)
+
+    if (used(index))
+      false
+    else {
+
+      mostSignificantBits(index) = msb
+      leastSignificantBits(index) = lsb
+      used(index) = true
+      count += 1
+
+      if (count * 4 > used.length * 3)
+        rehash(used.length * 2)
+
+      true
+    }
+  }
+
+  def remove(id: T): Boolean =
+    remove(id.mostSignificantBits, id.leastSignificantBits)
+
+  def remove(msb: Long, lsb: Long): Boolean = {
+
+    val index = slot(msb, lsb)
+
+    if (!used(index))
+      false
+    else {
+
+      delete(index)
+      count -= 1
+
+      true
+    }
+  }
+
+  def clear(): Unit = {
+
+    java.util.Arrays.fill(used, false)
+    count = 0
+  }
+
+  def foreach[U](f: T => U): Unit =
+    for (i <- used.indices)
+      if (used(i))
+        f(companion.getFrom(mostSignificantBits(i), leastSignificantBits(i)))
+
+  def iterator: Iterator[T] =
+    used.indices.iterator
+      .filter(used(_))
+      .map((i) => companion.getFrom(mostSignificantBits(i), leastSignificantBits(i)))
+
+  def toSet: Set[T] =
+    iterator.toSet
+
+  private def mask: Int =
+    used.length - 1
+
+  private def slot(msb: Long, lsb: Long): Int = {
+
+    var index = CompactIdentifier.hash(msb, lsb) & mask
+
+    while (used(index) && (mostSignificantBits(index) != msb || leastSignificantBits(index) != lsb))
+      index = (index + 1) & mask
+
+    index
+  }
+
+  private def delete(index: Int): Unit = {
+
+    var gap = index
+    var next = (index + 1) & mask
+
+    while (used(next)) {
+
+      val home = CompactIdentifier.hash(mostSignificantBits(next), leastSignificantBits(next)) & mask
+
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+
+        mostSignificantBits(gap) = mostSignificantBits(next)
+        leastSignificantBits(gap) = leastSignificantBits(next)
+        gap = next
+      }
+
+      next = (next + 1) & mask
+    }
+
+    used(gap) = false
+  }
+
+  private def allocate(capacity: Int): Unit = {
+
+    mostSignificantBits = new Array[Long](capacity)
+    leastSignificantBits = new Array[Long](capacity)
+    used = new Array[Boolean](capacity)
+  }
+
+  private def rehash(capacity: Int): Unit = {
+
+    val oldMostSignificantBits = mostSignificantBits
+    val oldLeastSignificantBits = leastSignificantBits
+    val oldUsed = used
+
+    allocate(capacity)
+
+    for (i <- oldUsed.indices)
+      if (oldUsed(i)) {
+
+        val index = slot(oldMostSignificantBits(i), oldLeastSignificantBits(i))
+
+        mostSignificantBits(index) = oldMostSignificantBits(i)
+        leastSignificantBits(index) = oldLeastSignificantBits(i)
+        used(index) = true
+      }
+  }
+}
+
+object IdSet {
+
+  private[identifier] def tableSize(capacity: Int): Int = {
+
+    val minimum = math.max(8, (capacity.toLong * 4 / 3 + 1).min(1 << 30).toInt)
+
+    Integer.highestOneBit(minimum - 1) << 1
+  }
+}
@@ -1,34 +1,58 @@
 package systems.opalia.commons.identifier
 
 import java.net.NetworkInterface
-import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import java.util.Objects
+import java.util.concurrent.ThreadLocalRandom
 import java.util.concurrent.atomic.AtomicInteger
 import scala.collection.JavaConverters._
-import scala.util.Random
 import systems.opalia.commons.application.SystemProperty
-import systems.opalia.commons.codec.Hex
-import systems.opalia.interfaces.identifier._
 import systems.opalia.interfaces.rendering._
 
 
-class ObjectId private(protected val data: Vector[Byte])
-  extends Identifier {
+class ObjectId private(msb: Long, lsb: Long)
+  extends CompactIdentifier(msb, lsb)
+    with Ordered[ObjectId] {
 
   def renderString(renderer: StringRenderer): StringRenderer = {
 
-    renderer ~ Hex.encode(data)
+    val chars = new Array[Char](ObjectId.length * 2)
+
+    CompactIdentifier.writeHex(chars, 0, mostSignificantBits, 16)
+    CompactIdentifier.writeHex(chars, 16, leastSignificantBits, 16)
+
+    renderer ~ new String(chars)
   }
+
+  def compare(that: ObjectId): Int =
+    compareBits(that)
+
+  override def equals(that: Any): Boolean =
+    that match {
+      case that: ObjectId => equalBits(that)
+      case _ => false
+    }
 }
 
 object ObjectId
-  extends IdentifierCompanion[ObjectId] {
+  extends CompactIdentifierCompanion[ObjectId] {
 
   private object Generator {
 
-    val counter = new AtomicInteger(Random.nextInt())
+    private val counterBlockSize = 1024
+    private val counter = new AtomicInteger(ThreadLocalRandom.current.nextInt())
+    private val counterBlock = ThreadLocal.withInitial[Array[Int]](() => Array(0, 0))
+    private val bigEndian = Renderer.appDefaultByteOrder == ByteOrder.BIG_ENDIAN
+
+    val applicationPart: Int = {
+
+      val processValue = Int.box(processPart)
+      val machineValue = Int.box(machinePart)
+
+      Objects.hash(processValue, machineValue)
+    }
 
-    def machinePart: Int = {
+    private def machinePart: Int = {
 
       val hardwareAddresses =
         NetworkInterface.getNetworkInterfaces.asScala.toSeq
@@ -39,7 +63,7 @@ object ObjectId
       hardwareAddresses.hashCode
     }
 
-    def processPart: Int = {
+    private def processPart: Int = {
 
       val processId = Int.box(SystemProperty.Process.pid)
       val classLoaderId = Int.box(System.identityHashCode(this.getClass.getClassLoader))
@@ -47,32 +71,79 @@ object ObjectId
       Objects.hash(processId, classLoaderId)
     }
 
-    def applicationPart: Int = {
+    private def reserveCounters(count: Int): Int = {
 
-      val processValue = Int.box(processPart)
-      val machineValue = Int.box(machinePart)
+      val block = counterBlock.get
 
-      Objects.hash(processValue, machineValue)
-    }
+      if (block(1) >= count) {
 
-    def counterPart: Int = {
+        val first = block(0)
 
-      counter.getAndIncrement
-    }
+        block(0) += count
+        block(1) -= count
+
+        first
 
-    def timestampPart: Long = {
+      } else if (count >= counterBlockSize) {
 
-      System.currentTimeMillis()
+        counter.getAndAdd(count)
+
+      } else {
+
+        val first = counter.getAndAdd(counterBlockSize)
+
+        block(0) = first + count
+        block(1) = counterBlockSize - count
+
+        first
+      }
     }
 
-    def randomPart: Int = {
+    private def putInt(target: Array[Byte], offset: Int, value: Int): Unit =
+      if (bigEndian) {
+
+        target(offset) = (value >>> 24).toByte
+        target(offset + 1) = (value >>> 16).toByte
+        target(offset + 2) = (value >>> 8).toByte
+        target(offset + 3) = value.toByte
+
+      } else {
 
-      Random.nextInt()
+        target(offset) = value.toByte
+        target(offset + 1) = (value >>> 8).toByte
+        target(offset + 2) = (value >>> 16).toByte
+        target(offset + 3) = (value >>> 24).toByte
+      }
+
+    def fill(target: Array[Byte], offset: Int, count: Int): Unit = {
+
+      val random = ThreadLocalRandom.current
+      val timestampValue = System.currentTimeMillis() / 10
+      val firstCounterValue = reserveCounters(count)
+
+      for (i <- 0 until count) {
+
+        val position = offset + i * length
+        val counterValue = firstCounterValue + i
+
+        putInt(target, position, applicationPart)
+
+        target(position + 4) = (counterValue >>> 16).toByte
+        target(position + 5) = (counterValue >>> 8).toByte
+        target(position + 6) = counterValue.toByte
+        target(position + 7) = (timestampValue >>> 32).toByte
+        target(position + 8) = (timestampValue >>> 24).toByte
+        target(position + 9) = (timestampValue >>> 16).toByte
+        target(position + 10) = (timestampValue >>> 8).toByte
+        target(position + 11) = timestampValue.toByte
+
+        putInt(target, position + 12, random.nextInt())
+      }
     }
   }
 
   def isValid(that: String): Boolean =
-    Hex.isValid(that) && that.length == length * 2
+    that.length == length * 2 && CompactIdentifier.isHex(that, 0, that.length)
 
   def isValid(that: Seq[Byte]): Boolean =
     that.length == length
@@ -82,24 +153,37 @@ object ObjectId
 
   def getNew: ObjectId = {
 
-    val counterValue = Generator.counterPart
-    val timestampValue = Generator.timestampPart / 10
-
-    val bytes =
-      ByteBuffer.allocate(length)
-        .order(Renderer.appDefaultByteOrder)
-        .putInt(Generator.applicationPart)
-        .put(((counterValue >>> 16) & 0xFF).toByte)
-        .put(((counterValue >>> 8) & 0xFF).toByte)
-        .put((counterValue & 0xFF).toByte)
-        .put(((timestampValue >>> 32) & 0xFF).toByte)
-        .put(((timestampValue >>> 24) & 0xFF).toByte)
-        .put(((timestampValue >>> 16) & 0xFF).toByte)
-        .put(((timestampValue >>> 8) & 0xFF).toByte)
-        .put((timestampValue & 0xFF).toByte)
-        .putInt(Generator.randomPart)
-
-    new ObjectId(bytes.array.toVector)
+    val bytes = new Array[Byte](length)
+
+    Generator.fill(bytes, 0, 1)
+
+    fromBytes(bytes, 0)
+  }
+
+  def getNew(count: Int): IndexedSeq[ObjectId] = {
+
+    if (count < 0)
+      throw new IllegalArgumentException(s"Expect non-negative number of identifiers but got $count.")
+
+    if (count.toLong * length > Int.MaxValue)
+      throw new IllegalArgumentException(s"Cannot allocate array for $count identifiers.")
+
+    val bytes = new Array[Byte](count * length)
+
+    Generator.fill(bytes, 0, count)
+
+    (0 until count).map((i) => fromBytes(bytes, i * length))
+  }
+
+  def fill(target: Array[Byte], offset: Int, count: Int): Unit = {
+
+    if (count < 0)
+      throw new IllegalArgumentException(s"Expect non-negative number of identifiers but got $count.")
+
+    if (offset < 0 || offset.toLong + count.toLong * length > target.length)
+      throw new IllegalArgumentException(s"Cannot write $count identifiers at offset $offset into array of size ${target.length}.")
+
+    Generator.fill(target, offset, count)
   }
 
   def getFrom(that: String): ObjectId =
@@ -110,15 +194,21 @@ object ObjectId
     getFromOpt(that)
       .getOrElse(throw new IllegalArgumentException(s"Cannot generate ObjectId from: $that"))
 
+  def getFrom(mostSignificantBits: Long, leastSignificantBits: Long): ObjectId =
+    new ObjectId(mostSignificantBits, leastSignificantBits)
+
   def getFromOpt(that: String): Option[ObjectId] =
     if (ObjectId.isValid(that))
-      Hex.decodeOpt(that).map((x) => new ObjectId(x.toVector))
+      Some(new ObjectId(CompactIdentifier.readHex(that, 0, 16), CompactIdentifier.readHex(that, 16, 32)))
     else
       None
 
   def getFromOpt(that: Seq[Byte]): Option[ObjectId] =
     if (ObjectId.isValid(that))
-      Some(new ObjectId(that.toVector))
+      Some(fromBytes(that.toArray, 0))
     else
       None
+
+  private def fromBytes(bytes: Array[Byte], offset: Int): ObjectId =
+    new ObjectId(CompactIdentifier.readBits(bytes, offset), CompactIdentifier.readBits(bytes, offset + 8))
 }
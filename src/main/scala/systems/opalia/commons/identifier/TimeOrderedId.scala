@@ -0,0 +1,86 @@
+package systems.opalia.commons.identifier
+
+import java.time.Instant
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+
+
+object TimeOrderedId {
+
+  private val sequenceBits = 12
+  private val maximumTimestamp = (1L << 48) - 1
+  private val state = new AtomicLong(Long.MinValue)
+
+  def getNew: UniversallyUniqueId =
+    create(reserve(1), ThreadLocalRandom.current.nextLong())
+
+  def getNew(count: Int): IndexedSeq[UniversallyUniqueId] = {
+
+    if (count < 0)
+      throw new IllegalArgumentException(s"Expect non-negative number of identifiers but got $count.")
+
+    val random = ThreadLocalRandom.current
+    val first = reserve(count)
+
+    (0 until count).map((i) => create(first + i, random.nextLong()))
+  }
+
+  def isTimeOrdered(id: UniversallyUniqueId): Boolean =
+    ((id.mostSignificantBits >>> 12) & 0xF) == 7 && (id.leastSignificantBits >>> 62) == 2
+
+  def timestampOf(id: UniversallyUniqueId): Long = {
+
+    if (!isTimeOrdered(id))
+      throw new IllegalArgumentException(s"Expect time-ordered identifier but got $id.")
+
+    id.mostSignificantBits >>> 16
+  }
+
+  def instantOf(id: UniversallyUniqueId): Instant =
+    Instant.ofEpochMilli(timestampOf(id))
+
+  def lowerBound(timestamp: Long): UniversallyUniqueId =
+    UniversallyUniqueId.getFrom((checkTimestamp(timestamp) << 16) | 0x7000L, 0x8000000000000000L)
+
+  def lowerBound(timestamp: Instant): UniversallyUniqueId =
+    lowerBound(timestamp.toEpochMilli)
+
+  def upperBound(timestamp: Long): UniversallyUniqueId =
+    UniversallyUniqueId.getFrom((checkTimestamp(timestamp) << 16) | 0x7FFFL, 0xBFFFFFFFFFFFFFFFL)
+
+  def upperBound(timestamp: Instant): UniversallyUniqueId =
+    upperBound(timestamp.toEpochMilli)
+
+  private def checkTimestamp(timestamp: Long): Long = {
+
+    if (timestamp < 0 || timestamp > maximumTimestamp)
+      throw new IllegalArgumentException(s"Expect timestamp between 0 and $maximumTimestamp but got $timestamp.")
+
+    timestamp
+  }
+
+  private def reserve(count: Int): Long = {
+
+    val now = checkTimestamp(System.currentTimeMillis()) << sequenceBits
+    var last = state.get
+    var next = math.max(now, last + 1)
+
+    while (!state.compareAndSet(last, next + count - 1)) {
+
+      last = state.get
+      next = math.max(now, last + 1)
+    }
+
+    next
+  }
+
+  private def create(stamp: Long, random: Long): UniversallyUniqueId = {
+
+    val timestamp = stamp >>> sequenceBits
+    val sequence = stamp & ((1L << sequenceBits) - 1)
+
+    UniversallyUniqueId.getFrom(
+      (checkTimestamp(timestamp) << 16) | 0x7000L | sequence,
+      (random & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L)
+  }
+}
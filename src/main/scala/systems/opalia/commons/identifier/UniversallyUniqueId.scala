@@ -1,46 +1,57 @@
 package systems.opalia.commons.identifier
 
-import java.nio.ByteBuffer
 import java.util.UUID
-import scala.util.Try
-import systems.opalia.commons.codec.Hex
-import systems.opalia.interfaces.identifier._
 import systems.opalia.interfaces.rendering._
 
 
-class UniversallyUniqueId private(protected val data: Vector[Byte])
-  extends Identifier {
+class UniversallyUniqueId private(msb: Long, lsb: Long)
+  extends CompactIdentifier(msb, lsb)
+    with Ordered[UniversallyUniqueId] {
 
   def renderString(renderer: StringRenderer): StringRenderer = {
 
-    renderer ~
-      Hex.encode(data.slice(0, 4)) ~
-      '-' ~
-      Hex.encode(data.slice(4, 6)) ~
-      '-' ~
-      Hex.encode(data.slice(6, 8)) ~
-      '-' ~
-      Hex.encode(data.slice(8, 10)) ~
-      '-' ~
-      Hex.encode(data.slice(10, 16))
+    val chars = new Array[Char](36)
+
+    CompactIdentifier.writeHex(chars, 0, mostSignificantBits >>> 32, 8)
+    chars(8) = '-'
+    CompactIdentifier.writeHex(chars, 9, mostSignificantBits >>> 16, 4)
+    chars(13) = '-'
+    CompactIdentifier.writeHex(chars, 14, mostSignificantBits, 4)
+    chars(18) = '-'
+    CompactIdentifier.writeHex(chars, 19, leastSignificantBits >>> 48, 4)
+    chars(23) = '-'
+    CompactIdentifier.writeHex(chars, 24, leastSignificantBits, 12)
+
+    renderer ~ new String(chars)
   }
-}
 
-object UniversallyUniqueId
-  extends IdentifierCompanion[UniversallyUniqueId] {
+  def toUUID: UUID =
+    new UUID(mostSignificantBits, leastSignificantBits)
 
-  def isValid(that: String): Boolean = {
+  def compare(that: UniversallyUniqueId): Int =
+    compareBits(that)
 
-    val parts =
-      that.split("-")
+  override def equals(that: Any): Boolean =
+    that match {
+      case that: UniversallyUniqueId => equalBits(that)
+      case _ => false
+    }
+}
 
-    if (parts.length != 5)
-      false
-    else
-      parts
-        .zip(List(4, 2, 2, 2, 6))
-        .forall(part => Hex.isValid(part._1) && part._1.length == part._2 * 2)
-  }
+object UniversallyUniqueId
+  extends CompactIdentifierCompanion[UniversallyUniqueId] {
+
+  def isValid(that: String): Boolean =
+    that.length == 36 &&
+      that.charAt(8) == '-' &&
+      that.charAt(13) == '-' &&
+      that.charAt(18) == '-' &&
+      that.charAt(23) == '-' &&
+      CompactIdentifier.isHex(that, 0, 8) &&
+      CompactIdentifier.isHex(that, 9, 13) &&
+      CompactIdentifier.isHex(that, 14, 18) &&
+      CompactIdentifier.isHex(that, 19, 23) &&
+      CompactIdentifier.isHex(that, 24, 36)
 
   def isValid(that: Seq[Byte]): Boolean =
     that.length == length
@@ -48,19 +59,8 @@ object UniversallyUniqueId
   def length: Int =
     16
 
-  def getNew: UniversallyUniqueId = {
-
-    val x =
-      UUID.randomUUID()
-
-    val bytes =
-      ByteBuffer.allocate(length)
-        .order(Renderer.appDefaultByteOrder)
-        .putLong(x.getMostSignificantBits) // 8 bytes
-        .putLong(x.getLeastSignificantBits) // 8 bytes
-
-    new UniversallyUniqueId(bytes.array.toVector)
-  }
+  def getNew: UniversallyUniqueId =
+    getFrom(UUID.randomUUID())
 
   def getFrom(that: String): UniversallyUniqueId =
     getFromOpt(that)
@@ -70,41 +70,42 @@ object UniversallyUniqueId
     getFromOpt(that)
       .getOrElse(throw new IllegalArgumentException(s"Cannot generate UUID from: $that"))
 
+  def getFrom(that: UUID): UniversallyUniqueId =
+    new UniversallyUniqueId(that.getMostSignificantBits, that.getLeastSignificantBits)
+
+  def getFrom(mostSignificantBits: Long, leastSignificantBits: Long): UniversallyUniqueId =
+    new UniversallyUniqueId(mostSignificantBits, leastSignificantBits)
+
   def getFromOpt(that: String): Option[UniversallyUniqueId] =
-    if (UniversallyUniqueId.isValid(that))
-      Try(UUID.fromString(that)).toOption.map((x) => {
-
-        val bytes =
-          ByteBuffer.allocate(length)
-            .order(Renderer.appDefaultByteOrder)
-            .putLong(x.getMostSignificantBits) // 8 bytes
-            .putLong(x.getLeastSignificantBits) // 8 bytes
-
-        new UniversallyUniqueId(bytes.array.toVector)
-      })
-    else
+    if (UniversallyUniqueId.isValid(that)) {
+
+      val mostSignificantBits =
+        (CompactIdentifier.readHex(that, 0, 8) << 32) |
+          (CompactIdentifier.readHex(that, 9, 13) << 16) |
+          CompactIdentifier.readHex(that, 14, 18)
+
+      val leastSignificantBits =
+        (CompactIdentifier.readHex(that, 19, 23) << 48) |
+          CompactIdentifier.readHex(that, 24, 36)
+
+      Some(new UniversallyUniqueId(mostSignificantBits, leastSignificantBits))
+
+    } else
       None
 
   def getFromOpt(that: Seq[Byte]): Option[UniversallyUniqueId] =
-    if (UniversallyUniqueId.isValid(that))
-      Some(new UniversallyUniqueId(that.toVector))
-    else
-      None
+    if (UniversallyUniqueId.isValid(that)) {
 
-  def getFromName(that: String): UniversallyUniqueId =
-    getFromName(that.getBytes(Renderer.appDefaultCharset))
+      val bytes = that.toArray
 
-  def getFromName(that: Seq[Byte]): UniversallyUniqueId = {
+      Some(new UniversallyUniqueId(CompactIdentifier.readBits(bytes, 0), CompactIdentifier.readBits(bytes, 8)))
 
-    val x =
-      UUID.nameUUIDFromBytes(that.toArray)
+    } else
+      None
 
-    val bytes =
-      ByteBuffer.allocate(length)
-        .order(Renderer.appDefaultByteOrder)
-        .putLong(x.getMostSignificantBits) // 8 bytes
-        .putLong(x.getLeastSignificantBits) // 8 bytes
+  def getFromName(that: String): UniversallyUniqueId =
+    getFromName(that.getBytes(Renderer.appDefaultCharset))
 
-    new UniversallyUniqueId(bytes.array.toVector)
-  }
+  def getFromName(that: Seq[Byte]): UniversallyUniqueId =
+    getFrom(UUID.nameUUIDFromBytes(that.toArray))
 }
@@ -35,4 +35,11 @@ object Ast {
       FunctionDef.primitiveSignature
   }
 
+  case class SharedNode(node: Node)
+    extends Node {
+
+    val signature: FunctionDef.Signature =
+      node.signature
+  }
+
 }
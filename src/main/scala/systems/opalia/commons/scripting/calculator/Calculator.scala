@@ -1,188 +1,392 @@
 package systems.opalia.commons.scripting.calculator
 
-import scala.collection.mutable
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.locks.{Lock, ReentrantLock}
 import systems.opalia.commons.number.mathx
+import systems.opalia.commons.utility.LruCache
+import systems.opalia.commons.utility.instrumentation.Instrumentation
 import systems.opalia.interfaces.logging.SubLogger
 import systems.opalia.interfaces.scripting.ScriptSession
 
 
-class Calculator(session: ScriptSession, logger: SubLogger) {
-
-  protected val functions: mutable.HashSet[FunctionDef] = mutable.HashSet[FunctionDef]()
-  protected val operators: mutable.HashSet[FunctionDef.OperatorEntry] = mutable.HashSet[FunctionDef.OperatorEntry]()
+class Calculator private(session: Option[ScriptSession],
+                         compilerType: CompilerFactory.CompilerType,
+                         logger: SubLogger) {
 
   protected val parser = new CalculatorParser()
-  protected val compilerFactory = CompilerFactory.newCompilerFactory(CompilerFactory.CompilerType.JavaScript)
+  protected val compilerFactory = CompilerFactory.newCompilerFactory(compilerType)
+
+  private val registry = new AtomicReference[FunctionRegistry](FunctionRegistry.empty)
+  private val writeLock = new ReentrantLock()
+  private val sessionLock = new ReentrantLock()
+
+  private val compiledCache =
+    new LruCache[(String, FunctionDef.Signature), Calculator.Compiled](
+      Calculator.cacheSize,
+      Calculator.cacheWeight,
+      (_, compiled) => compiled.weight)
+
+  def this(session: ScriptSession, logger: SubLogger) =
+    this(Some(session), CompilerFactory.CompilerType.JavaScript, logger)
 
   def this(session: ScriptSession) =
-    this(session, new SubLogger {
+    this(session, Calculator.dummyLogger)
 
-      override val name: String = "Dummy"
+  def this(logger: SubLogger) =
+    this(None, CompilerFactory.CompilerType.Native, logger)
 
-      override protected def internal(message: String, throwable: Throwable): Unit = {
-      }
-    })
+  def this() =
+    this(Calculator.dummyLogger)
 
-  def getFunction(descriptor: String): FunctionApp = {
+  def functionRegistry: FunctionRegistry =
+    registry.get
 
-    session.withContext {
-      context =>
+  def cacheStatistics: LruCache.Statistics =
+    compiledCache.statistics
 
-        val function =
-          functions.find(_.signature.descriptor == descriptor)
-            .getOrElse(throw new CalculatorRuntimeException(s"Cannot find function with descriptor $descriptor."))
+  def getFunction(descriptor: String): FunctionApp = {
 
-        val scriptValue =
-          context.bindings.getMember(compilerFactory.encodeName(function.signature.descriptor))
+    val snapshot = registry.get
 
-        FunctionApp.fromScriptValue(function.signature, scriptValue)
-    }
+    val function =
+      snapshot.findFunction(descriptor)
+        .getOrElse(throw new CalculatorRuntimeException(s"Cannot find function with descriptor $descriptor."))
+
+    snapshot.apps(function.signature.descriptor)
   }
 
   def bindFunction(signature: FunctionDef.Signature, f: (Vector[FunctionApp]) => FunctionApp): FunctionApp = {
 
-    session.withContext {
-      context =>
+    bind(signature, f, pure = false)
+  }
 
-        if (!parser.validateDescriptor(signature.descriptor))
-          throw new CalculatorFormatException(s"Invalid descriptor ${signature.descriptor} not allowed.")
+  def bindPureFunction(signature: FunctionDef.Signature, f: (Vector[FunctionApp]) => FunctionApp): FunctionApp = {
 
-        if (functions.exists(_.signature.descriptor == signature.descriptor))
-          throw new CalculatorRuntimeException(s"Duplication with function ${signature.descriptor} not allowed.")
+    bind(signature, f, pure = true)
+  }
 
-        val function =
-          FunctionDef.root(signature, () => functions.toSet, () => operators.toSet)
+  def bindFunction(source: String, signature: FunctionDef.Signature): FunctionApp = {
 
-        val app =
-          FunctionApp.fromFunction(function.signature, f)
+    def process(): Calculator.Compiled =
+      processSource(signature.descriptor.nonEmpty)(
+        (addFunction: (FunctionDef) => Unit,
+         addOperator: (FunctionDef.OperatorEntry) => Unit,
+         getGlobalRegistry: () => FunctionRegistry) => {
 
-        context.bindings.putMember(compilerFactory.encodeName(function.signature.descriptor), app)
+          parser.parseBody(source, signature, addFunction, getGlobalRegistry) :: Nil
 
-        functions += function
+        }).head
 
-        app
-    }
-  }
+    if (signature.descriptor.nonEmpty)
+      process().app
+    else {
 
-  def bindFunction(source: String, signature: FunctionDef.Signature): FunctionApp = {
+      val key = (source, signature)
 
-    processSource(
-      (addFunction: (FunctionDef) => Unit,
-       addOperator: (FunctionDef.OperatorEntry) => Unit,
-       getGlobalFunctions: () => Set[FunctionDef],
-       getGlobalOperators: () => Set[FunctionDef.OperatorEntry]) => {
+      compiledCache.get(key).filter(_.valid(registry.get)) match {
+
+        case Some(compiled) =>
+          compiled.app
+
+        case None => {
 
-        parser.parseBody(source, signature, addFunction, getGlobalFunctions, getGlobalOperators) :: Nil
+          val compiled = process()
 
-      }).head
+          compiledCache.put(key, compiled)
+          compiled.app
+        }
+      }
+    }
   }
 
   def bindFunctions(source: String): List[FunctionApp] = {
 
-    processSource(
+    processSource(exclusive = true)(
       (addFunction: (FunctionDef) => Unit,
        addOperator: (FunctionDef.OperatorEntry) => Unit,
-       getGlobalFunctions: () => Set[FunctionDef],
-       getGlobalOperators: () => Set[FunctionDef.OperatorEntry]) => {
+       getGlobalRegistry: () => FunctionRegistry) => {
 
-        parser.parse(source, addFunction, addOperator, getGlobalFunctions, getGlobalOperators)
-      })
+        parser.parse(source, addFunction, addOperator, getGlobalRegistry)
+      }).map(_.app)
   }
 
   def eval(source: String, signature: FunctionDef.Signature = FunctionDef.primitiveSignature): FunctionApp = {
 
-    bindFunction(source, signature).invoke()
+    Calculator.evalTimer.time {
+
+      bindFunction(source, signature).invoke()
+    }
   }
 
-  private def processSource(parse: (
-    (FunctionDef) => Unit,
-      (FunctionDef.OperatorEntry) => Unit,
-      () => Set[FunctionDef],
-      () => Set[FunctionDef.OperatorEntry]) => List[Ast.Body]): List[FunctionApp] = {
+  def memoize(descriptor: String, capacity: Int = 1024): Unit = {
 
-    val newFunctions =
-      mutable.HashSet[FunctionDef]()
+    locked(writeLock) {
 
-    val newOperators =
-      mutable.HashSet[FunctionDef.OperatorEntry]()
+      val snapshot = registry.get
 
-    var getFunctions: () => Set[FunctionDef] =
-      () => functions.toSet ++ newFunctions.toSet
+      val function =
+        snapshot.findFunction(descriptor)
+          .getOrElse(throw new CalculatorRuntimeException(s"Cannot find function with descriptor $descriptor."))
 
-    var getOperators: () => Set[FunctionDef.OperatorEntry] =
-      () => operators.toSet ++ newOperators.toSet
+      if (!function.signature.parameters.forall(_.verify(FunctionDef.primitiveSignature)) ||
+        function.signature.target.nonEmpty)
+        throw new CalculatorRuntimeException(
+          s"Cannot memoize function $descriptor without primitive parameters and result.")
 
-    val getGlobalFunctions: () => Set[FunctionDef] =
-      () => getFunctions()
+      if (snapshot.pure.contains(descriptor))
+        throw new CalculatorRuntimeException(s"Function $descriptor is already pure.")
 
-    val getGlobalOperators: () => Set[FunctionDef.OperatorEntry] =
-      () => getOperators()
+      val name =
+        compilerFactory.encodeName(descriptor)
 
-    val addFunction: (FunctionDef) => Unit =
-      (function: FunctionDef) => {
+      var staged =
+        snapshot.withPure(descriptor)
+
+      val app =
+        snapshot.bodies.get(descriptor) match {
+
+          case Some(body) => {
+
+            val (optimized, statistics) = Optimizer.optimize(body, staged, strict = true)
 
-        if (function.signature.descriptor.nonEmpty) {
+            staged = staged.withBody(descriptor, optimized, statistics)
 
-          if (getFunctions().exists(_.signature.descriptor == function.signature.descriptor))
-            throw new CalculatorRuntimeException(
-              s"Duplication with function ${function.signature.descriptor} not allowed.")
+            compile(optimized)
+          }
 
-          newFunctions += function
+          case None =>
+            snapshot.apps(descriptor)
         }
+
+      val memoized =
+        FunctionApp.fromMemoized(app, capacity)
+
+      session.foreach {
+        session =>
+
+          locked(sessionLock) {
+
+            session.withContext {
+              context =>
+
+                context.bindings.putMember(name, memoized)
+            }
+          }
+      }
+
+      commit(staged.withApp(descriptor, memoized))
+    }
+  }
+
+  def evaluate(descriptor: String,
+               inputs: Array[Array[Double]],
+               output: Array[Double],
+               parallel: Boolean = false): Unit = {
+
+    val app = getFunction(descriptor)
+
+    if (parallel && session.nonEmpty)
+      throw new IllegalStateException("Cannot evaluate in parallel within a script session.")
+
+    Calculator.evaluateTimer.time {
+
+      if (parallel && output.length > Calculator.batchSize) {
+
+        val chunks = (output.length + Calculator.batchSize - 1) / Calculator.batchSize
+
+        (0 until chunks).par.foreach {
+          chunk =>
+
+            val from = chunk * Calculator.batchSize
+            val until = math.min(output.length, from + Calculator.batchSize)
+
+            app.evaluate(inputs, output, from, until)
+        }
+
+      } else
+        app.evaluate(inputs, output)
+    }
+  }
+
+  private def processSource(exclusive: Boolean)
+                           (parse: (
+                             (FunctionDef) => Unit,
+                               (FunctionDef.OperatorEntry) => Unit,
+                               () => FunctionRegistry) => List[Ast.Body]): List[Calculator.Compiled] = {
+
+    if (exclusive)
+      locked(writeLock)(compileSource(parse))
+    else
+      compileSource(parse)
+  }
+
+  private def compileSource(parse: (
+    (FunctionDef) => Unit,
+      (FunctionDef.OperatorEntry) => Unit,
+      () => FunctionRegistry) => List[Ast.Body]): List[Calculator.Compiled] = {
+
+    val snapshot =
+      registry.get
+
+    var staged =
+      snapshot
+
+    var getRegistry: () => FunctionRegistry =
+      () => staged
+
+    val getGlobalRegistry: () => FunctionRegistry =
+      () => getRegistry()
+
+    val addFunction: (FunctionDef) => Unit =
+      (function: FunctionDef) => {
+
+        if (function.signature.descriptor.nonEmpty)
+          staged = staged.withFunction(function)
       }
 
     val addOperator: (FunctionDef.OperatorEntry) => Unit =
       (operator: FunctionDef.OperatorEntry) => {
 
-        val function =
-          getFunctions()
-            .find(_.signature.descriptor == operator.descriptor)
-            .getOrElse(throw new CalculatorParserException(
-              s"Operator {${operator.operator}} refers to a non existing function ${operator.descriptor}."))
+        staged = staged.withOperator(operator)
+      }
+
+    val compiled =
+      parse(addFunction, addOperator, getGlobalRegistry).map {
+        ast =>
+
+          val descriptor =
+            ast.function.signature.descriptor
 
-        if (function.signature.parameters.length > 2)
-          throw new CalculatorParserException(
-            s"Operator {${operator.operator}} is not applicable to function ${operator.descriptor}.")
+          val (optimized, statistics) =
+            Optimizer.optimize(ast, staged, strict = false)
 
-        if (getOperators()
-          .filter(_.operator == operator.operator)
-          .flatMap(x => getFunctions().find(_.signature.descriptor == x.descriptor))
-          .exists(_.signature.parameters.length == function.signature.parameters.length))
-          throw new CalculatorParserException(
-            s"Operator {${operator.operator}} is already defined to a function with the same number of parameters.")
+          val app =
+            compile(optimized)
 
-        newOperators += operator
+          if (descriptor.nonEmpty)
+            staged =
+              staged
+                .withBody(descriptor, optimized, statistics)
+                .withApp(descriptor, app)
+
+          val dependencies =
+            (Optimizer.references(ast.node) ++ Optimizer.references(optimized.node))
+              .flatMap(x => staged.apps.get(x).map(x -> _))
+              .toMap
+
+          new Calculator.Compiled(app, staged.operators, dependencies, Optimizer.count(optimized.node))
       }
 
-    val apps =
-      parse(addFunction, addOperator, getGlobalFunctions, getGlobalOperators).map {
-        ast =>
+    if (staged ne snapshot)
+      commit(staged)
+
+    getRegistry =
+      () => registry.get
+
+    compiled
+  }
+
+  private def bind(signature: FunctionDef.Signature,
+                   f: (Vector[FunctionApp]) => FunctionApp,
+                   pure: Boolean): FunctionApp = {
+
+    if (!parser.validateDescriptor(signature.descriptor))
+      throw new CalculatorFormatException(s"Invalid descriptor ${signature.descriptor} not allowed.")
+
+    locked(writeLock) {
+
+      val function =
+        FunctionDef.root(signature, () => registry.get)
+
+      val app =
+        FunctionApp.fromFunction(function.signature, f)
+
+      val name =
+        compilerFactory.encodeName(function.signature.descriptor)
+
+      val updated =
+        registry.get.withFunction(function).withApp(function.signature.descriptor, app)
+
+      session.foreach {
+        session =>
+
+          locked(sessionLock) {
+
+            session.withContext {
+              context =>
+
+                context.bindings.putMember(name, app)
+            }
+          }
+      }
+
+      commit(if (pure) updated.withPure(function.signature.descriptor) else updated)
+
+      app
+    }
+  }
+
+  private def compile(ast: Ast.Body): FunctionApp = {
+
+    (compilerFactory.newCompiler(ast), session) match {
 
-          val result =
-            compilerFactory.newCompiler(ast).toString
+      case (compiler: NativeCompilerFactory.NativeCompiler, _) => {
 
-          logger(result)
+        logger(compiler.toString)
+
+        compiler.link(() => registry.get)
+      }
+
+      case (compiler, Some(session)) => {
+
+        val result =
+          compiler.toString
+
+        logger(result)
+
+        locked(sessionLock) {
 
           session.withContext {
             context =>
 
               val scriptValue =
-                context.eval(result)
+                if (ast.function.signature.descriptor.nonEmpty) {
+
+                  context.eval(result)
+                  context.bindings.getMember(compilerFactory.encodeName(ast.function.signature.descriptor))
 
-              FunctionApp.fromScriptValue(ast.function.signature, scriptValue)
+                } else
+                  context.eval(result)
+
+              FunctionApp.fromGuarded(FunctionApp.fromScriptValue(ast.function.signature, scriptValue), sessionLock)
           }
+        }
       }
 
-    functions ++= newFunctions
-    operators ++= newOperators
+      case _ =>
+        throw new IllegalStateException("Cannot evaluate script without session.")
+    }
+  }
 
-    getFunctions =
-      () => functions.toSet
+  private def commit(staged: FunctionRegistry): Unit = {
 
-    getOperators =
-      () => operators.toSet
+    registry.set(staged)
 
-    apps
+    compiledCache.removeIf((_, compiled) => !compiled.valid(staged))
+  }
+
+  private def locked[T](lock: Lock)(block: => T): T = {
+
+    lock.lock()
+
+    try {
+
+      block
+
+    } finally {
+
+      lock.unlock()
+    }
   }
 
   def bindDefaultFunctions(): Unit = {
@@ -193,72 +397,72 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
         (for (i <- 1 to length) yield FunctionDef.Signature(s"f$i", Nil, None)).toList,
         None)
 
-    bindFunction(simpleSignature("if", 3), fs => {
+    bindPureFunction(simpleSignature("if", 3), fs => {
 
       if (fs(0).invoke().value() != 0d) fs(1).invoke() else fs(2).invoke()
     })
 
-    bindFunction(simpleSignature("E", 0), fs => {
+    bindPureFunction(simpleSignature("E", 0), fs => {
 
       FunctionApp.fromDouble(math.E)
     })
 
-    bindFunction(simpleSignature("π", 0), fs => {
+    bindPureFunction(simpleSignature("π", 0), fs => {
 
       FunctionApp.fromDouble(math.Pi)
     })
 
-    bindFunction(simpleSignature("NaN", 0), fs => {
+    bindPureFunction(simpleSignature("NaN", 0), fs => {
 
       FunctionApp.fromDouble(Double.NaN)
     })
 
-    bindFunction(simpleSignature("MaxN", 0), fs => {
+    bindPureFunction(simpleSignature("MaxN", 0), fs => {
 
       FunctionApp.fromDouble(Double.MaxValue)
     })
 
-    bindFunction(simpleSignature("MinN", 0), fs => {
+    bindPureFunction(simpleSignature("MinN", 0), fs => {
 
       FunctionApp.fromDouble(Double.MinValue)
     })
 
-    bindFunction(simpleSignature("MinPosN", 0), fs => {
+    bindPureFunction(simpleSignature("MinPosN", 0), fs => {
 
       FunctionApp.fromDouble(Double.MinPositiveValue)
     })
 
-    bindFunction(simpleSignature("InfPosN", 0), fs => {
+    bindPureFunction(simpleSignature("InfPosN", 0), fs => {
 
       FunctionApp.fromDouble(Double.PositiveInfinity)
     })
 
-    bindFunction(simpleSignature("InfNegN", 0), fs => {
+    bindPureFunction(simpleSignature("InfNegN", 0), fs => {
 
       FunctionApp.fromDouble(Double.NegativeInfinity)
     })
 
-    bindFunction(simpleSignature("isNaN", 1), fs => {
+    bindPureFunction(simpleSignature("isNaN", 1), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value().isNaN) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("isInf", 1), fs => {
+    bindPureFunction(simpleSignature("isInf", 1), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value().isInfinity) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("isInfPos", 1), fs => {
+    bindPureFunction(simpleSignature("isInfPos", 1), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value().isPosInfinity) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("isInfNeg", 1), fs => {
+    bindPureFunction(simpleSignature("isInfNeg", 1), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value().isNegInfinity) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("isWhole", 1), fs => {
+    bindPureFunction(simpleSignature("isWhole", 1), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value().isWhole()) 1d else 0d)
     })
@@ -278,82 +482,82 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       FunctionApp.fromDouble(result)
     })
 
-    bindFunction(simpleSignature("pos", 1), fs => {
+    bindPureFunction(simpleSignature("pos", 1), fs => {
 
       FunctionApp.fromDouble(+fs(0).invoke().value())
     })
 
-    bindFunction(simpleSignature("neg", 1), fs => {
+    bindPureFunction(simpleSignature("neg", 1), fs => {
 
       FunctionApp.fromDouble(-fs(0).invoke().value())
     })
 
-    bindFunction(simpleSignature("add", 2), fs => {
+    bindPureFunction(simpleSignature("add", 2), fs => {
 
       FunctionApp.fromDouble(fs(0).invoke().value() + fs(1).invoke().value())
     })
 
-    bindFunction(simpleSignature("sub", 2), fs => {
+    bindPureFunction(simpleSignature("sub", 2), fs => {
 
       FunctionApp.fromDouble(fs(0).invoke().value() - fs(1).invoke().value())
     })
 
-    bindFunction(simpleSignature("mul", 2), fs => {
+    bindPureFunction(simpleSignature("mul", 2), fs => {
 
       FunctionApp.fromDouble(fs(0).invoke().value() * fs(1).invoke().value())
     })
 
-    bindFunction(simpleSignature("div", 2), fs => {
+    bindPureFunction(simpleSignature("div", 2), fs => {
 
       FunctionApp.fromDouble(fs(0).invoke().value() / fs(1).invoke().value())
     })
 
-    bindFunction(simpleSignature("mod", 2), fs => {
+    bindPureFunction(simpleSignature("mod", 2), fs => {
 
       FunctionApp.fromDouble(fs(0).invoke().value() % fs(1).invoke().value())
     })
 
-    bindFunction(simpleSignature("eq", 2), fs => {
+    bindPureFunction(simpleSignature("eq", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() == fs(1).invoke().value()) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("ne", 2), fs => {
+    bindPureFunction(simpleSignature("ne", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() != fs(1).invoke().value()) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("lt", 2), fs => {
+    bindPureFunction(simpleSignature("lt", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() < fs(1).invoke().value()) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("le", 2), fs => {
+    bindPureFunction(simpleSignature("le", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() <= fs(1).invoke().value()) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("gt", 2), fs => {
+    bindPureFunction(simpleSignature("gt", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() > fs(1).invoke().value()) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("ge", 2), fs => {
+    bindPureFunction(simpleSignature("ge", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() >= fs(1).invoke().value()) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("and", 2), fs => {
+    bindPureFunction(simpleSignature("and", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() != 0d && fs(1).invoke().value() != 0d) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("or", 2), fs => {
+    bindPureFunction(simpleSignature("or", 2), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() != 0d || fs(1).invoke().value() != 0d) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("xor", 2), fs => {
+    bindPureFunction(simpleSignature("xor", 2), fs => {
 
       val a = fs(0).invoke().value() != 0d
       val b = fs(1).invoke().value() != 0d
@@ -361,207 +565,207 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       FunctionApp.fromDouble(if (a && !b || !a && b) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("not", 1), fs => {
+    bindPureFunction(simpleSignature("not", 1), fs => {
 
       FunctionApp.fromDouble(if (fs(0).invoke().value() == 0d) 1d else 0d)
     })
 
-    bindFunction(simpleSignature("sin", 1), fs => {
+    bindPureFunction(simpleSignature("sin", 1), fs => {
 
       FunctionApp.fromDouble(math.sin(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("cos", 1), fs => {
+    bindPureFunction(simpleSignature("cos", 1), fs => {
 
       FunctionApp.fromDouble(math.cos(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("tan", 1), fs => {
+    bindPureFunction(simpleSignature("tan", 1), fs => {
 
       FunctionApp.fromDouble(math.tan(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("asin", 1), fs => {
+    bindPureFunction(simpleSignature("asin", 1), fs => {
 
       FunctionApp.fromDouble(math.asin(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("acos", 1), fs => {
+    bindPureFunction(simpleSignature("acos", 1), fs => {
 
       FunctionApp.fromDouble(math.acos(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("atan", 1), fs => {
+    bindPureFunction(simpleSignature("atan", 1), fs => {
 
       FunctionApp.fromDouble(math.atan(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("sinh", 1), fs => {
+    bindPureFunction(simpleSignature("sinh", 1), fs => {
 
       FunctionApp.fromDouble(math.sinh(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("cosh", 1), fs => {
+    bindPureFunction(simpleSignature("cosh", 1), fs => {
 
       FunctionApp.fromDouble(math.cosh(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("tanh", 1), fs => {
+    bindPureFunction(simpleSignature("tanh", 1), fs => {
 
       FunctionApp.fromDouble(math.tanh(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("atan2", 2), fs => {
+    bindPureFunction(simpleSignature("atan2", 2), fs => {
 
       FunctionApp.fromDouble(math.atan2(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("hypot", 2), fs => {
+    bindPureFunction(simpleSignature("hypot", 2), fs => {
 
       FunctionApp.fromDouble(math.hypot(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("rad", 1), fs => {
+    bindPureFunction(simpleSignature("rad", 1), fs => {
 
       FunctionApp.fromDouble(math.toRadians(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("deg", 1), fs => {
+    bindPureFunction(simpleSignature("deg", 1), fs => {
 
       FunctionApp.fromDouble(math.toDegrees(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("sqrt", 1), fs => {
+    bindPureFunction(simpleSignature("sqrt", 1), fs => {
 
       FunctionApp.fromDouble(math.sqrt(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("cbrt", 1), fs => {
+    bindPureFunction(simpleSignature("cbrt", 1), fs => {
 
       FunctionApp.fromDouble(math.cbrt(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("pow", 2), fs => {
+    bindPureFunction(simpleSignature("pow", 2), fs => {
 
       FunctionApp.fromDouble(math.pow(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("exp", 1), fs => {
+    bindPureFunction(simpleSignature("exp", 1), fs => {
 
       FunctionApp.fromDouble(math.exp(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("expm1", 1), fs => {
+    bindPureFunction(simpleSignature("expm1", 1), fs => {
 
       FunctionApp.fromDouble(math.expm1(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("ln", 1), fs => {
+    bindPureFunction(simpleSignature("ln", 1), fs => {
 
       FunctionApp.fromDouble(math.log(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("ln1p", 1), fs => {
+    bindPureFunction(simpleSignature("ln1p", 1), fs => {
 
       FunctionApp.fromDouble(math.log1p(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("log", 2), fs => {
+    bindPureFunction(simpleSignature("log", 2), fs => {
 
       FunctionApp.fromDouble(mathx.log(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("log10", 1), fs => {
+    bindPureFunction(simpleSignature("log10", 1), fs => {
 
       FunctionApp.fromDouble(math.log10(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("ceil", 1), fs => {
+    bindPureFunction(simpleSignature("ceil", 1), fs => {
 
       FunctionApp.fromDouble(math.ceil(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("ceiln", 2), fs => {
+    bindPureFunction(simpleSignature("ceiln", 2), fs => {
 
       FunctionApp.fromDouble(mathx.ceil(fs(0).invoke().value(), fs(1).invoke().value().toInt))
     })
 
-    bindFunction(simpleSignature("floor", 1), fs => {
+    bindPureFunction(simpleSignature("floor", 1), fs => {
 
       FunctionApp.fromDouble(math.floor(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("floorn", 2), fs => {
+    bindPureFunction(simpleSignature("floorn", 2), fs => {
 
       FunctionApp.fromDouble(mathx.floor(fs(0).invoke().value(), fs(1).invoke().value().toInt))
     })
 
-    bindFunction(simpleSignature("round", 1), fs => {
+    bindPureFunction(simpleSignature("round", 1), fs => {
 
       FunctionApp.fromDouble(math.round(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("roundn", 2), fs => {
+    bindPureFunction(simpleSignature("roundn", 2), fs => {
 
       FunctionApp.fromDouble(mathx.round(fs(0).invoke().value(), fs(1).invoke().value().toInt))
     })
 
-    bindFunction(simpleSignature("rint", 1), fs => {
+    bindPureFunction(simpleSignature("rint", 1), fs => {
 
       FunctionApp.fromDouble(math.rint(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("abs", 1), fs => {
+    bindPureFunction(simpleSignature("abs", 1), fs => {
 
       FunctionApp.fromDouble(math.abs(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("max", 2), fs => {
+    bindPureFunction(simpleSignature("max", 2), fs => {
 
       FunctionApp.fromDouble(math.max(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("min", 2), fs => {
+    bindPureFunction(simpleSignature("min", 2), fs => {
 
       FunctionApp.fromDouble(math.min(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("sig", 1), fs => {
+    bindPureFunction(simpleSignature("sig", 1), fs => {
 
       FunctionApp.fromDouble(math.signum(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("ulp", 1), fs => {
+    bindPureFunction(simpleSignature("ulp", 1), fs => {
 
       FunctionApp.fromDouble(math.ulp(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("rem", 2), fs => {
+    bindPureFunction(simpleSignature("rem", 2), fs => {
 
       FunctionApp.fromDouble(math.IEEEremainder(fs(0).invoke().value(), fs(1).invoke().value()))
     })
 
-    bindFunction(simpleSignature("normp", 1), fs => {
+    bindPureFunction(simpleSignature("normp", 1), fs => {
 
       FunctionApp.fromDouble(mathx.normalizePercent(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("norma360", 1), fs => {
+    bindPureFunction(simpleSignature("norma360", 1), fs => {
 
       FunctionApp.fromDouble(mathx.normalizeAngle360(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("norma180", 1), fs => {
+    bindPureFunction(simpleSignature("norma180", 1), fs => {
 
       FunctionApp.fromDouble(mathx.normalizeAngle180(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("norma090", 1), fs => {
+    bindPureFunction(simpleSignature("norma090", 1), fs => {
 
       FunctionApp.fromDouble(mathx.normalizeAngle090(fs(0).invoke().value()))
     })
 
-    bindFunction(simpleSignature("bit_sl", 2), fs => {
+    bindPureFunction(simpleSignature("bit_sl", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -570,7 +774,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_sr", 2), fs => {
+    bindPureFunction(simpleSignature("bit_sr", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -579,7 +783,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_rl", 2), fs => {
+    bindPureFunction(simpleSignature("bit_rl", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -588,7 +792,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_rr", 2), fs => {
+    bindPureFunction(simpleSignature("bit_rr", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -597,7 +801,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_not", 2), fs => {
+    bindPureFunction(simpleSignature("bit_not", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), 0d, {
         (a, b, c, d) =>
@@ -607,7 +811,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_and", 2), fs => {
+    bindPureFunction(simpleSignature("bit_and", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -617,7 +821,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_xor", 2), fs => {
+    bindPureFunction(simpleSignature("bit_xor", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -627,7 +831,7 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       }))
     })
 
-    bindFunction(simpleSignature("bit_or", 2), fs => {
+    bindPureFunction(simpleSignature("bit_or", 2), fs => {
 
       FunctionApp.fromDouble(binaryHelperFunction(fs(0).invoke().value(), fs(1).invoke().value(), {
         (a, b, c, d) =>
@@ -697,3 +901,32 @@ class Calculator(session: ScriptSession, logger: SubLogger) {
       """.stripMargin)
   }
 }
+
+object Calculator {
+
+  private val evalTimer = Instrumentation.timer("calculator.eval")
+  private val evaluateTimer = Instrumentation.timer("calculator.evaluate")
+
+  private val batchSize = 8192
+  private val cacheSize = 4096
+  private val cacheWeight = 1L << 20
+
+  private final class Compiled(val app: FunctionApp,
+                               operators: Map[(String, Int), FunctionDef.OperatorEntry],
+                               dependencies: Map[String, FunctionApp],
+                               val weight: Long) {
+
+    def valid(registry: FunctionRegistry): Boolean =
+      (registry.operators eq operators) &&
+        dependencies.forall(x => registry.apps.get(x._1).exists(_ eq x._2))
+  }
+
+  private val dummyLogger =
+    new SubLogger {
+
+      override val name: String = "Dummy"
+
+      override protected def internal(message: String, throwable: Throwable): Unit = {
+      }
+    }
+}
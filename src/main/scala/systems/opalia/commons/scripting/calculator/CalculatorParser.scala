@@ -289,8 +289,7 @@ class CalculatorParser {
   def parse(string: String,
             addFunction: (FunctionDef) => Unit,
             addOperator: (FunctionDef.OperatorEntry) => Unit,
-            getGlobalFunctions: () => Set[FunctionDef],
-            getGlobalOperators: () => Set[FunctionDef.OperatorEntry]): List[Ast.Body] = {
+            getGlobalRegistry: () => FunctionRegistry): List[Ast.Body] = {
 
     def group(lines: List[String], acc: String = ""): List[String] =
       lines match {
@@ -318,7 +317,7 @@ class CalculatorParser {
           case declaration: ParserAst.DeclarationFunction =>
 
             val function =
-              FunctionDef.root(declaration.signature, () => getGlobalFunctions(), () => getGlobalOperators())
+              FunctionDef.root(declaration.signature, getGlobalRegistry)
 
             addFunction(function)
 
@@ -341,14 +340,13 @@ class CalculatorParser {
   def parseBody(string: String,
                 signature: FunctionDef.Signature,
                 addFunction: (FunctionDef) => Unit,
-                getGlobalFunctions: () => Set[FunctionDef],
-                getGlobalOperators: () => Set[FunctionDef.OperatorEntry]): Ast.Body = {
+                getGlobalRegistry: () => FunctionRegistry): Ast.Body = {
 
     val lines = string.split("\n").toList.map(_.takeWhile(_ != '#'))
 
     val body = parseBody(lines.mkString(" ").trim)
 
-    val function = FunctionDef.root(signature, () => getGlobalFunctions(), () => getGlobalOperators())
+    val function = FunctionDef.root(signature, getGlobalRegistry)
 
     addFunction(function)
 
@@ -366,12 +364,12 @@ class CalculatorParser {
     case class OperationNode(node: ParserAst.OperatorNode)
       extends Node
 
-    val currentScope = parentFunction.currentScope
-    val globalScope = parentFunction.globalScope
-    val globalOperators = parentFunction.globalOperators
+    val internScope = parentFunction.internScope
+    val globalRegistry = parentFunction.globalRegistry
+    val globalScope = globalRegistry.scope
 
     def findSignature(descriptor: String): FunctionDef.Signature =
-      currentScope.getOrElse(descriptor,
+      internScope.get(descriptor).orElse(globalScope.get(descriptor)).getOrElse(
         throw new CalculatorParserException(
           s"Error in body of function $parentFunction.\n" +
             s"Cannot find function $descriptor in current scope."))
@@ -383,8 +381,7 @@ class CalculatorParser {
             s"Cannot find function $descriptor in global scope."))
 
     def findDescriptorByOperator(operator: String, operands: Int): String =
-      globalOperators.find(x => x.operator == operator &&
-        globalScope.get(x.descriptor).exists(_.parameters.length == operands))
+      globalRegistry.findOperator(operator, operands)
         .map(_.descriptor)
         .getOrElse(throw new CalculatorParserException(
           s"Error in body of function $parentFunction.\n" +
@@ -661,67 +658,66 @@ class CalculatorParser {
 
     def transformOperations(nodes: List[Node]): Ast.Node = {
 
-      def transformOperands(nodes: List[Node], operators: List[FunctionDef.OperatorEntry], first: Boolean = false): List[Node] =
+      def findOperator(operator: String, operands: Int, priority: Int): Option[FunctionDef.OperatorEntry] =
+        globalRegistry.findOperator(operator, operands).filter(_.priority == priority)
+
+      def transformOperands(nodes: List[Node], priority: Int, first: Boolean = false): List[Node] =
         nodes match {
 
           case node :: Nil =>
             List(node)
 
           case OperationNode(op) :: (right@WrapperNode(node, false)) :: tail if (first) =>
-            operators
-              .find(x => x.operator == op.operator && globalScope.get(x.descriptor).exists(_.parameters.length == 1))
+            findOperator(op.operator, 1, priority)
               .map {
                 operator =>
 
                   val result = WrapperNode(applyArgumentsToOperator(operator.descriptor, List(node)), false)
 
-                  transformOperands(result :: tail, operators)
+                  transformOperands(result :: tail, priority)
 
               }.getOrElse {
 
-              OperationNode(op) :: transformOperands(right :: tail, operators)
+              OperationNode(op) :: transformOperands(right :: tail, priority)
             }
 
           case (left@WrapperNode(node1, _)) :: OperationNode(op) :: (right@WrapperNode(node2, _)) :: tail =>
-            operators
-              .find(x => x.operator == op.operator && globalScope.get(x.descriptor).exists(_.parameters.length == 2))
+            findOperator(op.operator, 2, priority)
               .map {
                 operator =>
 
                   val result = WrapperNode(applyArgumentsToOperator(operator.descriptor, List(node1, node2)), false)
 
-                  transformOperands(result :: tail, operators)
+                  transformOperands(result :: tail, priority)
 
               }.getOrElse {
 
-              left :: OperationNode(op) :: transformOperands(right :: tail, operators)
+              left :: OperationNode(op) :: transformOperands(right :: tail, priority)
             }
 
           case (left@WrapperNode(node1, _)) :: OperationNode(op1) :: OperationNode(op2) :: (right@WrapperNode(node2, false)) :: tail =>
-            operators
-              .find(x => x.operator == op2.operator && globalScope.get(x.descriptor).exists(_.parameters.length == 1))
+            findOperator(op2.operator, 1, priority)
               .map {
                 operator =>
 
                   val result = WrapperNode(applyArgumentsToOperator(operator.descriptor, List(node2)), false)
 
-                  transformOperands(left :: OperationNode(op1) :: result :: tail, operators)
+                  transformOperands(left :: OperationNode(op1) :: result :: tail, priority)
 
               }.getOrElse {
 
-              operators
-                .find(x => x.operator == op1.operator && globalScope.get(x.descriptor).exists(_.parameters.length == 2))
+              findOperator(op1.operator, 2, priority)
                 .map {
                   operator =>
 
                     val node3 = applyArgumentsToOperator(findDescriptorByOperator(op2.operator, 1), List(node2))
                     val result = WrapperNode(applyArgumentsToOperator(operator.descriptor, List(node1, node3)), false)
 
-                    transformOperands(result :: tail, operators)
+                    transformOperands(result :: tail, priority)
 
                 }.getOrElse {
 
-                left :: OperationNode(op1) :: OperationNode(op2) :: transformOperands(right :: tail, operators)
+                left :: OperationNode(op1) :: OperationNode(op2) :: transformOperands(right :: tail, priority)
               }
             }
 
@@ -732,10 +728,8 @@ class CalculatorParser {
       def process(nodes: List[Node]): Ast.Node = {
 
         val result =
-          globalOperators.toSeq
-            .groupBy(_.priority).toSeq
-            .sortWith((a, b) => a._1 > b._1)
-            .foldLeft(nodes)((a, b) => transformOperands(a, b._2.toList, first = true))
+          globalRegistry.priorities
+            .foldLeft(nodes)((a, b) => transformOperands(a, b, first = true))
 
         result match {
 
@@ -14,6 +14,7 @@ object CompilerFactory {
 
     compilerType match {
       case CompilerType.JavaScript => new JsCompilerFactory()
+      case CompilerType.Native => new NativeCompilerFactory()
     }
   }
 
@@ -24,6 +25,9 @@ object CompilerFactory {
     case object JavaScript
       extends CompilerType
 
+    case object Native
+      extends CompilerType
+
   }
 
 }
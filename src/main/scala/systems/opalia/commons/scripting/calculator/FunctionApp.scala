@@ -1,5 +1,7 @@
 package systems.opalia.commons.scripting.calculator
 
+import java.util.concurrent.locks.Lock
+import systems.opalia.commons.utility.LruCache
 import systems.opalia.interfaces.scripting._
 
 
@@ -72,6 +74,56 @@ abstract class FunctionApp private(val signature: FunctionDef.Signature)
     }
   }
 
+  def evaluate(inputs: Array[Array[Double]], output: Array[Double]): Unit = {
+
+    evaluate(inputs, output, 0, output.length)
+  }
+
+  private[calculator] def evaluate(inputs: Array[Array[Double]], output: Array[Double], from: Int, until: Int): Unit = {
+
+    if (signature.parameters.size != inputs.length)
+      throw new CalculatorRuntimeException("Incorrect number of arguments.")
+
+    if (!signature.parameters.forall(_.verify(FunctionDef.primitiveSignature)) || signature.target.nonEmpty)
+      throw new CalculatorRuntimeException("Cannot verify signature.")
+
+    if (inputs.exists(_.length != output.length))
+      throw new IllegalArgumentException("Expect input columns with the same length as the output.")
+
+    val columns = inputs.map(x => new FunctionApp.Column(x))
+    val arguments = columns.toVector
+    var row = from
+
+    // the columns are cursors, so every value must be read before moving on to the next row
+    while (row < until) {
+
+      columns.foreach(_.row = row)
+
+      output(row) =
+        (apply(arguments) match {
+
+          case Left(x) =>
+            x.apply(Vector.empty[FunctionApp])
+
+          case Right(_) =>
+            throw new CalculatorRuntimeException("Expect function to continue.")
+
+        }) match {
+
+          case Left(_) =>
+            throw new CalculatorRuntimeException("Expect value to continue.")
+
+          case Right(x) =>
+            x
+        }
+
+      row += 1
+    }
+  }
+
+  private def proceed(arguments: Vector[FunctionApp]): Either[FunctionApp, Double] =
+    apply(arguments)
+
   protected def apply(arguments: Vector[FunctionApp] = Vector.empty): Either[FunctionApp, Double]
 }
 
@@ -126,6 +178,96 @@ object FunctionApp {
     }
   }
 
+  private[calculator] def fromCompiled(signature: FunctionDef.Signature,
+                                       f: (Vector[FunctionApp]) => FunctionApp): FunctionApp = {
+
+    new Compiled(signature, f)
+  }
+
+  private[calculator] def call(app: FunctionApp, arguments: Vector[FunctionApp]): FunctionApp = {
+
+    app match {
+
+      case x: Compiled =>
+        x.body(arguments)
+
+      case x =>
+        x.invoke(arguments)
+    }
+  }
+
+  private[calculator] def fromGuarded(app: FunctionApp, lock: Lock): FunctionApp = {
+
+    new FunctionApp(app.signature) {
+
+      def apply(arguments: Vector[FunctionApp]): Either[FunctionApp, Double] = {
+
+        lock.lock()
+
+        try {
+
+          app.proceed(arguments) match {
+
+            case Left(x) =>
+              Left(fromGuarded(x, lock))
+
+            case x =>
+              x
+          }
+
+        } finally {
+
+          lock.unlock()
+        }
+      }
+    }
+  }
+
+  private[calculator] def fromMemoized(app: FunctionApp, capacity: Int): FunctionApp = {
+
+    val cache = new LruCache[Vector[Long], FunctionApp](capacity)
+
+    new FunctionApp(app.signature) {
+
+      def apply(arguments: Vector[FunctionApp]): Either[FunctionApp, Double] = {
+
+        val values = arguments.map(_.invoke().value())
+        val key = values.map(java.lang.Double.doubleToLongBits)
+
+        Left(cache.getOrElseUpdate(key, fromDouble(call(app, values.map(x => wrap(fromDouble(x)))).value())))
+      }
+    }
+  }
+
+  private final class Compiled(signature: FunctionDef.Signature, val body: (Vector[FunctionApp]) => FunctionApp)
+    extends FunctionApp(signature) {
+
+    def apply(arguments: Vector[FunctionApp]): Either[FunctionApp, Double] = {
+
+      Left(body(arguments))
+    }
+  }
+
+  private final class Column(values: Array[Double])
+    extends FunctionApp(FunctionDef.primitiveSignature) {
+
+    var row: Int = 0
+
+    private val current =
+      new FunctionApp(FunctionDef.primitiveSignature) {
+
+        def apply(arguments: Vector[FunctionApp]): Either[FunctionApp, Double] = {
+
+          Right(values(row))
+        }
+      }
+
+    def apply(arguments: Vector[FunctionApp]): Either[FunctionApp, Double] = {
+
+      Left(current)
+    }
+  }
+
   def wrap(app: FunctionApp): FunctionApp = {
 
     val signature =
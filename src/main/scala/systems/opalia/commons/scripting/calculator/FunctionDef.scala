@@ -1,15 +1,18 @@
 package systems.opalia.commons.scripting.calculator
 
 import java.util.Objects
-import systems.opalia.commons.scripting.calculator.FunctionDef.OperatorEntry
 
 
 abstract class FunctionDef private(val parent: Option[FunctionDef],
                                    val signature: FunctionDef.Signature) {
 
-  def globalFunctions: Set[FunctionDef]
+  def globalRegistry: FunctionRegistry
 
-  def globalOperators: Set[FunctionDef.OperatorEntry]
+  def globalFunctions: Set[FunctionDef] =
+    globalRegistry.functions.values.toSet
+
+  def globalOperators: Set[FunctionDef.OperatorEntry] =
+    globalRegistry.operators.values.toSet
 
   override def equals(that: Any): Boolean =
     that match {
@@ -24,7 +27,7 @@ abstract class FunctionDef private(val parent: Option[FunctionDef],
   override def hashCode: Int =
     signature.hashCode
 
-  private def internScope: Map[String, FunctionDef.Signature] = {
+  private[calculator] def internScope: Map[String, FunctionDef.Signature] = {
 
     val _1 =
       parent.map(_.internScope).getOrElse(Map.empty)
@@ -45,7 +48,7 @@ abstract class FunctionDef private(val parent: Option[FunctionDef],
     globalScope ++ internScope
 
   def globalScope: Map[String, FunctionDef.Signature] =
-    globalFunctions.map(x => (x.signature.descriptor, x.signature)).toMap
+    globalRegistry.scope
 
   def createChild(signature: FunctionDef.Signature): FunctionDef = {
 
@@ -53,28 +56,20 @@ abstract class FunctionDef private(val parent: Option[FunctionDef],
 
     new FunctionDef(Some(_parent), signature) {
 
-      def globalFunctions: Set[FunctionDef] =
-        _parent.globalFunctions
-
-      def globalOperators: Set[OperatorEntry] =
-        _parent.globalOperators
+      def globalRegistry: FunctionRegistry =
+        _parent.globalRegistry
     }
   }
 }
 
 object FunctionDef {
 
-  def root(signature: Signature,
-           getGlobalFunctions: () => Set[FunctionDef],
-           getGlobalOperators: () => Set[OperatorEntry]): FunctionDef = {
+  def root(signature: Signature, getGlobalRegistry: () => FunctionRegistry): FunctionDef = {
 
     new FunctionDef(None, signature) {
 
-      def globalFunctions: Set[FunctionDef] =
-        getGlobalFunctions.apply
-
-      def globalOperators: Set[FunctionDef.OperatorEntry] =
-        getGlobalOperators.apply
+      def globalRegistry: FunctionRegistry =
+        getGlobalRegistry.apply
     }
   }
 
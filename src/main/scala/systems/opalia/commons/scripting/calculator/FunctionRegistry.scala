@@ -0,0 +1,78 @@
+package systems.opalia.commons.scripting.calculator
+
+
+final class FunctionRegistry private(val functions: Map[String, FunctionDef],
+                                     val operators: Map[(String, Int), FunctionDef.OperatorEntry],
+                                     val scope: Map[String, FunctionDef.Signature],
+                                     val priorities: List[Int],
+                                     val pure: Set[String],
+                                     val statistics: Map[String, Optimizer.Statistics],
+                                     private[calculator] val apps: Map[String, FunctionApp],
+                                     private[calculator] val bodies: Map[String, Ast.Body]) {
+
+  def findFunction(descriptor: String): Option[FunctionDef] =
+    functions.get(descriptor)
+
+  def findOperator(operator: String, operands: Int): Option[FunctionDef.OperatorEntry] =
+    operators.get((operator, operands))
+
+  def withFunction(function: FunctionDef): FunctionRegistry = {
+
+    val descriptor = function.signature.descriptor
+
+    if (functions.contains(descriptor))
+      throw new CalculatorRuntimeException(s"Duplication with function $descriptor not allowed.")
+
+    copy(
+      functions = functions + (descriptor -> function),
+      scope = scope + (descriptor -> function.signature))
+  }
+
+  def withOperator(operator: FunctionDef.OperatorEntry): FunctionRegistry = {
+
+    val function =
+      functions.getOrElse(operator.descriptor, throw new CalculatorParserException(
+        s"Operator {${operator.operator}} refers to a non existing function ${operator.descriptor}."))
+
+    val operands = function.signature.parameters.length
+
+    if (operands > 2)
+      throw new CalculatorParserException(
+        s"Operator {${operator.operator}} is not applicable to function ${operator.descriptor}.")
+
+    if (operators.contains((operator.operator, operands)))
+      throw new CalculatorParserException(
+        s"Operator {${operator.operator}} is already defined to a function with the same number of parameters.")
+
+    copy(
+      operators = operators + ((operator.operator, operands) -> operator),
+      priorities = (operator.priority :: priorities).distinct.sorted(Ordering.Int.reverse))
+  }
+
+  private[calculator] def withApp(descriptor: String, app: FunctionApp): FunctionRegistry =
+    copy(apps = apps + (descriptor -> app))
+
+  private[calculator] def withPure(descriptor: String): FunctionRegistry =
+    copy(pure = pure + descriptor)
+
+  private[calculator] def withBody(descriptor: String,
+                                   body: Ast.Body,
+                                   statistics: Optimizer.Statistics): FunctionRegistry =
+    copy(bodies = bodies + (descriptor -> body), statistics = this.statistics + (descriptor -> statistics))
+
+  private def copy(functions: Map[String, FunctionDef] = functions,
+                   operators: Map[(String, Int), FunctionDef.OperatorEntry] = operators,
+                   scope: Map[String, FunctionDef.Signature] = scope,
+                   priorities: List[Int] = priorities,
+                   pure: Set[String] = pure,
+                   statistics: Map[String, Optimizer.Statistics] = statistics,
+                   apps: Map[String, FunctionApp] = apps,
+                   bodies: Map[String, Ast.Body] = bodies): FunctionRegistry =
+    new FunctionRegistry(functions, operators, scope, priorities, pure, statistics, apps, bodies)
+}
+
+object FunctionRegistry {
+
+  val empty: FunctionRegistry =
+    new FunctionRegistry(Map.empty, Map.empty, Map.empty, Nil, Set.empty, Map.empty, Map.empty, Map.empty)
+}
@@ -64,6 +64,14 @@ private[calculator] final class JsCompilerFactory()
                 node.number ~
                 """;})"""
             }
+
+            case node: Ast.SharedNode => {
+
+              renderer.newEmpty ~
+                """(function(){var v;return function(){return v||(v=""" ~
+                transform(node.node) ~
+                """);};})()"""
+            }
           }
 
         if (body.function.signature.descriptor.nonEmpty) {
@@ -0,0 +1,226 @@
+package systems.opalia.commons.scripting.calculator
+
+import systems.opalia.interfaces.rendering._
+
+
+private[calculator] final class NativeCompilerFactory()
+  extends CompilerFactory {
+
+  def encodeName(descriptor: String): String =
+    descriptor
+
+  def newCompiler(ast: Ast.Body): NativeCompilerFactory.NativeCompiler =
+    new NativeCompilerFactory.NativeCompiler(ast)
+}
+
+private[calculator] object NativeCompilerFactory {
+
+  final class NativeCompiler(val ast: Ast.Body)
+    extends Compiler {
+
+    def link(registry: () => FunctionRegistry): FunctionApp = {
+
+      compile(ast, Nil, registry)(null)
+    }
+
+    def renderString(renderer: StringRenderer): StringRenderer = {
+
+      def joinComma(seq: Seq[StringRenderer]): StringRenderer =
+        renderer.newEmpty.glue(seq, ",")
+
+      def parameters(body: Ast.Body): StringRenderer =
+        joinComma(body.function.signature.parameters.map(x => renderer.newEmpty ~ x.descriptor))
+
+      def transform(node: Ast.Node): StringRenderer =
+        node match {
+
+          case node: Ast.LambdaFunctionNode =>
+            renderer.newEmpty ~ """((""" ~ parameters(node.body) ~ """) -> """ ~ transform(node.body.node) ~ """)"""
+
+          case node: Ast.FunctionNode =>
+            renderer.newEmpty ~ node.descriptor
+
+          case node: Ast.ApplicationNode =>
+            renderer.newEmpty ~ transform(node.node) ~ """(""" ~ joinComma(node.arguments.map(transform)) ~ """)"""
+
+          case node: Ast.NumberNode =>
+            renderer.newEmpty ~ node.number
+
+          case node: Ast.SharedNode =>
+            renderer.newEmpty ~ """shared(""" ~ transform(node.node) ~ """)"""
+        }
+
+      renderer ~
+        ast.function.signature.descriptor ~
+        """(""" ~
+        parameters(ast) ~
+        """) = """ ~
+        transform(ast.node)
+    }
+  }
+
+  private final class Frame(val parent: Frame, val arguments: Vector[FunctionApp])
+
+  private abstract class Code {
+
+    def apply(frame: Frame): FunctionApp
+  }
+
+  private final class Constant(app: FunctionApp)
+    extends Code {
+
+    def apply(frame: Frame): FunctionApp =
+      app
+  }
+
+  private final class Parameter(depth: Int, index: Int)
+    extends Code {
+
+    def apply(frame: Frame): FunctionApp = {
+
+      var current = frame
+      var i = depth
+
+      while (i > 0) {
+
+        current = current.parent
+        i -= 1
+      }
+
+      current.arguments(index)
+    }
+  }
+
+  private final class Global(descriptor: String, registry: () => FunctionRegistry)
+    extends Code {
+
+    @volatile
+    private var resolved: (FunctionRegistry, FunctionApp) = _
+
+    def apply(frame: Frame): FunctionApp = {
+
+      val current = registry()
+      val cached = resolved
+
+      if (cached != null && (cached._1 eq current))
+        cached._2
+      else {
+
+        val app =
+          current.apps.getOrElse(descriptor,
+            throw new CalculatorRuntimeException(s"Cannot find function with descriptor $descriptor."))
+
+        resolved = (current, app)
+
+        app
+      }
+    }
+  }
+
+  private final class Closure(signature: FunctionDef.Signature, body: Code)
+    extends Code {
+
+    def apply(frame: Frame): FunctionApp =
+      FunctionApp.fromCompiled(signature, arguments => body(new Frame(frame, arguments)))
+  }
+
+  private final class Thunk(body: Code)
+    extends Code {
+
+    def apply(frame: Frame): FunctionApp =
+      FunctionApp.fromCompiled(FunctionDef.primitiveSignature, _ => body(frame))
+  }
+
+  private final class Shared(body: Code)
+    extends Code {
+
+    def apply(frame: Frame): FunctionApp = {
+
+      var value: FunctionApp = null
+
+      FunctionApp.fromCompiled(FunctionDef.primitiveSignature, _ => {
+
+        if (value == null)
+          value = body(frame)
+
+        value
+      })
+    }
+  }
+
+  private final class Application(function: Code, arguments: Array[Code])
+    extends Code {
+
+    def apply(frame: Frame): FunctionApp = {
+
+      val builder = Vector.newBuilder[FunctionApp]
+      var i = 0
+
+      while (i < arguments.length) {
+
+        builder += arguments(i)(frame)
+        i += 1
+      }
+
+      FunctionApp.call(function(frame), builder.result())
+    }
+  }
+
+  private def compile(body: Ast.Body, scopes: List[List[String]], registry: () => FunctionRegistry): Code = {
+
+    val scope = body.function.signature.parameters.map(_.descriptor)
+
+    new Closure(body.function.signature, transform(body.node, scope :: scopes, registry))
+  }
+
+  private def transform(node: Ast.Node, scopes: List[List[String]], registry: () => FunctionRegistry): Code =
+    node match {
+
+      case node: Ast.LambdaFunctionNode =>
+        compile(node.body, scopes, registry)
+
+      case node: Ast.FunctionNode =>
+        resolve(node.descriptor, scopes, registry)
+
+      case node: Ast.ApplicationNode => {
+
+        val arguments =
+          node.arguments.map {
+
+            case x: Ast.NumberNode => {
+
+              val value = constant(x)
+
+              new Constant(FunctionApp.fromCompiled(FunctionDef.primitiveSignature, _ => value))
+            }
+
+            case x: Ast.ApplicationNode if (x.signature.verify(FunctionDef.primitiveSignature)) =>
+              new Thunk(transform(x, scopes, registry))
+
+            case x =>
+              transform(x, scopes, registry)
+          }
+
+        new Application(transform(node.node, scopes, registry), arguments.toArray)
+      }
+
+      case node: Ast.NumberNode =>
+        new Constant(constant(node))
+
+      case node: Ast.SharedNode =>
+        new Shared(transform(node.node, scopes, registry))
+    }
+
+  private def resolve(descriptor: String, scopes: List[List[String]], registry: () => FunctionRegistry): Code = {
+
+    val depth = scopes.indexWhere(_.contains(descriptor))
+
+    if (depth >= 0)
+      new Parameter(depth, scopes(depth).lastIndexOf(descriptor))
+    else
+      new Global(descriptor, registry)
+  }
+
+  private def constant(node: Ast.NumberNode): FunctionApp =
+    FunctionApp.fromDouble(node.number.toDouble)
+}
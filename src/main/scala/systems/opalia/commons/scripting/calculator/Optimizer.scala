@@ -0,0 +1,241 @@
+package systems.opalia.commons.scripting.calculator
+
+import scala.util.control.NonFatal
+
+
+object Optimizer {
+
+  case class Statistics(nodesBefore: Int, nodesAfter: Int)
+
+  private val inlineLimit = 24
+  private val inlineDepth = 4
+  private val sharedLimit = 3
+
+  // parameters are passed by name, so subexpressions can only be shared if arguments are already evaluated
+  private[calculator] def optimize(body: Ast.Body,
+                                   registry: FunctionRegistry,
+                                   strict: Boolean): (Ast.Body, Statistics) = {
+
+    val function = body.function
+    val scope = function.signature.parameters.map(_.descriptor).toSet
+
+    val folded = optimize(body.node, scope, registry, 0)
+
+    val result =
+      if (strict && function.signature.parameters.forall(_.verify(FunctionDef.primitiveSignature)))
+        Ast.Body(function, share(function, folded, scope, registry))
+      else
+        Ast.Body(function, folded)
+
+    (result, Statistics(count(body.node), count(result.node)))
+  }
+
+  private[calculator] def count(node: Ast.Node): Int =
+    node match {
+      case node: Ast.LambdaFunctionNode => 1 + count(node.body.node)
+      case node: Ast.ApplicationNode => 1 + count(node.node) + node.arguments.map(count).sum
+      case node: Ast.SharedNode => 1 + count(node.node)
+      case _ => 1
+    }
+
+  private def optimize(node: Ast.Node, scope: Set[String], registry: FunctionRegistry, depth: Int): Ast.Node =
+    node match {
+
+      case node: Ast.LambdaFunctionNode => {
+
+        val inner = scope ++ node.body.function.signature.parameters.map(_.descriptor)
+
+        Ast.LambdaFunctionNode(Ast.Body(node.body.function, optimize(node.body.node, inner, registry, depth)))
+      }
+
+      case node: Ast.ApplicationNode => {
+
+        val arguments = node.arguments.map(optimize(_, scope, registry, depth))
+        val callee = optimize(node.node, scope, registry, depth)
+
+        callee match {
+
+          case Global(descriptor, signature) if (!scope.contains(descriptor) && registry.pure.contains(descriptor)) =>
+            fold(descriptor, signature, arguments, registry)
+              .getOrElse(Ast.ApplicationNode(arguments, callee))
+
+          case Global(descriptor, signature) if (!scope.contains(descriptor) && depth < inlineDepth) =>
+            inline(descriptor, signature, arguments, scope, registry)
+              .map(optimize(_, scope, registry, depth + 1))
+              .getOrElse(Ast.ApplicationNode(arguments, callee))
+
+          case _ =>
+            Ast.ApplicationNode(arguments, callee)
+        }
+      }
+
+      case node: Ast.SharedNode =>
+        Ast.SharedNode(optimize(node.node, scope, registry, depth))
+
+      case node =>
+        node
+    }
+
+  private def fold(descriptor: String,
+                   signature: FunctionDef.Signature,
+                   arguments: List[Ast.Node],
+                   registry: FunctionRegistry): Option[Ast.Node] = {
+
+    val numbers = arguments.collect { case x: Ast.NumberNode => x.number.toDouble }
+
+    if (numbers.size != arguments.size || !primitive(signature))
+      None
+    else
+      registry.apps.get(descriptor).flatMap {
+        app =>
+
+          try {
+
+            val value =
+              app.invoke(numbers.map(x => FunctionApp.wrap(FunctionApp.fromDouble(x))).toVector).value()
+
+            Some(Ast.NumberNode(value.toString))
+
+          } catch {
+
+            case NonFatal(_) => None
+          }
+      }
+  }
+
+  private def inline(descriptor: String,
+                     signature: FunctionDef.Signature,
+                     arguments: List[Ast.Node],
+                     scope: Set[String],
+                     registry: FunctionRegistry): Option[Ast.Node] = {
+
+    registry.bodies.get(descriptor)
+      .filter {
+        body =>
+
+          val parameters = body.function.signature.parameters.map(_.descriptor).toSet
+          val globals = references(body.node) -- parameters
+
+          primitive(signature) &&
+            arguments.size == signature.parameters.size &&
+            count(body.node) <= inlineLimit &&
+            !containsLambda(body.node) &&
+            !globals.contains(descriptor) &&
+            globals.intersect(scope).isEmpty
+      }
+      .map {
+        body =>
+
+          val substitutions = body.function.signature.parameters.map(_.descriptor).zip(arguments).toMap
+
+          substitute(body.node, substitutions)
+      }
+  }
+
+  private def substitute(node: Ast.Node, substitutions: Map[String, Ast.Node]): Ast.Node =
+    node match {
+
+      case Ast.ApplicationNode(Nil, Ast.FunctionNode(descriptor, _)) if (substitutions.contains(descriptor)) =>
+        substitutions(descriptor) match {
+          case x@(_: Ast.ApplicationNode | _: Ast.NumberNode) => x
+          case x => Ast.ApplicationNode(Nil, x)
+        }
+
+      case Ast.FunctionNode(descriptor, _) if (substitutions.contains(descriptor)) =>
+        substitutions(descriptor)
+
+      case node: Ast.ApplicationNode =>
+        Ast.ApplicationNode(node.arguments.map(substitute(_, substitutions)), substitute(node.node, substitutions))
+
+      case node: Ast.SharedNode =>
+        Ast.SharedNode(substitute(node.node, substitutions))
+
+      case node =>
+        node
+    }
+
+  private def share(function: FunctionDef,
+                    node: Ast.Node,
+                    scope: Set[String],
+                    registry: FunctionRegistry): Ast.Node = {
+
+    val occurrences =
+      subexpressions(node)
+        .filter(x => count(x) >= sharedLimit && x.signature.verify(FunctionDef.primitiveSignature))
+        .groupBy(identity)
+        .collect { case (x, list) if (list.size > 1) => x }
+
+    occurrences.toList.sortBy(x => -count(x)).headOption match {
+
+      case Some(expression) => {
+
+        val descriptor =
+          Iterator.from(1)
+            .map(x => s"shared'$x")
+            .find(x => !scope.contains(x) && !registry.functions.contains(x) && !references(node).contains(x))
+            .get
+
+        val parameter = FunctionDef.Signature(descriptor, Nil, None)
+        val child = function.createChild(FunctionDef.Signature("", List(parameter), None))
+        val reference = Ast.ApplicationNode(Nil, Ast.FunctionNode(descriptor, parameter))
+        val replaced = replace(node, expression, reference)
+
+        Ast.ApplicationNode(
+          List(Ast.SharedNode(expression)),
+          Ast.LambdaFunctionNode(Ast.Body(child, share(child, replaced, scope + descriptor, registry))))
+      }
+
+      case None =>
+        node
+    }
+  }
+
+  private def subexpressions(node: Ast.Node): List[Ast.ApplicationNode] =
+    node match {
+      case node: Ast.ApplicationNode => node :: (node.node :: node.arguments).flatMap(subexpressions)
+      case _ => Nil
+    }
+
+  private def replace(node: Ast.Node, expression: Ast.Node, reference: Ast.Node): Ast.Node =
+    node match {
+
+      case x if (x == expression) =>
+        reference
+
+      case node: Ast.ApplicationNode =>
+        Ast.ApplicationNode(node.arguments.map(replace(_, expression, reference)), replace(node.node, expression, reference))
+
+      case node =>
+        node
+    }
+
+  private[calculator] def references(node: Ast.Node): Set[String] =
+    node match {
+      case node: Ast.FunctionNode => Set(node.descriptor)
+      case node: Ast.ApplicationNode => references(node.node) ++ node.arguments.flatMap(references)
+      case node: Ast.LambdaFunctionNode => references(node.body.node)
+      case node: Ast.SharedNode => references(node.node)
+      case _ => Set.empty
+    }
+
+  private def containsLambda(node: Ast.Node): Boolean =
+    node match {
+      case _: Ast.LambdaFunctionNode => true
+      case node: Ast.ApplicationNode => containsLambda(node.node) || node.arguments.exists(containsLambda)
+      case node: Ast.SharedNode => containsLambda(node.node)
+      case _ => false
+    }
+
+  private def primitive(signature: FunctionDef.Signature): Boolean =
+    signature.parameters.forall(_.verify(FunctionDef.primitiveSignature)) && signature.target.isEmpty
+
+  private object Global {
+
+    def unapply(node: Ast.Node): Option[(String, FunctionDef.Signature)] =
+      node match {
+        case Ast.FunctionNode(descriptor, signature) => Some((descriptor, signature))
+        case _ => None
+      }
+  }
+
+}
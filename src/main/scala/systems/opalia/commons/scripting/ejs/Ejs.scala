@@ -1,8 +1,11 @@
 package systems.opalia.commons.scripting.ejs
 
 import java.nio.file.Path
-import scala.concurrent.{ExecutionContext, Future}
+import scala.concurrent.{ExecutionContext, Future, Promise}
+import scala.util.Success
 import systems.opalia.commons.json.JsonAstTransformer
+import systems.opalia.commons.utility.LruCache
+import systems.opalia.commons.utility.instrumentation.Instrumentation
 import systems.opalia.interfaces.json.JsonAst
 import systems.opalia.interfaces.scripting._
 
@@ -11,23 +14,17 @@ class Ejs private(scriptEngine: ScriptEngine,
                   config: EjsConfiguration)
                  (implicit executor: ExecutionContext) {
 
-  def compile(path: Path): Future[Template] = {
-
-    val parser = new Parser(config)
+  private val documents = new LruCache[Path, Future[Document]](config.cacheSize)
 
-    parser.parse(path).map {
-      parsed =>
+  def compile(path: Path): Future[Template] = {
 
-        new Template(scriptEngine.compile(parsed))
-    }
+    load(path).map(_.template)
   }
 
   def render(path: Path, args: JsonAst.JsonValue): Future[String] = {
 
-    val parser = new Parser(config)
-
-    parser.parse(path).map {
-      parsed =>
+    load(path).map {
+      document =>
 
         scriptEngine.withSession {
           session =>
@@ -35,10 +32,12 @@ class Ejs private(scriptEngine: ScriptEngine,
             session.withContext {
               context =>
 
-                withErrorHandling(context) {
+                Ejs.renderTimer.time {
+                  withErrorHandling(context) {
 
-                  context.bindings.putMember("locals", context.asValue(args))
-                  context.eval(parsed).asString
+                    context.bindings.putMember("locals", context.asValue(args))
+                    context.eval(document.script).asString
+                  }
                 }
             }
         }
@@ -56,16 +55,93 @@ class Ejs private(scriptEngine: ScriptEngine,
             session.withContext {
               context =>
 
-                withErrorHandling(context) {
+                Ejs.renderTimer.time {
+                  withErrorHandling(context) {
 
-                  context.bindings.putMember("locals", context.asValue(args))
-                  context.eval(script).asString
+                    context.bindings.putMember("locals", context.asValue(args))
+                    context.eval(script).asString
+                  }
                 }
             }
         }
       }
   }
 
+  def invalidate(path: Path): Unit = {
+
+    documents.remove(path.normalize)
+  }
+
+  def cacheStatistics: LruCache.Statistics =
+    documents.statistics
+
+  private def load(path: Path): Future[Document] = {
+
+    val key = path.normalize
+    val promise = Promise[Document]()
+
+    val future = documents.getOrElseUpdate(key, promise.future)
+
+    if (future eq promise.future) {
+
+      val parser = new Parser(config)
+
+      promise.completeWith(
+        Future.unit
+          .flatMap(_ => parser.parse(key))
+          .map(script => new Document(script, parser.dependencies)))
+
+      future.failed.foreach(_ => evict(key, future))
+
+      future.foreach(document => if (!document.cacheable) evict(key, future))
+
+      future
+
+    } else
+      future.value match {
+
+        case Some(Success(document)) if (!document.cacheable || document.outdated()) => {
+
+          evict(key, future)
+          load(path)
+        }
+
+        case _ =>
+          future
+      }
+  }
+
+  private def evict(key: Path, future: Future[Document]): Unit = {
+
+    documents.removeIf((path, value) => path == key && (value eq future))
+  }
+
+  private class Document(val script: String, dependencies: Map[Path, Option[Long]]) {
+
+    @volatile
+    private var checked = System.nanoTime()
+
+    lazy val template: Template =
+      new Template(scriptEngine.compile(script))
+
+    def cacheable: Boolean =
+      dependencies.values.forall(_.nonEmpty)
+
+    def outdated(): Boolean = {
+
+      val now = System.nanoTime()
+
+      if (now - checked < config.checkInterval.toNanos)
+        false
+      else {
+
+        checked = now
+
+        dependencies.exists(x => config.lastModified(x._1) != x._2)
+      }
+    }
+  }
+
   private def withErrorHandling(context: ScriptContext)(block: => String): String = {
 
     try {
@@ -74,7 +150,7 @@ class Ejs private(scriptEngine: ScriptEngine,
 
     } catch {
 
-      case _: ScriptException if (context.bindings.hasMember("__stack") && context.bindings.hasMember("__error")) => {
+      case _: ScriptException if (hasStackInfo(context)) => {
 
         val stackInfo = JsonAstTransformer.toPlayJson(context.asJson(context.bindings.getMember("__stack")))
         val errorInfo = JsonAstTransformer.toPlayJson(context.asJson(context.bindings.getMember("__error")))
@@ -96,6 +172,17 @@ class Ejs private(scriptEngine: ScriptEngine,
     }
   }
 
+  // a reused context can still hold the declarations of an earlier document without their values
+  private def hasStackInfo(context: ScriptContext): Boolean = {
+
+    def defined(value: ScriptValue, key: String): Boolean =
+      value.hasMember(key) && !value.getMember(key).isNull
+
+    val bindings = context.bindings
+
+    defined(bindings, "__stack") && defined(bindings, "__error") && defined(bindings.getMember("__stack"), "document_path")
+  }
+
   private def getPositionFromStack(stack: String): (Int, Int) = {
 
     val pattern = """.*:([1-9][0-9]*):([1-9][0-9]*)\)?$""".r
@@ -109,6 +196,8 @@ class Ejs private(scriptEngine: ScriptEngine,
 
 object Ejs {
 
+  private val renderTimer = Instrumentation.timer("ejs.render")
+
   def apply(scriptEngine: ScriptEngine, config: EjsConfiguration = EjsDefaultConfiguration)
            (implicit executor: ExecutionContext): Ejs =
     new Ejs(scriptEngine, config)
@@ -1,6 +1,7 @@
 package systems.opalia.commons.scripting.ejs
 
-import java.nio.file.Path
+import java.nio.file.{Files, Path}
+import scala.concurrent.duration._
 import scala.concurrent.{ExecutionContext, Future}
 import scala.io.Source
 
@@ -10,7 +11,13 @@ trait EjsConfiguration {
   val openWith: String
   val closeWith: String
 
+  val cacheSize: Int = 512
+  val checkInterval: FiniteDuration = 1.second
+
   def resolve(path: Path)(implicit executor: ExecutionContext): Future[Source]
+
+  def lastModified(path: Path): Option[Long] =
+    None
 }
 
 object EjsDefaultConfiguration
@@ -22,4 +29,10 @@ object EjsDefaultConfiguration
   def resolve(path: Path)
              (implicit executor: ExecutionContext): Future[Source] =
     Future(Source.fromFile(path.toFile))
+
+  override def lastModified(path: Path): Option[Long] =
+    if (Files.exists(path))
+      Some(Files.getLastModifiedTime(path).toMillis)
+    else
+      None
 }
@@ -2,6 +2,7 @@ package systems.opalia.commons.scripting.ejs
 
 import java.nio.file.Path
 import org.apache.commons.text.StringEscapeUtils
+import scala.collection.mutable
 import scala.concurrent.{ExecutionContext, Future}
 
 
@@ -10,6 +11,8 @@ protected final class Parser(config: EjsConfiguration)
 
   // https://github.com/mde/ejs
 
+  private val documents = mutable.LinkedHashMap.empty[Path, Option[Long]]
+
   private sealed trait Status
 
   private object Status {
@@ -113,10 +116,22 @@ protected final class Parser(config: EjsConfiguration)
       .map(_.mkString("\n"))
   }
 
+  def dependencies: Map[Path, Option[Long]] =
+    documents.synchronized {
+
+      documents.toMap
+    }
+
   private def parseDocument(process: Seq[String],
                             pathNew: Path,
                             pathOld: Option[Path]): Future[Seq[String]] = {
 
+    // the modification time is taken before reading, so a concurrent change is noticed on the next check
+    documents.synchronized {
+
+      documents.getOrElseUpdate(pathNew, config.lastModified(pathNew))
+    }
+
     config.resolve(pathNew)
       .map(_.getLines.toSeq)
       .flatMap {
@@ -0,0 +1,163 @@
+package systems.opalia.commons.scripting.js
+
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.{ConcurrentLinkedDeque, Semaphore, TimeUnit}
+import org.graalvm.polyglot.{Context, Value}
+import scala.collection.JavaConverters._
+import scala.concurrent.duration.Duration
+import scala.util.control.NonFatal
+import systems.opalia.commons.utility.instrumentation.Instrumentation
+
+
+final class JsContextPool private[js](createContext: () => Context, val settings: JsContextPool.Settings) {
+
+  if (settings.maxSize < 1)
+    throw new IllegalArgumentException(s"Expect positive pool size but got ${settings.maxSize}.")
+
+  if (settings.maxUses < 1)
+    throw new IllegalArgumentException(s"Expect positive number of uses but got ${settings.maxUses}.")
+
+  if (settings.prewarm < 0 || settings.prewarm > settings.maxSize)
+    throw new IllegalArgumentException(s"Expect number of prewarmed contexts within pool size but got ${settings.prewarm}.")
+
+  private val idle = new ConcurrentLinkedDeque[JsContextPool.Entry]()
+  private val permits = new Semaphore(settings.maxSize, true)
+
+  private val size = new AtomicInteger()
+  private val created = new AtomicLong()
+  private val evicted = new AtomicLong()
+
+  for (_ <- 0 until settings.prewarm)
+    idle.push(create())
+
+  def statistics: JsContextPool.Statistics =
+    JsContextPool.Statistics(size.get, idle.size, created.get, evicted.get)
+
+  def close(): Unit = {
+
+    Iterator.continually(idle.pollFirst()).takeWhile(_ != null).foreach(discard)
+  }
+
+  private[js] def acquire(): JsContextPool.Entry = {
+
+    val start = System.nanoTime()
+
+    if (!settings.acquireTimeout.isFinite())
+      permits.acquire()
+    else if (!permits.tryAcquire(settings.acquireTimeout.toNanos, TimeUnit.NANOSECONDS))
+      throw new IllegalStateException(s"Cannot acquire script context within ${settings.acquireTimeout}.")
+
+    JsContextPool.waitTimer.record(System.nanoTime() - start)
+
+    try {
+
+      Option(idle.pollFirst()).getOrElse(create())
+
+    } catch {
+
+      case e: Throwable => {
+
+        permits.release()
+        throw e
+      }
+    }
+  }
+
+  private[js] def release(entry: JsContextPool.Entry, failed: Boolean): Unit = {
+
+    try {
+
+      entry.uses += 1
+
+      if (failed || entry.uses >= settings.maxUses || !reset(entry))
+        discard(entry)
+      else
+        idle.push(entry)
+
+    } finally {
+
+      permits.release()
+    }
+  }
+
+  private def create(): JsContextPool.Entry = {
+
+    val context = JsContextPool.createTimer.time(createContext())
+
+    size.incrementAndGet()
+    created.incrementAndGet()
+
+    val bindings = context.getBindings("js")
+    val names = context.eval("js", "Object.getOwnPropertyNames(globalThis)")
+
+    val globals =
+      (0L until names.getArraySize)
+        .map(i => names.getArrayElement(i).asString)
+        .map(key => key -> bindings.getMember(key))
+        .toMap
+
+    new JsContextPool.Entry(context, globals, context.eval("js", "undefined"), context.eval("js", "Object.is"))
+  }
+
+  private def reset(entry: JsContextPool.Entry): Boolean = {
+
+    try {
+
+      val bindings = entry.context.getBindings("js")
+
+      for (key <- bindings.getMemberKeys.asScala.toList if (!entry.globals.contains(key)))
+        if (!bindings.removeMember(key))
+          bindings.putMember(key, entry.undefined)
+
+      entry.globals.forall {
+        case (key, value) =>
+          entry.identical.execute(bindings.getMember(key), value).asBoolean
+      }
+
+    } catch {
+
+      case NonFatal(_) =>
+        false
+    }
+  }
+
+  private def discard(entry: JsContextPool.Entry): Unit = {
+
+    size.decrementAndGet()
+    evicted.incrementAndGet()
+
+    try {
+
+      entry.context.close()
+
+    } catch {
+
+      case NonFatal(_) =>
+    }
+  }
+}
+
+object JsContextPool {
+
+  private val waitTimer = Instrumentation.timer("js.pool.wait")
+  private val createTimer = Instrumentation.timer("js.pool.create")
+
+  // a context returns to the pool without the global bindings added by a session, but is evicted if an original
+  // global binding was reassigned or deleted; global let and const declarations as well as changes to members of
+  // built-in objects, e.g. JSON.stringify or Array.prototype, are not detected and remain visible to later sessions
+  case class Settings(maxSize: Int,
+                      maxUses: Int = 1000,
+                      prewarm: Int = 0,
+                      acquireTimeout: Duration = Duration.Inf)
+
+  case class Statistics(size: Int, idle: Int, created: Long, evicted: Long)
+
+  private[js] final class Entry(val context: Context,
+                                val globals: Map[String, Value],
+                                val undefined: Value,
+                                val identical: Value) {
+
+    var uses: Int = 0
+  }
+
+}
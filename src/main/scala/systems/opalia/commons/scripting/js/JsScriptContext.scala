@@ -6,7 +6,7 @@ import systems.opalia.interfaces.json.JsonAst
 import systems.opalia.interfaces.scripting._
 
 
-final class JsScriptContext private[js](underlyingContext: Context)
+final class JsScriptContext private[js](underlyingContext: Context, failure: () => Unit)
   extends ScriptContext
     with Conversion {
 
@@ -24,8 +24,11 @@ final class JsScriptContext private[js](underlyingContext: Context)
 
     } catch {
 
-      case e: PolyglotException =>
+      case e: PolyglotException => {
+
+        failure()
         throw new ScriptException(e.getMessage, e)
+      }
     }
   }
 
@@ -39,8 +42,11 @@ final class JsScriptContext private[js](underlyingContext: Context)
 
     } catch {
 
-      case e: PolyglotException =>
+      case e: PolyglotException => {
+
+        failure()
         throw new ScriptException(e.getMessage, e)
+      }
     }
   }
 
@@ -54,8 +60,11 @@ final class JsScriptContext private[js](underlyingContext: Context)
 
     } catch {
 
-      case e: PolyglotException =>
+      case e: PolyglotException => {
+
+        failure()
         throw new ScriptException(e.getMessage, e)
+      }
     }
   }
 
@@ -73,8 +82,11 @@ final class JsScriptContext private[js](underlyingContext: Context)
 
     } catch {
 
-      case e: PolyglotException =>
+      case e: PolyglotException => {
+
+        failure()
         throw new ScriptException(e.getMessage, e)
+      }
     }
   }
 
@@ -153,8 +165,11 @@ final class JsScriptContext private[js](underlyingContext: Context)
 
     } catch {
 
-      case e: PolyglotException =>
+      case e: PolyglotException => {
+
+        failure()
         throw new ScriptException(e.getMessage, e)
+      }
     }
   }
 
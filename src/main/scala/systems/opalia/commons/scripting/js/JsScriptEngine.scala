@@ -1,32 +1,61 @@
 package systems.opalia.commons.scripting.js
 
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.{Timer, TimerTask}
 import org.graalvm.polyglot.{Context, Engine, Source}
 import scala.concurrent.duration.Duration
 import systems.opalia.interfaces.scripting._
 
 
-final class JsScriptEngine private[js](engine: Engine, contextTimeout: Duration, createContext: () => Context)
+final class JsScriptEngine private[js](engine: Engine,
+                                       contextTimeout: Duration,
+                                       createContext: () => Context,
+                                       val contextPool: Option[JsContextPool])
   extends ScriptEngine {
 
   val timer = new Timer(true)
 
   def newSession(): ScriptSession = {
 
-    val context = createContext()
-    val session = new JsScriptSession(context)
+    val entry = contextPool.map(_.acquire())
+    val context = entry.map(_.context).getOrElse(createContext())
+    val expired = new AtomicBoolean()
+
+    var task: Option[TimerTask] = None
+
+    // a context closed by the timeout must never return to the pool
+    val release =
+      (context: Context, failed: Boolean) => {
+
+        val owned = expired.compareAndSet(false, true)
+
+        task.foreach(_.cancel())
+
+        entry match {
+          case Some(x) => contextPool.foreach(_.release(x, failed || !owned))
+          case None => context.close()
+        }
+      }
+
+    val session = new JsScriptSession(context, release)
 
     if (contextTimeout.isFinite()) {
 
-      timer.schedule(new TimerTask() {
+      val timeout =
+        new TimerTask() {
+
+          def run(): Unit = {
 
-        def run(): Unit = {
+            if (expired.compareAndSet(false, true)) {
 
-          context.close(true)
-          session.shutdown()
+              context.close(true)
+              session.shutdown()
+            }
+          }
         }
 
-      }, contextTimeout.toMillis)
+      task = Some(timeout)
+      timer.schedule(timeout, contextTimeout.toMillis)
     }
 
     session
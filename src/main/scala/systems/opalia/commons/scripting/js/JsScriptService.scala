@@ -8,12 +8,13 @@ import systems.opalia.interfaces.scripting._
 class JsScriptService()
   extends ScriptService {
 
-  final def newScriptEngine(contextTimeout: Duration = Duration.Inf): ScriptEngine = {
+  final def newScriptEngine(contextTimeout: Duration = Duration.Inf,
+                            poolSettings: Option[JsContextPool.Settings] = None): ScriptEngine = {
 
     val engine = configEngine(Engine.newBuilder()).build()
     val context = () => createContext(engine)
 
-    new JsScriptEngine(engine, contextTimeout, context)
+    new JsScriptEngine(engine, contextTimeout, context, poolSettings.map(x => new JsContextPool(context, x)))
   }
 
   protected def configEngine(builder: Engine#Builder): Engine#Builder = {
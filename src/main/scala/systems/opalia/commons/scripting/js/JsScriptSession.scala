@@ -5,15 +5,18 @@ import systems.opalia.interfaces.scripting._
 import systems.opalia.interfaces.soa.Terminatable
 
 
-final class JsScriptSession private[js](underlyingContext: Context)
+final class JsScriptSession private[js](underlyingContext: Context, release: (Context, Boolean) => Unit)
   extends ScriptSession
     with Terminatable[Unit] {
 
+  @volatile
+  private var failed = false
+
   protected def shutdownTask(): Unit = {
 
     try {
 
-      underlyingContext.close()
+      release(underlyingContext, failed)
 
     } catch {
 
@@ -24,7 +27,7 @@ final class JsScriptSession private[js](underlyingContext: Context)
 
   def context: ScriptContext = {
 
-    new JsScriptContext(underlyingContext)
+    new JsScriptContext(underlyingContext, () => failed = true)
   }
 
   def enter(): Unit = {
@@ -35,8 +38,11 @@ final class JsScriptSession private[js](underlyingContext: Context)
 
     } catch {
 
-      case e: PolyglotException =>
+      case e: PolyglotException => {
+
+        failed = true
         throw new ScriptException(e.getMessage, e)
+      }
     }
   }
 
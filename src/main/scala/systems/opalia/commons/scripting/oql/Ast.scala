@@ -1,8 +1,6 @@
 package systems.opalia.commons.scripting.oql
 
 import java.time.{OffsetDateTime, OffsetTime}
-import java.util
-import scala.collection.JavaConverters._
 import scala.util.matching.Regex
 import scala.util.{Success, Try}
 import systems.opalia.commons.number._
@@ -56,7 +54,39 @@ object Ast {
       (init :+ last).map(_.toString).mkString(".")
   }
 
-  private[oql] case class Value(value: String)
+  private[oql] case class Value(value: String) {
+
+    lazy val lowerCase: String = value.toLowerCase
+    lazy val decimal: Option[BigDecimal] = Try(BigDecimal(value)).toOption
+    lazy val boolean: Option[Boolean] = Try(value.toStrictBoolean).toOption
+    lazy val char: Option[Char] = if (value.length == 1) Some(value.head) else None
+    lazy val dateTime: Option[OffsetDateTime] = Try(SimpleDateTimeParser.parse(value)).toOption
+    lazy val time: Option[OffsetTime] = Try(SimpleTimeParser.parse(value)).toOption
+
+    lazy val regex: Try[Regex] =
+      Try(value.r).recover {
+
+        case e: Throwable =>
+          throw new IllegalArgumentException(
+            s"Cannot generate regular expression from string: $value\n${e.getMessage}", e)
+      }
+  }
+
+  private[oql] object Numeric {
+
+    def unapply(value: Any): Option[Try[BigDecimal]] =
+      value match {
+        case x: Byte => Some(Try(BigDecimal.decimal(x)))
+        case x: Short => Some(Try(BigDecimal.decimal(x)))
+        case x: Int => Some(Try(BigDecimal.decimal(x)))
+        case x: Long => Some(Try(BigDecimal.decimal(x)))
+        case x: Float => Some(Try(BigDecimal.decimal(x)))
+        case x: Double => Some(Try(BigDecimal.decimal(x)))
+        case x: BigInt => Some(Try(BigDecimal(x)))
+        case x: BigDecimal => Some(Success(x))
+        case _ => None
+      }
+  }
 
   sealed trait Segment
 
@@ -74,10 +104,7 @@ object Ast {
       field
   }
 
-  private[oql] sealed trait BooleanTerm {
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean]
-  }
+  private[oql] sealed trait BooleanTerm
 
   private[oql] sealed trait BooleanFunction
     extends BooleanTerm {
@@ -86,45 +113,22 @@ object Ast {
   }
 
   private[oql] case class And(values: List[BooleanTerm])
-    extends BooleanFunction {
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean] =
-      Try(!values.exists(_.evaluate(resolve).get == false))
-  }
+    extends BooleanFunction
 
   private[oql] case class Or(values: List[BooleanTerm])
-    extends BooleanFunction {
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean] =
-      Try(values.exists(_.evaluate(resolve).get == true))
-  }
+    extends BooleanFunction
 
   private[oql] case class Xor(values: List[BooleanTerm])
-    extends BooleanFunction {
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean] =
-      Try(values.foldLeft(0)((a, b) => if (a > 1) a else a + (if (b.evaluate(resolve).get) 1 else 0)) == 1)
-  }
+    extends BooleanFunction
 
   private[oql] case class Not(value: BooleanTerm)
     extends BooleanFunction {
 
     val values: List[Ast.BooleanTerm] = List(value)
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean] =
-      value.evaluate(resolve).map(x => !x)
   }
 
   private[oql] case class Exists(path: Path)
-    extends BooleanTerm {
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean] =
-      resolve(path) match {
-        case Some(_) => Success(true)
-        case None => Success(false)
-
-      }
-  }
+    extends BooleanTerm
 
   private[oql] sealed trait BooleanComparator
     extends BooleanTerm {
@@ -134,95 +138,37 @@ object Ast {
     val sequenceMode: SequenceMode
     val textMode: TextMode
 
-    protected val matchString: PartialFunction[(Any, String, TextMode), Boolean]
-    protected val matchAny: PartialFunction[(Any, Any, TextMode), Boolean]
-
-    def evaluate(resolve: (Path) => Option[Any]): Try[Boolean] = {
-
-      def apply(): Boolean =
-        resolve(path) match {
-          case None =>
-            throw new IllegalArgumentException(s"Cannot resolve left operand $path")
-          case Some(seq: util.Collection[_]) if (sequenceMode == SequenceMode.AtAll) =>
-            seq.asScala.forall(applyRight)
-          case Some(seq: Seq[_]) if (sequenceMode == SequenceMode.AtAll) =>
-            seq.forall(applyRight)
-          case Some(seq: Array[_]) if (sequenceMode == SequenceMode.AtAll) =>
-            seq.forall(applyRight)
-          case Some(seq: util.Collection[_]) if (sequenceMode == SequenceMode.AtLeastOne) =>
-            seq.asScala.exists(applyRight)
-          case Some(seq: Seq[_]) if (sequenceMode == SequenceMode.AtLeastOne) =>
-            seq.exists(applyRight)
-          case Some(seq: Array[_]) if (sequenceMode == SequenceMode.AtLeastOne) =>
-            seq.exists(applyRight)
-          case Some(x) if (sequenceMode == SequenceMode.None) =>
-            applyRight(x)
-          case _ =>
-            throw new IllegalArgumentException(s"Cannot apply sequence operation on left operand $path")
-        }
-
-      def applyRight(x: Any): Boolean =
-        value match {
-          case Left(Value(y)) =>
-            matchString.applyOrElse((x, y, textMode),
-              (_: (Any, String, TextMode)) =>
-                throw new IllegalArgumentException(s"Cannot apply argument on left operand $path with value $y"))
-          case Right(y) =>
-            resolve(y) match {
-              case None =>
-                throw new IllegalArgumentException(s"Cannot resolve right operand $y")
-              case Some(z) =>
-                matchAny.applyOrElse((x, z, textMode),
-                  (_: (Any, Any, TextMode)) =>
-                    throw new IllegalArgumentException(s"Cannot find matching types for operands $path and $y"))
-            }
-        }
-
-      Try(apply())
-    }
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean]
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean]
   }
 
   private[oql] sealed trait BooleanComparatorEqual
     extends BooleanComparator {
 
-    val matchString: PartialFunction[(Any, String, TextMode), Boolean] = {
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean] = {
       case (left: Boolean, right, TextMode.None) =>
-        equalsOp(Try(left == right.toStrictBoolean).getOrElse(false))
-      case (left: Byte, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal.decimal(left) == BigDecimal(right)).getOrElse(false))
-      case (left: Short, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal.decimal(left) == BigDecimal(right)).getOrElse(false))
-      case (left: Int, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal.decimal(left) == BigDecimal(right)).getOrElse(false))
-      case (left: Long, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal.decimal(left) == BigDecimal(right)).getOrElse(false))
-      case (left: Float, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal.decimal(left) == BigDecimal(right)).getOrElse(false))
-      case (left: Double, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal.decimal(left) == BigDecimal(right)).getOrElse(false))
+        equalsOp(right.boolean.contains(left))
+      case (Numeric(left), right, TextMode.None) =>
+        equalsOp(left.toOption.exists(x => right.decimal.contains(x)))
       case (left: Char, right, TextMode.None) =>
-        equalsOp(if (right.length == 1) left == right.head else false)
-      case (left: BigInt, right, TextMode.None) =>
-        equalsOp(Try(BigDecimal(left) == BigDecimal(right)).getOrElse(false))
-      case (left: BigDecimal, right, TextMode.None) =>
-        equalsOp(Try(left == BigDecimal(right)).getOrElse(false))
+        equalsOp(right.char.contains(left))
       case (left: String, right, TextMode.None) =>
-        equalsOp(left.equals(right))
+        equalsOp(left.equals(right.value))
       case (left: String, right, TextMode.Sensitive) =>
-        equalsOp(left.equals(right))
+        equalsOp(left.equals(right.value))
       case (left: String, right, TextMode.Insensitive) =>
-        equalsOp(left.equalsIgnoreCase(right))
+        equalsOp(left.equalsIgnoreCase(right.value))
       case (left: String, right, TextMode.Length) =>
-        equalsOp(left.length == right.length)
+        equalsOp(left.length == right.value.length)
       case (left: OffsetDateTime, right, TextMode.None) =>
-        equalsOp(Try(left == SimpleDateTimeParser.parse(right)).getOrElse(false))
+        equalsOp(right.dateTime.contains(left))
       case (left: OffsetTime, right, TextMode.None) =>
-        equalsOp(Try(left == SimpleTimeParser.parse(right)).getOrElse(false))
+        equalsOp(right.time.contains(left))
       case (left, right, TextMode.None) =>
-        equalsOp(left.toString == right)
+        equalsOp(left.toString == right.value)
     }
 
-    val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
       case (left: String, right: String, TextMode.None) =>
         equalsOp(left.equals(right))
       case (left: String, right: String, TextMode.Sensitive) =>
@@ -241,40 +187,26 @@ object Ast {
   private[oql] sealed trait BooleanComparatorOrdered
     extends BooleanComparator {
 
-    val matchString: PartialFunction[(Any, String, TextMode), Boolean] = {
-      case (left: Byte, right, TextMode.None) =>
-        Try(compareOp(BigDecimal.decimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
-      case (left: Short, right, TextMode.None) =>
-        Try(compareOp(BigDecimal.decimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
-      case (left: Int, right, TextMode.None) =>
-        Try(compareOp(BigDecimal.decimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
-      case (left: Long, right, TextMode.None) =>
-        Try(compareOp(BigDecimal.decimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
-      case (left: Float, right, TextMode.None) =>
-        Try(compareOp(BigDecimal.decimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
-      case (left: Double, right, TextMode.None) =>
-        Try(compareOp(BigDecimal.decimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean] = {
+      case (Numeric(left), right, TextMode.None) =>
+        left.toOption.exists(x => right.decimal.exists(y => compareOp(x.compareTo(y))))
       case (left: Char, right, TextMode.None) =>
-        if (right.length == 1) compareOp(left.compareTo(right.head)) else false
-      case (left: BigInt, right, TextMode.None) =>
-        Try(compareOp(BigDecimal(left).compareTo(BigDecimal(right)))).getOrElse(false)
-      case (left: BigDecimal, right, TextMode.None) =>
-        Try(compareOp(left.compareTo(BigDecimal(right)))).getOrElse(false)
+        right.char.exists(y => compareOp(left.compareTo(y)))
       case (left: String, right, TextMode.None) =>
-        compareOp(left.compareTo(right))
+        compareOp(left.compareTo(right.value))
       case (left: String, right, TextMode.Sensitive) =>
-        compareOp(left.compareTo(right))
+        compareOp(left.compareTo(right.value))
       case (left: String, right, TextMode.Insensitive) =>
-        compareOp(left.toLowerCase.compareTo(right.toLowerCase))
+        compareOp(left.toLowerCase.compareTo(right.lowerCase))
       case (left: String, right, TextMode.Length) =>
-        compareOp(left.length.compareTo(right.length))
+        compareOp(left.length.compareTo(right.value.length))
       case (left: OffsetDateTime, right, TextMode.None) =>
-        Try(compareOp(left.compareTo(SimpleDateTimeParser.parse(right)))).getOrElse(false)
+        right.dateTime.exists(y => compareOp(left.compareTo(y)))
       case (left: OffsetTime, right, TextMode.None) =>
-        Try(compareOp(left.compareTo(SimpleTimeParser.parse(right)))).getOrElse(false)
+        right.time.exists(y => compareOp(left.compareTo(y)))
     }
 
-    val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
       case (left: Byte, right: Byte, TextMode.None) =>
         compareOp(left.compareTo(right))
       case (left: Short, right: Short, TextMode.None) =>
@@ -376,16 +308,18 @@ object Ast {
                                    textMode: TextMode)
     extends BooleanComparator {
 
-    val matchString: PartialFunction[(Any, String, TextMode), Boolean] = {
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean] = {
       case (left: String, right, TextMode.None | TextMode.Sensitive) =>
-        left.contains(right)
+        left.contains(right.value)
       case (left: String, right, TextMode.Insensitive) =>
-        left.toLowerCase.contains(right.toLowerCase)
+        left.toLowerCase.contains(right.lowerCase)
     }
 
-    val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
-      case (x: String, y: String, z@(TextMode.Sensitive | TextMode.Insensitive)) =>
-        matchString(x, y, z)
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
+      case (left: String, right: String, TextMode.Sensitive) =>
+        left.contains(right)
+      case (left: String, right: String, TextMode.Insensitive) =>
+        left.toLowerCase.contains(right.toLowerCase)
     }
   }
 
@@ -395,16 +329,18 @@ object Ast {
                                      textMode: TextMode)
     extends BooleanComparator {
 
-    val matchString: PartialFunction[(Any, String, TextMode), Boolean] = {
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean] = {
       case (left: String, right, TextMode.None | TextMode.Sensitive) =>
-        left.startsWith(right)
+        left.startsWith(right.value)
       case (left: String, right, TextMode.Insensitive) =>
-        left.toLowerCase.startsWith(right.toLowerCase)
+        left.toLowerCase.startsWith(right.lowerCase)
     }
 
-    val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
-      case (x: String, y: String, z@(TextMode.Sensitive | TextMode.Insensitive)) =>
-        matchString(x, y, z)
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
+      case (left: String, right: String, TextMode.Sensitive) =>
+        left.startsWith(right)
+      case (left: String, right: String, TextMode.Insensitive) =>
+        left.toLowerCase.startsWith(right.toLowerCase)
     }
   }
 
@@ -414,16 +350,18 @@ object Ast {
                                    textMode: TextMode)
     extends BooleanComparator {
 
-    val matchString: PartialFunction[(Any, String, TextMode), Boolean] = {
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean] = {
       case (left: String, right, TextMode.None | TextMode.Sensitive) =>
-        left.endsWith(right)
+        left.endsWith(right.value)
       case (left: String, right, TextMode.Insensitive) =>
-        left.toLowerCase.endsWith(right.toLowerCase)
+        left.toLowerCase.endsWith(right.lowerCase)
     }
 
-    val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
-      case (x: String, y: String, z@(TextMode.Sensitive | TextMode.Insensitive)) =>
-        matchString(x, y, z)
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
+      case (left: String, right: String, TextMode.Sensitive) =>
+        left.endsWith(right)
+      case (left: String, right: String, TextMode.Insensitive) =>
+        left.toLowerCase.endsWith(right.toLowerCase)
     }
   }
 
@@ -433,22 +371,14 @@ object Ast {
                                   textMode: TextMode)
     extends BooleanComparator {
 
-    val matchString: PartialFunction[(Any, String, TextMode), Boolean] = {
+    private[oql] val matchString: PartialFunction[(Any, Value, TextMode), Boolean] = {
       case (left: String, right, TextMode.None) =>
-        Try(right.r)
-          .map(_.pattern.matcher(left).matches)
-          .recover {
-
-            case e: Throwable =>
-              throw new IllegalArgumentException(
-                s"Cannot generate regular expression from string: $right\n${e.getMessage}", e)
-          }
-          .get
+        right.regex.get.pattern.matcher(left).matches
     }
 
-    val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
-      case (x: String, y: String, TextMode.None) =>
-        matchString(x, y, TextMode.None)
+    private[oql] val matchAny: PartialFunction[(Any, Any, TextMode), Boolean] = {
+      case (left: String, right: String, TextMode.None) =>
+        Value(right).regex.get.pattern.matcher(left).matches
       case (left: String, right: Regex, TextMode.None) =>
         right.pattern.matcher(left).matches
     }
@@ -0,0 +1,434 @@
+package systems.opalia.commons.scripting.oql
+
+import java.time.{OffsetDateTime, OffsetTime}
+import java.util
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+
+abstract class IndexedObjectQueryLanguage
+  extends ObjectQueryLanguage(Nil) {
+
+  private val lock = new ReentrantReadWriteLock()
+  private val sequences = new util.IdentityHashMap[AnyRef, java.lang.Long]()
+  private val entries = new util.TreeMap[java.lang.Long, AnyRef]()
+  private val indexes = mutable.ArrayBuffer[IndexedObjectQueryLanguage.Index]()
+
+  private var nextSequence = 0L
+  private var version = 0L
+
+  @volatile
+  private var snapshot: (Long, List[AnyRef]) = (version, Nil)
+
+  override def doFilter(): ObjectQueryLanguage.Filter =
+    read {
+
+      new ObjectQueryLanguage.Filter(this, currentElements(), version)
+    }
+
+  def elements: List[AnyRef] =
+    read {
+
+      currentElements()
+    }
+
+  def size: Int =
+    read {
+
+      entries.size
+    }
+
+  def createHashIndex(path: String): Unit =
+    createIndex(new IndexedObjectQueryLanguage.HashIndex(QueryCompiler.compilePath(path)))
+
+  def createSortedIndex(path: String): Unit =
+    createIndex(new IndexedObjectQueryLanguage.SortedIndex(QueryCompiler.compilePath(path)))
+
+  def insert(obj: AnyRef): Unit =
+    write {
+
+      insertObject(obj)
+    }
+
+  def insertAll(objects: Iterable[AnyRef]): Unit =
+    write {
+
+      objects.foreach(insertObject)
+    }
+
+  def remove(obj: AnyRef): Boolean =
+    write {
+
+      val sequence = sequences.remove(obj)
+
+      if (sequence == null)
+        false
+      else {
+
+        entries.remove(sequence)
+        indexes.foreach(_.remove(sequence))
+        version += 1
+
+        true
+      }
+    }
+
+  def explain(clause: String): String = {
+
+    val plan = QueryCompiler.compileFilter(clause)
+
+    read {
+
+      choose(plan) match {
+        case Some((index, node, candidates)) =>
+          s"${index.kind} index on ${index.path} for ${node.getClass.getSimpleName} with " +
+            s"${candidates.size} candidates of ${entries.size} objects, then filter candidates"
+        case None =>
+          s"scan over ${entries.size} objects"
+      }
+    }
+  }
+
+  // only candidates of the chosen index see the remaining conjuncts, so a clause failing on an excluded object
+  // during a scan can succeed with an index; whenever the scan succeeds, both produce the same objects
+  override private[oql] def filterObjects(plan: QueryCompiler.FilterPlan,
+                                          initials: List[AnyRef],
+                                          version: Long): List[AnyRef] =
+    read {
+
+      if (version != this.version)
+        super.filterObjects(plan, initials, version)
+      else
+        choose(plan) match {
+          case Some((_, _, candidates)) => {
+
+            val ordered = candidates.asScala.map(_.longValue).toArray
+
+            util.Arrays.sort(ordered)
+
+            ordered.iterator.map(x => entries.get(x)).filter(plan.test(this, _)).toList
+          }
+          case None =>
+            super.filterObjects(plan, initials, version)
+        }
+    }
+
+  private def createIndex(index: IndexedObjectQueryLanguage.Index): Unit =
+    write {
+
+      if (indexes.exists(x => x.kind == index.kind && x.path == index.path))
+        throw new IllegalArgumentException(s"Cannot create ${index.kind} index on ${index.path} twice.")
+
+      entries.asScala.foreach {
+        case (sequence, obj) =>
+          index.insert(this, obj, sequence)
+      }
+
+      indexes += index
+    }
+
+  private def insertObject(obj: AnyRef): Unit = {
+
+    val sequence =
+      Option(sequences.get(obj)) match {
+        case Some(x) => {
+
+          indexes.foreach(_.remove(x))
+          x
+        }
+        case None => {
+
+          val x = java.lang.Long.valueOf(nextSequence)
+
+          nextSequence += 1
+          sequences.put(obj, x)
+          entries.put(x, obj)
+          x
+        }
+      }
+
+    indexes.foreach(_.insert(this, obj, sequence))
+    version += 1
+  }
+
+  private def currentElements(): List[AnyRef] = {
+
+    val (snapshotVersion, snapshotElements) = snapshot
+
+    if (snapshotVersion == version)
+      snapshotElements
+    else {
+
+      val elements = entries.values.asScala.toList
+
+      snapshot = (version, elements)
+      elements
+    }
+  }
+
+  private def choose(plan: QueryCompiler.FilterPlan)
+  : Option[(IndexedObjectQueryLanguage.Index, Ast.BooleanComparator, util.Set[java.lang.Long])] = {
+
+    val candidates =
+      for {
+        node <- plan.properties.filter(_.rootKey.isEmpty).flatMap(x => IndexedObjectQueryLanguage.conjuncts(x.term))
+        index <- indexes if (index.path == node.path)
+        result <- index.lookup(node)
+      } yield (index, node, result)
+
+    if (candidates.isEmpty)
+      None
+    else
+      Some(candidates.minBy(_._3.size))
+  }
+
+  private def read[T](block: => T): T = {
+
+    lock.readLock.lock()
+
+    try {
+
+      block
+
+    } finally {
+
+      lock.readLock.unlock()
+    }
+  }
+
+  private def write[T](block: => T): T = {
+
+    lock.writeLock.lock()
+
+    try {
+
+      block
+
+    } finally {
+
+      lock.writeLock.unlock()
+    }
+  }
+}
+
+object IndexedObjectQueryLanguage {
+
+  private def conjuncts(term: Ast.BooleanTerm): List[Ast.BooleanComparator] =
+    term match {
+      case Ast.And(values) => values.flatMap(conjuncts)
+      case x: Ast.BooleanComparator => List(x)
+      case _ => Nil
+    }
+
+  private def decimal(value: BigDecimal): AnyRef =
+    value.bigDecimal.stripTrailingZeros
+
+  private def canonical(value: Any): Option[AnyRef] =
+    value match {
+      case x: Boolean => Some(java.lang.Boolean.valueOf(x))
+      case Ast.Numeric(x) => x.toOption.map(decimal)
+      case x: Char => Some(java.lang.Character.valueOf(x))
+      case x: String => Some(x)
+      case x: OffsetDateTime => Some(x)
+      case x: OffsetTime => Some(x)
+      case _ => None
+    }
+
+  private def literal(node: Ast.BooleanComparator): Option[Ast.Value] =
+    node.value match {
+      case Left(x) if (node.sequenceMode == Ast.SequenceMode.None) => Some(x)
+      case _ => None
+    }
+
+  private[oql] abstract class Index(val path: Ast.Path) {
+
+    private val accessor = new QueryCompiler.PathAccessor(path)
+    private val keys = new util.HashMap[java.lang.Long, AnyRef]()
+
+    protected val unindexable = new util.HashSet[java.lang.Long]()
+
+    val kind: String
+
+    def lookup(node: Ast.BooleanComparator): Option[util.Set[java.lang.Long]]
+
+    protected def accept(key: AnyRef): Boolean
+
+    protected def add(key: AnyRef, sequence: java.lang.Long): Unit
+
+    protected def delete(key: AnyRef, sequence: java.lang.Long): Unit
+
+    def insert(ql: ObjectQueryLanguage, obj: AnyRef, sequence: java.lang.Long): Unit =
+      accessor.resolve(ql, obj).flatMap(canonical).filter(accept) match {
+        case Some(key) => {
+
+          keys.put(sequence, key)
+          add(key, sequence)
+        }
+        case None =>
+          unindexable.add(sequence)
+      }
+
+    def remove(sequence: java.lang.Long): Unit = {
+
+      val key = keys.remove(sequence)
+
+      if (key == null)
+        unindexable.remove(sequence)
+      else
+        delete(key, sequence)
+    }
+
+    protected def bucket(map: util.Map[AnyRef, util.Set[java.lang.Long]], key: AnyRef): util.Set[java.lang.Long] = {
+
+      val result = map.get(key)
+
+      if (result != null)
+        result
+      else {
+
+        val created = new util.HashSet[java.lang.Long]()
+
+        map.put(key, created)
+        created
+      }
+    }
+
+    protected def discard(map: util.Map[AnyRef, util.Set[java.lang.Long]], key: AnyRef, sequence: java.lang.Long): Unit = {
+
+      val result = map.get(key)
+
+      if (result != null) {
+
+        result.remove(sequence)
+
+        if (result.isEmpty)
+          map.remove(key)
+      }
+    }
+
+    protected def candidates(buckets: Iterable[util.Set[java.lang.Long]]): util.Set[java.lang.Long] = {
+
+      val result = new util.HashSet[java.lang.Long](unindexable)
+
+      buckets.foreach(result.addAll)
+
+      result
+    }
+  }
+
+  private[oql] class HashIndex(path: Ast.Path)
+    extends Index(path) {
+
+    private val map = new util.HashMap[AnyRef, util.Set[java.lang.Long]]()
+
+    val kind: String = "hash"
+
+    def lookup(node: Ast.BooleanComparator): Option[util.Set[java.lang.Long]] =
+      node match {
+        case x: Ast.Equal if (x.textMode == Ast.TextMode.None) =>
+          literal(x).map {
+            value =>
+
+              val probes: List[Option[AnyRef]] =
+                List(
+                  Some(value.value),
+                  value.decimal.map(decimal),
+                  value.boolean.map(x => java.lang.Boolean.valueOf(x)),
+                  value.char.map(x => java.lang.Character.valueOf(x)),
+                  value.dateTime,
+                  value.time
+                )
+
+              candidates(probes.flatten.flatMap(key => Option(map.get(key))))
+          }
+        case _ =>
+          None
+      }
+
+    protected def accept(key: AnyRef): Boolean =
+      true
+
+    protected def add(key: AnyRef, sequence: java.lang.Long): Unit =
+      bucket(map, key).add(sequence)
+
+    protected def delete(key: AnyRef, sequence: java.lang.Long): Unit =
+      discard(map, key, sequence)
+  }
+
+  private[oql] class SortedIndex(path: Ast.Path)
+    extends Index(path) {
+
+    private val numbers = new util.TreeMap[AnyRef, util.Set[java.lang.Long]]()
+    private val strings = new util.TreeMap[AnyRef, util.Set[java.lang.Long]]()
+    private val dateTimes = new util.TreeMap[AnyRef, util.Set[java.lang.Long]]()
+    private val times = new util.TreeMap[AnyRef, util.Set[java.lang.Long]]()
+
+    val kind: String = "sorted"
+
+    def lookup(node: Ast.BooleanComparator): Option[util.Set[java.lang.Long]] =
+      node match {
+        case x: Ast.BooleanComparatorOrdered if (x.textMode == Ast.TextMode.None) =>
+          literal(x).map {
+            value =>
+
+              def range(tree: util.TreeMap[AnyRef, util.Set[java.lang.Long]],
+                        key: Option[AnyRef]): Iterable[util.Set[java.lang.Long]] =
+                key.toList.flatMap {
+                  key =>
+
+                    val view =
+                      x match {
+                        case _: Ast.LessThan => tree.headMap(key, false)
+                        case _: Ast.LessThanOrEqual => tree.headMap(key, true)
+                        case _: Ast.GreaterThan => tree.tailMap(key, false)
+                        case _: Ast.GreaterThanOrEqual => tree.tailMap(key, true)
+                      }
+
+                    view.values.asScala
+                }
+
+              candidates(
+                range(numbers, value.decimal.map(decimal)) ++
+                  range(strings, Some(value.value)) ++
+                  range(dateTimes, value.dateTime) ++
+                  range(times, value.time))
+          }
+        case x: Ast.StartsWith if (x.textMode == Ast.TextMode.None || x.textMode == Ast.TextMode.Sensitive) =>
+          literal(x).map {
+            value =>
+
+              val prefixed =
+                strings.tailMap(value.value, true).asScala.iterator
+                  .takeWhile(_._1.asInstanceOf[String].startsWith(value.value))
+
+              candidates(
+                prefixed.map(_._2).toList ++
+                  numbers.values.asScala ++
+                  dateTimes.values.asScala ++
+                  times.values.asScala)
+          }
+        case _ =>
+          None
+      }
+
+    protected def accept(key: AnyRef): Boolean =
+      tree(key).isDefined
+
+    protected def add(key: AnyRef, sequence: java.lang.Long): Unit =
+      tree(key).foreach(bucket(_, key).add(sequence))
+
+    protected def delete(key: AnyRef, sequence: java.lang.Long): Unit =
+      tree(key).foreach(discard(_, key, sequence))
+
+    private def tree(key: AnyRef): Option[util.TreeMap[AnyRef, util.Set[java.lang.Long]]] =
+      key match {
+        case _: java.math.BigDecimal => Some(numbers)
+        case _: String => Some(strings)
+        case _: OffsetDateTime => Some(dateTimes)
+        case _: OffsetTime => Some(times)
+        case _ => None
+      }
+  }
+
+}
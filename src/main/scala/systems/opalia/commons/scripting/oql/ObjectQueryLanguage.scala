@@ -1,9 +1,14 @@
 package systems.opalia.commons.scripting.oql
 
 import java.util
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.{ForkJoinPool, ForkJoinTask, RecursiveAction}
 import org.parboiled2._
 import scala.collection.JavaConverters._
-import scala.collection.mutable
+import scala.collection.{AbstractIterator, mutable}
+import scala.reflect.ClassTag
+import scala.util.control.NonFatal
+import systems.opalia.commons.utility.instrumentation.Instrumentation
 
 
 abstract class ObjectQueryLanguage(objects: List[AnyRef]) {
@@ -11,16 +16,68 @@ abstract class ObjectQueryLanguage(objects: List[AnyRef]) {
   def doFilter(): ObjectQueryLanguage.Filter =
     new ObjectQueryLanguage.Filter(this, objects)
 
+  def doStream(source: Iterator[AnyRef]): ObjectQueryLanguage.StreamingQuery =
+    new ObjectQueryLanguage.StreamingQuery(this, source, None, 0)
+
+  def doStream(source: util.stream.Stream[_ <: AnyRef]): ObjectQueryLanguage.StreamingQuery =
+    doStream(source.iterator.asScala)
+
   protected def checkRootKey(obj: AnyRef, key: String): Boolean
 
   protected def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef]
 
   protected def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any]
+
+  def isThreadSafe: Boolean =
+    false
+
+  def parallelism: Option[ObjectQueryLanguage.Parallelism] =
+    None
+
+  private[oql] def filterObjects(plan: QueryCompiler.FilterPlan, initials: List[AnyRef], version: Long): List[AnyRef] =
+    parallelismFor(initials.length) match {
+      case Some(x) => {
+
+        val items = initials.toArray
+        val matches = ObjectQueryLanguage.mapParallel(x, items, plan.test(this, _))
+
+        items.indices.filter(matches(_)).map(items(_)).toList
+      }
+      case None =>
+        initials.filter(plan.test(this, _))
+    }
+
+  private[oql] def parallelismFor(size: Int): Option[ObjectQueryLanguage.Parallelism] =
+    parallelism match {
+      case Some(_) if (!isThreadSafe) =>
+        throw new IllegalStateException("Expect thread-safe object access for parallel evaluation.")
+      case x =>
+        x.filter(size >= _.threshold)
+    }
+
+  private[oql] final def rootKeyMatches(obj: AnyRef, key: String): Boolean =
+    checkRootKey(obj, key)
+
+  private[oql] final def objectOf(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+    getObject(obj, segment)
+
+  private[oql] final def valueOf(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+    getValue(obj, segment)
 }
 
 object ObjectQueryLanguage {
 
-  private class ObjectQueryLanguageParser(val input: ParserInput)
+  case class Parallelism(pool: ForkJoinPool = ForkJoinPool.commonPool(), threshold: Int = 8192) {
+
+    if (threshold < 1)
+      throw new IllegalArgumentException(s"Expect positive threshold but got $threshold.")
+  }
+
+  private val filterTimer = Instrumentation.timer("oql.filter")
+  private val orderTimer = Instrumentation.timer("oql.order")
+  private val resolveTimer = Instrumentation.timer("oql.resolve")
+
+  private[oql] class ObjectQueryLanguageParser(val input: ParserInput)
     extends Parser {
 
     private val CharSeq1 = CharPredicate.AlphaNum ++ "-_"
@@ -44,6 +101,12 @@ object ObjectQueryLanguage {
         (oneOrMore(`order-property`).separatedBy(';') ~> (_.toList)) ~ EOI
       }
 
+    def `path-expression`: Rule1[Ast.Path] =
+      rule {
+
+        `path` ~ EOI
+      }
+
     def `skip-expression`: Rule1[Int] =
       rule {
 
@@ -423,180 +486,326 @@ object ObjectQueryLanguage {
       }
   }
 
-  class Filter(ql: ObjectQueryLanguage, initials: List[AnyRef]) {
+  class Filter private[oql](ql: ObjectQueryLanguage, initials: List[AnyRef], version: Long) {
+
+    def this(ql: ObjectQueryLanguage, initials: List[AnyRef]) =
+      this(ql, initials, -1L)
 
     def doPagination(): Pagination =
       new Pagination(ql, initials)
 
     def filter(clause: String): Filter = {
 
-      val properties = new ObjectQueryLanguageParser(clause).`filter-expression`.run().get
+      filterTimer.time {
+
+        val plan = QueryCompiler.compileFilter(clause)
+
+        new Filter(ql, ql.filterObjects(plan, initials, version))
+      }
+    }
+  }
+
+  class Pagination private[oql](ql: ObjectQueryLanguage,
+                                initials: List[AnyRef],
+                                ordering: Option[QueryCompiler.OrderPlan],
+                                offset: Int) {
+
+    def this(ql: ObjectQueryLanguage, initials: List[AnyRef]) =
+      this(ql, initials, None, 0)
+
+    def doResolution(): Resolution =
+      new Resolution(ql, objects, Nil)
+
+    def skip(clause: String): Pagination =
+      skip(QueryCompiler.compileSkip(clause))
+
+    def skip(n: Int): Pagination =
+      ordering match {
+        case Some(_) if (n >= 0) =>
+          new Pagination(ql, initials, ordering, math.min(offset.toLong + n, Int.MaxValue).toInt)
+        case _ => {
+
+          def f(seq: List[AnyRef]): List[AnyRef] =
+            if (n < 0) seq.dropRight(-n) else seq.drop(n)
+
+          new Pagination(ql, f(objects))
+        }
+      }
+
+    def limit(clause: String): Pagination =
+      limit(QueryCompiler.compileLimit(clause))
+
+    def limit(n: Int): Pagination =
+      ordering match {
+        case Some(plan) if (n >= 0) => {
+
+          val k = math.min(offset.toLong + n, Int.MaxValue).toInt
+
+          new Pagination(ql, orderTimer.time(plan.top(ql, initials, k)).drop(offset))
+        }
+        case _ => {
+
+          def f(seq: List[AnyRef]): List[AnyRef] =
+            if (n < 0) seq.takeRight(-n) else seq.take(n)
+
+          new Pagination(ql, f(objects))
+        }
+      }
+
+    def order(clause: String): Pagination = {
+
+      val plan = QueryCompiler.compileOrder(clause)
+
+      ordering match {
+        case Some(previous) if (offset == 0) =>
+          new Pagination(ql, initials, Some(previous.andThen(plan)), 0)
+        case _ =>
+          new Pagination(ql, objects, Some(plan), 0)
+      }
+    }
+
+    private def objects: List[AnyRef] =
+      ordering match {
+        case Some(plan) =>
+          orderTimer.time(plan.sort(ql, initials)).drop(offset)
+        case None =>
+          initials
+      }
+  }
+
+  class Resolution(ql: ObjectQueryLanguage, initials: List[AnyRef], includes: List[AnyRef]) {
+
+    def fetchResult(): Result =
+      new Result(ql, initials, includes)
+
+    def resolve(clause: String): Resolution =
+      resolve(clause, Int.MaxValue, Int.MaxValue)
+
+    def resolve(clause: String, maxDepth: Int, maxNodes: Int): Resolution = {
+
+      if (maxDepth < 0)
+        throw new IllegalArgumentException(s"Expect non-negative maximum depth but got $maxDepth.")
+
+      if (maxNodes < 0)
+        throw new IllegalArgumentException(s"Expect non-negative maximum number of nodes but got $maxNodes.")
+
+      resolveTimer.time {
+
+        val plan = QueryCompiler.compileResolve(clause)
+
+        val visited = util.Collections.newSetFromMap(new util.IdentityHashMap[AnyRef, java.lang.Boolean]())
+        val queue = mutable.ArrayBuffer[AnyRef]()
+        val result = mutable.ListBuffer[AnyRef]()
+
+        (initials.iterator ++ includes.iterator).foreach {
+          x =>
+
+            if (visited.add(x))
+              queue += x
+        }
+
+        var index = 0
+        var depth = 0
+
+        while (index < queue.length && depth < maxDepth && result.length < maxNodes) {
+
+          val levelStart = index
+          val levelEnd = queue.length
 
-      def search(obj: AnyRef): Boolean =
-        !properties
-          .exists {
-            property =>
+          // a whole level can be expanded concurrently, merging stays sequential to keep the order
+          val expanded =
+            ql.parallelismFor(levelEnd - index)
+              .map(x => mapParallel(x, queue.slice(levelStart, levelEnd).toArray, plan.search(ql, _)))
 
-              if (property.rootKey.exists(!ql.checkRootKey(obj, _)))
-                true
-              else {
+          while (index < levelEnd && result.length < maxNodes) {
 
-                val resolve = (path: Ast.Path) => {
+            var found = expanded.map(_ (index - levelStart)).getOrElse(plan.search(ql, queue(index)))
 
-                  val init = path.init.foldLeft(Option(obj))((a, b) => a.flatMap(ql.getObject(_, b)))
+            while (found.nonEmpty && result.length < maxNodes) {
 
-                  init.flatMap(ql.getValue(_, path.last))
-                }
+              val x = found.head
 
-                !property.term.evaluate(resolve).get
+              if (visited.add(x)) {
+
+                result += x
+                queue += x
               }
+
+              found = found.tail
+            }
+
+            index += 1
           }
 
-      new Filter(ql, initials.filter(search))
+          depth += 1
+        }
+
+        new Resolution(ql, initials, result.toList)
+      }
     }
   }
 
-  class Pagination(ql: ObjectQueryLanguage, initials: List[AnyRef]) {
+  class Result(ql: ObjectQueryLanguage, val initials: List[AnyRef], val includes: List[AnyRef])
+
+  class StreamingQuery private[oql](ql: ObjectQueryLanguage,
+                                    source: Iterator[AnyRef],
+                                    ordering: Option[QueryCompiler.OrderPlan],
+                                    offset: Int) {
 
     def doResolution(): Resolution =
-      new Resolution(ql, initials, Nil)
+      new Resolution(ql, objects.toList, Nil)
+
+    def iterator: Iterator[AnyRef] =
+      objects
 
-    def skip(clause: String): Pagination = {
+    def toList: List[AnyRef] =
+      objects.toList
 
-      val n = new ObjectQueryLanguageParser(clause).`skip-expression`.run().get
+    def filter(clause: String): StreamingQuery = {
 
-      skip(n)
+      val plan = QueryCompiler.compileFilter(clause)
+
+      new StreamingQuery(ql, objects.filter(plan.test(ql, _)), None, 0)
     }
 
-    def skip(n: Int): Pagination = {
+    def skip(clause: String): StreamingQuery =
+      skip(QueryCompiler.compileSkip(clause))
 
-      def f(seq: List[AnyRef]): List[AnyRef] =
-        if (n < 0) seq.dropRight(-n) else seq.drop(n)
+    def skip(n: Int): StreamingQuery =
+      ordering match {
+        case Some(_) if (n >= 0) =>
+          new StreamingQuery(ql, source, ordering, math.min(offset.toLong + n, Int.MaxValue).toInt)
+        case _ =>
+          new StreamingQuery(ql, if (n < 0) dropLast(objects, -n) else objects.drop(n), None, 0)
+      }
 
-      new Pagination(ql, f(initials))
-    }
+    def limit(clause: String): StreamingQuery =
+      limit(QueryCompiler.compileLimit(clause))
 
-    def limit(clause: String): Pagination = {
+    def limit(n: Int): StreamingQuery =
+      ordering match {
+        case Some(plan) if (n >= 0) => {
 
-      val n = new ObjectQueryLanguageParser(clause).`limit-expression`.run().get
+          val k = math.min(offset.toLong + n, Int.MaxValue).toInt
 
-      limit(n)
-    }
+          new StreamingQuery(ql, deferred(orderTimer.time(plan.top(ql, source, k)).iterator.drop(offset)), None, 0)
+        }
+        case _ =>
+          new StreamingQuery(ql, if (n < 0) takeLast(objects, -n) else objects.take(n), None, 0)
+      }
 
-    def limit(n: Int): Pagination = {
+    def order(clause: String): StreamingQuery = {
 
-      def f(seq: List[AnyRef]): List[AnyRef] =
-        if (n < 0) seq.takeRight(-n) else seq.take(n)
+      val plan = QueryCompiler.compileOrder(clause)
 
-      new Pagination(ql, f(initials))
+      ordering match {
+        case Some(previous) if (offset == 0) =>
+          new StreamingQuery(ql, source, Some(previous.andThen(plan)), 0)
+        case _ =>
+          new StreamingQuery(ql, objects, Some(plan), 0)
+      }
     }
 
-    def order(clause: String): Pagination = {
+    private def objects: Iterator[AnyRef] =
+      ordering match {
+        case Some(plan) =>
+          deferred(orderTimer.time(plan.sort(ql, source.toList)).iterator.drop(offset))
+        case None =>
+          source
+      }
+  }
 
-      val properties = new ObjectQueryLanguageParser(clause).`order-expression`.run().get
+  private[oql] def mapParallel[T: ClassTag](parallelism: Parallelism, items: Array[AnyRef], f: AnyRef => T): Array[T] = {
 
-      val queue = mutable.Queue[AnyRef]()
+    val result = new Array[T](items.length)
+    val failure = new AtomicReference[Throwable]()
+    val leafSize = math.max(64, items.length / (parallelism.pool.getParallelism * 8))
 
-      val resolve = (path: Ast.Path) => {
+    class Task(from: Int, until: Int)
+      extends RecursiveAction {
 
-        val init = path.init.foldLeft(Option(queue.dequeue()))((a, b) => a.flatMap(ql.getObject(_, b)))
+      def compute(): Unit =
+        if (until - from <= leafSize) {
 
-        init.flatMap(ql.getValue(_, path.last))
-      }
+          var i = from
 
-      val sorted =
-        properties.foldLeft(initials) {
-          (initials, property) =>
+          while (i < until && failure.get == null) {
 
-            def f(obj1: AnyRef, obj2: AnyRef): Boolean = {
+            try {
 
-              val booleanTerm =
-                if (property.ascending)
-                  Ast.LessThan(property.path, Right(property.path), Ast.SequenceMode.None, property.textMode)
-                else
-                  Ast.GreaterThan(property.path, Right(property.path), Ast.SequenceMode.None, property.textMode)
+              result(i) = f(items(i))
 
-              queue.enqueue(obj1, obj2)
+            } catch {
 
-              booleanTerm.evaluate(resolve).get
+              case NonFatal(e) => failure.compareAndSet(null, e)
             }
 
-            initials.sortWith(f)
-        }
+            i += 1
+          }
 
-      new Pagination(ql, sorted)
+        } else {
+
+          val middle = (from + until) >>> 1
+
+          ForkJoinTask.invokeAll(new Task(from, middle), new Task(middle, until))
+        }
     }
+
+    parallelism.pool.invoke(new Task(0, items.length))
+
+    if (failure.get != null)
+      throw failure.get
+
+    result
   }
 
-  class Resolution(ql: ObjectQueryLanguage, initials: List[AnyRef], includes: List[AnyRef]) {
+  private def deferred(block: => Iterator[AnyRef]): Iterator[AnyRef] =
+    new AbstractIterator[AnyRef] {
 
-    def fetchResult(): Result =
-      new Result(ql, initials, includes)
+      private lazy val underlying = block
 
-    def resolve(clause: String): Resolution = {
+      def hasNext: Boolean =
+        underlying.hasNext
 
-      val properties = new ObjectQueryLanguageParser(clause).`resolve-expression`.run().get
+      def next(): AnyRef =
+        underlying.next()
+    }
 
-      def search(obj: AnyRef): List[AnyRef] =
-        properties
-          .map {
-            property =>
+  private def takeLast(source: Iterator[AnyRef], n: Int): Iterator[AnyRef] =
+    deferred {
 
-              val init = property.path.init.foldLeft(Option(obj))((a, b) => a.flatMap(ql.getObject(_, b)))
+      val buffer = mutable.Queue[AnyRef]()
 
-              val last = init.flatMap(ql.getObject(_, property.path.last))
+      source.foreach {
+        x =>
 
-              val seq =
-                last match {
-                  case Some(x: util.Collection[_]) => x.asScala.toList.map(_.asInstanceOf[AnyRef])
-                  case Some(x: Seq[_]) => x.map(_.asInstanceOf[AnyRef])
-                  case Some(x: Array[_]) => x.toSeq.map(_.asInstanceOf[AnyRef])
-                  case Some(x) => List(x)
-                  case None => Nil
-                }
+          if (buffer.size == n)
+            buffer.dequeue()
 
-              (seq, property.rootKey)
-          }
-          .filter {
-            case (_, Some(rootKey)) =>
-              ql.checkRootKey(obj, rootKey)
-            case (_, None) =>
-              true
-          }
-          .flatMap(_._1)
-
-      def resolve(): List[AnyRef] = {
-
-        def distinct(seq: List[AnyRef], acc: List[AnyRef]): List[AnyRef] =
-          seq match {
-            case x :: xs =>
-              if (acc.contains(x))
-                distinct(xs, acc)
-              else
-                distinct(xs, acc :+ x)
-            case Nil =>
-              acc
-          }
+          buffer.enqueue(x)
+      }
 
-        def collect(seq: List[AnyRef]): List[AnyRef] = {
+      buffer.iterator
+    }
 
-          val result =
-            distinct(seq ++ seq.flatMap(search), Nil)
-              .filterNot(x => initials.contains(x) || includes.contains(x))
+  private def dropLast(source: Iterator[AnyRef], n: Int): Iterator[AnyRef] =
+    new AbstractIterator[AnyRef] {
 
-          if (seq.sameElements(result))
-            seq
-          else
-            collect(result)
-        }
+      private val buffer = mutable.Queue[AnyRef]()
+
+      def hasNext: Boolean = {
+
+        while (buffer.size <= n && source.hasNext)
+          buffer.enqueue(source.next())
 
-        collect(initials ++ includes)
+        buffer.size > n
       }
 
-      new Resolution(ql, initials, resolve())
+      def next(): AnyRef =
+        if (hasNext)
+          buffer.dequeue()
+        else
+          Iterator.empty.next()
     }
-  }
-
-  class Result(ql: ObjectQueryLanguage, val initials: List[AnyRef], val includes: List[AnyRef])
 
 }
@@ -0,0 +1,412 @@
+package systems.opalia.commons.scripting.oql
+
+import java.util
+import scala.collection.JavaConverters._
+import systems.opalia.commons.utility.LruCache
+
+
+private[oql] object QueryCompiler {
+
+  private val cacheSize = 512
+  private val parallelSortThreshold = 1 << 13
+
+  private val filterPlans = new LruCache[String, FilterPlan](cacheSize)
+  private val orderPlans = new LruCache[String, OrderPlan](cacheSize)
+  private val resolvePlans = new LruCache[String, ResolvePlan](cacheSize)
+  private val skipValues = new LruCache[String, Integer](cacheSize)
+  private val limitValues = new LruCache[String, Integer](cacheSize)
+
+  def compileFilter(clause: String): FilterPlan =
+    filterPlans.getOrElseUpdate(clause, {
+
+      new FilterPlan(new ObjectQueryLanguage.ObjectQueryLanguageParser(clause).`filter-expression`.run().get)
+    })
+
+  def compileOrder(clause: String): OrderPlan =
+    orderPlans.getOrElseUpdate(clause, {
+
+      val properties = new ObjectQueryLanguage.ObjectQueryLanguageParser(clause).`order-expression`.run().get
+
+      new OrderPlan(properties.map(x => new OrderKey(x.path, x.ascending, x.textMode)).toArray)
+    })
+
+  def compileResolve(clause: String): ResolvePlan =
+    resolvePlans.getOrElseUpdate(clause, {
+
+      val properties = new ObjectQueryLanguage.ObjectQueryLanguageParser(clause).`resolve-expression`.run().get
+
+      new ResolvePlan(properties.map(x => (new PathAccessor(x.path), x.rootKey)).toArray)
+    })
+
+  def compileSkip(clause: String): Int =
+    skipValues.getOrElseUpdate(clause,
+      new ObjectQueryLanguage.ObjectQueryLanguageParser(clause).`skip-expression`.run().get)
+
+  def compileLimit(clause: String): Int =
+    limitValues.getOrElseUpdate(clause,
+      new ObjectQueryLanguage.ObjectQueryLanguageParser(clause).`limit-expression`.run().get)
+
+  def compilePath(clause: String): Ast.Path =
+    new ObjectQueryLanguage.ObjectQueryLanguageParser(clause).`path-expression`.run().get
+
+  final class FilterPlan(val properties: List[Ast.FilterProperty]) {
+
+    private val predicates = properties.map(x => (x.rootKey, compileTerm(x.term))).toArray
+
+    def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean = {
+
+      var i = 0
+
+      while (i < predicates.length) {
+
+        val (rootKey, predicate) = predicates(i)
+
+        if ((rootKey.isEmpty || ql.rootKeyMatches(obj, rootKey.get)) && !predicate.test(ql, obj))
+          return false
+
+        i += 1
+      }
+
+      true
+    }
+  }
+
+  final class OrderPlan(val keys: Array[OrderKey]) {
+
+    // the last property is the primary one, earlier properties break ties and the input order comes last
+    private val comparator =
+      new util.Comparator[SortEntry] {
+
+        def compare(a: SortEntry, b: SortEntry): Int = {
+
+          var i = keys.length - 1
+
+          while (i >= 0) {
+
+            val result = keys(i).compare(a.values(i), b.values(i))
+
+            if (result != 0)
+              return result
+
+            i -= 1
+          }
+
+          java.lang.Long.compare(a.index, b.index)
+        }
+      }
+
+    def andThen(that: OrderPlan): OrderPlan =
+      new OrderPlan(this.keys ++ that.keys)
+
+    def sort(ql: ObjectQueryLanguage, objects: List[AnyRef]): List[AnyRef] =
+      if (objects.lengthCompare(2) < 0)
+        objects
+      else {
+
+        val entries = extract(ql, objects)
+
+        if (entries.length >= parallelSortThreshold)
+          util.Arrays.parallelSort(entries, comparator)
+        else
+          util.Arrays.sort(entries, comparator)
+
+        entries.iterator.map(_.obj).toList
+      }
+
+    def top(ql: ObjectQueryLanguage, objects: List[AnyRef], n: Int): List[AnyRef] =
+      if (objects.lengthCompare(2) < 0)
+        objects.take(n)
+      else {
+
+        val entries = extract(ql, objects)
+
+        if (n <= 0)
+          Nil
+        else if (n.toLong * 2 >= entries.length) {
+
+          util.Arrays.sort(entries, comparator)
+
+          entries.iterator.take(n).map(_.obj).toList
+
+        } else
+          select(entries.iterator, n)
+      }
+
+    def top(ql: ObjectQueryLanguage, objects: Iterator[AnyRef], n: Int): List[AnyRef] =
+      if (n <= 0)
+        Nil
+      else {
+
+        var i = -1L
+
+        select(objects.map {
+          obj =>
+
+            i += 1
+            new SortEntry(obj, i, keys.map(_.value(ql, obj)))
+        }, n)
+      }
+
+    private def select(entries: Iterator[SortEntry], n: Int): List[AnyRef] = {
+
+      val heap = new util.PriorityQueue[SortEntry](math.min(n, 1 << 10) + 1, comparator.reversed())
+
+      entries.foreach {
+        entry =>
+
+          if (heap.size < n)
+            heap.add(entry)
+          else if (comparator.compare(entry, heap.peek()) < 0) {
+
+            heap.poll()
+            heap.add(entry)
+          }
+      }
+
+      val result = heap.toArray(new Array[SortEntry](heap.size))
+
+      util.Arrays.sort(result, comparator)
+
+      result.iterator.map(_.obj).toList
+    }
+
+    private def extract(ql: ObjectQueryLanguage, objects: List[AnyRef]): Array[SortEntry] = {
+
+      val entries = new Array[SortEntry](objects.length)
+      var remaining = objects
+      var i = 0
+
+      while (remaining.nonEmpty) {
+
+        val obj = remaining.head
+
+        entries(i) = new SortEntry(obj, i, keys.map(_.value(ql, obj)))
+        remaining = remaining.tail
+        i += 1
+      }
+
+      entries
+    }
+  }
+
+  private final class SortEntry(val obj: AnyRef, val index: Long, val values: Array[Any])
+
+  final class OrderKey(val path: Ast.Path, val ascending: Boolean, val textMode: Ast.TextMode) {
+
+    private val accessor = new PathAccessor(path)
+
+    private val comparator =
+      if (ascending)
+        Ast.LessThan(path, Right(path), Ast.SequenceMode.None, textMode)
+      else
+        Ast.GreaterThan(path, Right(path), Ast.SequenceMode.None, textMode)
+
+    def value(ql: ObjectQueryLanguage, obj: AnyRef): Any =
+      accessor.resolve(ql, obj)
+        .getOrElse(throw new IllegalArgumentException(s"Cannot resolve left operand $path"))
+
+    def compare(left: Any, right: Any): Int =
+      if (before(left, right))
+        -1
+      else if (before(right, left))
+        1
+      else
+        0
+
+    private def before(left: Any, right: Any): Boolean =
+      comparator.matchAny.applyOrElse((left, right, textMode),
+        (_: (Any, Any, Ast.TextMode)) =>
+          throw new IllegalArgumentException(s"Cannot find matching types for operands $path and $path"))
+  }
+
+  final class ResolvePlan(properties: Array[(PathAccessor, Option[String])]) {
+
+    def search(ql: ObjectQueryLanguage, obj: AnyRef): List[AnyRef] =
+      properties.toList
+        .filter {
+          case (_, Some(rootKey)) =>
+            ql.rootKeyMatches(obj, rootKey)
+          case (_, None) =>
+            true
+        }
+        .flatMap {
+          case (accessor, _) =>
+
+            accessor.resolveObject(ql, obj) match {
+              case Some(x: util.Collection[_]) => x.asScala.toList.map(_.asInstanceOf[AnyRef])
+              case Some(x: Seq[_]) => x.map(_.asInstanceOf[AnyRef])
+              case Some(x: Array[_]) => x.toSeq.map(_.asInstanceOf[AnyRef])
+              case Some(x) => List(x)
+              case None => Nil
+            }
+        }
+  }
+
+  final class PathAccessor(val path: Ast.Path) {
+
+    private val init = path.init.toArray
+
+    def resolve(ql: ObjectQueryLanguage, obj: AnyRef): Option[Any] = {
+
+      val parent = resolveParent(ql, obj)
+
+      if (parent == null)
+        None
+      else
+        ql.valueOf(parent, path.last)
+    }
+
+    def resolveObject(ql: ObjectQueryLanguage, obj: AnyRef): Option[AnyRef] = {
+
+      val parent = resolveParent(ql, obj)
+
+      if (parent == null)
+        None
+      else
+        ql.objectOf(parent, path.last)
+    }
+
+    private def resolveParent(ql: ObjectQueryLanguage, obj: AnyRef): AnyRef = {
+
+      var current = obj
+      var i = 0
+
+      while (current != null && i < init.length) {
+
+        current = ql.objectOf(current, init(i)).orNull
+        i += 1
+      }
+
+      current
+    }
+  }
+
+  abstract class Predicate {
+
+    def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean
+  }
+
+  private def compileTerm(term: Ast.BooleanTerm): Predicate =
+    term match {
+
+      case Ast.And(values) => {
+
+        val predicates = values.map(compileTerm).toArray
+
+        new Predicate {
+
+          def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean =
+            predicates.forall(_.test(ql, obj))
+        }
+      }
+
+      case Ast.Or(values) => {
+
+        val predicates = values.map(compileTerm).toArray
+
+        new Predicate {
+
+          def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean =
+            predicates.exists(_.test(ql, obj))
+        }
+      }
+
+      case Ast.Xor(values) => {
+
+        val predicates = values.map(compileTerm).toArray
+
+        new Predicate {
+
+          def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean = {
+
+            var count = 0
+            var i = 0
+
+            while (count <= 1 && i < predicates.length) {
+
+              if (predicates(i).test(ql, obj))
+                count += 1
+
+              i += 1
+            }
+
+            count == 1
+          }
+        }
+      }
+
+      case Ast.Not(value) => {
+
+        val predicate = compileTerm(value)
+
+        new Predicate {
+
+          def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean =
+            !predicate.test(ql, obj)
+        }
+      }
+
+      case Ast.Exists(path) => {
+
+        val accessor = new PathAccessor(path)
+
+        new Predicate {
+
+          def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean =
+            accessor.resolve(ql, obj).isDefined
+        }
+      }
+
+      case x: Ast.BooleanComparator =>
+        new ComparatorPredicate(x)
+    }
+
+  private final class ComparatorPredicate(node: Ast.BooleanComparator)
+    extends Predicate {
+
+    private val left = new PathAccessor(node.path)
+    private val right = node.value.right.map(x => new PathAccessor(x))
+
+    def test(ql: ObjectQueryLanguage, obj: AnyRef): Boolean =
+      left.resolve(ql, obj) match {
+        case None =>
+          throw new IllegalArgumentException(s"Cannot resolve left operand ${node.path}")
+        case Some(seq: util.Collection[_]) if (node.sequenceMode == Ast.SequenceMode.AtAll) =>
+          seq.asScala.forall(applyRight(ql, obj, _))
+        case Some(seq: Seq[_]) if (node.sequenceMode == Ast.SequenceMode.AtAll) =>
+          seq.forall(applyRight(ql, obj, _))
+        case Some(seq: Array[_]) if (node.sequenceMode == Ast.SequenceMode.AtAll) =>
+          seq.forall(applyRight(ql, obj, _))
+        case Some(seq: util.Collection[_]) if (node.sequenceMode == Ast.SequenceMode.AtLeastOne) =>
+          seq.asScala.exists(applyRight(ql, obj, _))
+        case Some(seq: Seq[_]) if (node.sequenceMode == Ast.SequenceMode.AtLeastOne) =>
+          seq.exists(applyRight(ql, obj, _))
+        case Some(seq: Array[_]) if (node.sequenceMode == Ast.SequenceMode.AtLeastOne) =>
+          seq.exists(applyRight(ql, obj, _))
+        case Some(x) if (node.sequenceMode == Ast.SequenceMode.None) =>
+          applyRight(ql, obj, x)
+        case _ =>
+          throw new IllegalArgumentException(s"Cannot apply sequence operation on left operand ${node.path}")
+      }
+
+    private def applyRight(ql: ObjectQueryLanguage, obj: AnyRef, x: Any): Boolean =
+      right match {
+        case Left(value) =>
+          node.matchString.applyOrElse((x, value, node.textMode),
+            (_: (Any, Ast.Value, Ast.TextMode)) =>
+              throw new IllegalArgumentException(
+                s"Cannot apply argument on left operand ${node.path} with value ${value.value}"))
+        case Right(accessor) =>
+          accessor.resolve(ql, obj) match {
+            case None =>
+              throw new IllegalArgumentException(s"Cannot resolve right operand ${accessor.path}")
+            case Some(z) =>
+              node.matchAny.applyOrElse((x, z, node.textMode),
+                (_: (Any, Any, Ast.TextMode)) =>
+                  throw new IllegalArgumentException(
+                    s"Cannot find matching types for operands ${node.path} and ${accessor.path}"))
+          }
+      }
+  }
+
+}
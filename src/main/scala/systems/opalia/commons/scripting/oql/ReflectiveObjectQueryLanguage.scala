@@ -0,0 +1,156 @@
+package systems.opalia.commons.scripting.oql
+
+import java.lang.invoke.{MethodHandles, MethodType}
+import java.lang.reflect.{Method, Modifier}
+import java.util
+import java.util.concurrent.ConcurrentHashMap
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+
+class ReflectiveObjectQueryLanguage(objects: List[AnyRef], rootKeyField: String)
+  extends ObjectQueryLanguage(objects) {
+
+  def this(objects: List[AnyRef]) =
+    this(objects, "id")
+
+  override def isThreadSafe: Boolean =
+    true
+
+  protected def checkRootKey(obj: AnyRef, key: String): Boolean =
+    ReflectiveObjectQueryLanguage.read(obj, rootKeyField).exists(_.toString == key)
+
+  protected def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+    segment match {
+      case Ast.FieldSegment(field) =>
+        ReflectiveObjectQueryLanguage.read(obj, field)
+      case Ast.KeyAndFieldSegment(key, field) =>
+        ReflectiveObjectQueryLanguage.read(obj, field).flatMap {
+          case x: util.Map[_, _] =>
+            ReflectiveObjectQueryLanguage.unwrap(x.get(key).asInstanceOf[AnyRef])
+          case x: collection.Map[_, _] =>
+            x.asInstanceOf[collection.Map[String, AnyRef]].get(key).flatMap(ReflectiveObjectQueryLanguage.unwrap)
+          case x: util.Collection[_] =>
+            x.asScala.map(_.asInstanceOf[AnyRef]).find(checkRootKey(_, key))
+          case x: Seq[_] =>
+            x.map(_.asInstanceOf[AnyRef]).find(checkRootKey(_, key))
+          case x: Array[_] =>
+            x.map(_.asInstanceOf[AnyRef]).find(checkRootKey(_, key))
+          case x =>
+            Some(x).filter(checkRootKey(_, key))
+        }
+    }
+
+  protected def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+    getObject(obj, segment)
+}
+
+object ReflectiveObjectQueryLanguage {
+
+  private type Accessor = util.function.Function[AnyRef, AnyRef]
+
+  private val accessors =
+    new ClassValue[ConcurrentHashMap[String, Option[Accessor]]] {
+
+      override def computeValue(clazz: Class[_]): ConcurrentHashMap[String, Option[Accessor]] =
+        new ConcurrentHashMap[String, Option[Accessor]]()
+    }
+
+  private def read(obj: AnyRef, field: String): Option[AnyRef] =
+    obj match {
+      case null =>
+        None
+      case x: util.Map[_, _] =>
+        unwrap(x.get(field).asInstanceOf[AnyRef])
+      case x: collection.Map[_, _] =>
+        x.asInstanceOf[collection.Map[String, AnyRef]].get(field).flatMap(unwrap)
+      case x =>
+        accessor(x.getClass, field).flatMap(accessor => unwrap(accessor.apply(x)))
+    }
+
+  private def unwrap(value: AnyRef): Option[AnyRef] =
+    value match {
+      case null => None
+      case x: Option[_] => x.flatMap(y => unwrap(y.asInstanceOf[AnyRef]))
+      case x: util.Optional[_] => if (x.isPresent) unwrap(x.get.asInstanceOf[AnyRef]) else None
+      case x: Seq[_] => Some(x)
+      case x: collection.Map[_, _] => Some(x)
+      case x: Iterable[_] => Some(x.toList)
+      case x => Some(x)
+    }
+
+  private def accessor(clazz: Class[_], field: String): Option[Accessor] =
+    accessors.get(clazz).computeIfAbsent(field, (_: String) => createAccessor(clazz, field))
+
+  private def createAccessor(clazz: Class[_], field: String): Option[Accessor] = {
+
+    val methods =
+      clazz.getMethods.filter {
+        method =>
+
+          method.getParameterCount == 0 &&
+            !Modifier.isStatic(method.getModifiers) &&
+            method.getReturnType != Void.TYPE
+      }
+
+    names(field).view.flatMap(name => methods.find(_.getName == name)).headOption match {
+      case Some(method) =>
+        Some(generate(method))
+      case None =>
+        clazz.getFields.find(x => x.getName == field && !Modifier.isStatic(x.getModifiers)).map {
+          x =>
+
+            new Accessor {
+
+              def apply(obj: AnyRef): AnyRef =
+                x.get(obj)
+            }
+        }
+    }
+  }
+
+  private def names(field: String): Seq[String] = {
+
+    val parts = field.split('_').filter(_.nonEmpty)
+    val camelCase = (parts.take(1) ++ parts.drop(1).map(_.capitalize)).mkString
+
+    Seq(field, camelCase)
+      .flatMap(name => Seq(name, "get" + name.capitalize, "is" + name.capitalize))
+      .distinct
+  }
+
+  private def generate(method: Method): Accessor =
+    try {
+
+      val handle =
+        MethodHandles.lookup()
+          .unreflect(method)
+          .asType(MethodType.methodType(classOf[AnyRef], classOf[AnyRef]))
+
+      new Accessor {
+
+        def apply(obj: AnyRef): AnyRef =
+          handle.invokeExact(obj): AnyRef
+      }
+
+    } catch {
+
+      case NonFatal(_) => {
+
+        try {
+
+          method.setAccessible(true)
+
+        } catch {
+
+          case NonFatal(_) =>
+        }
+
+        new Accessor {
+
+          def apply(obj: AnyRef): AnyRef =
+            method.invoke(obj)
+        }
+      }
+    }
+}
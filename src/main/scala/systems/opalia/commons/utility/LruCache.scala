@@ -0,0 +1,144 @@
+package systems.opalia.commons.utility
+
+import java.util
+
+
+class LruCache[K, V](val capacity: Int, val maxWeight: Long, weigher: (K, V) => Long) {
+
+  if (capacity < 1)
+    throw new IllegalArgumentException(s"Expect positive capacity but got $capacity.")
+
+  if (maxWeight < 1)
+    throw new IllegalArgumentException(s"Expect positive maximum weight but got $maxWeight.")
+
+  private val entries = new util.LinkedHashMap[K, V](16, 0.75f, true)
+
+  private var weight = 0L
+  private var hits = 0L
+  private var misses = 0L
+  private var evictions = 0L
+
+  def this(capacity: Int) =
+    this(capacity, Long.MaxValue, (_: K, _: V) => 1L)
+
+  def get(key: K): Option[V] =
+    entries.synchronized {
+
+      val value = Option(entries.get(key))
+
+      if (value.isEmpty)
+        misses += 1
+      else
+        hits += 1
+
+      value
+    }
+
+  def getOrElseUpdate(key: K, value: => V): V =
+    get(key) match {
+      case Some(x) =>
+        x
+      case None =>
+
+        val created = value
+
+        entries.synchronized {
+
+          val existing = entries.get(key)
+
+          if (existing != null)
+            existing
+          else {
+
+            insert(key, created)
+            created
+          }
+        }
+    }
+
+  def put(key: K, value: V): Option[V] =
+    entries.synchronized {
+
+      insert(key, value)
+    }
+
+  def remove(key: K): Option[V] =
+    entries.synchronized {
+
+      val previous = Option(entries.remove(key))
+
+      previous.foreach(x => weight -= weigher(key, x))
+      previous
+    }
+
+  def removeIf(predicate: (K, V) => Boolean): Int =
+    entries.synchronized {
+
+      val iterator = entries.entrySet.iterator
+      var removed = 0
+
+      while (iterator.hasNext) {
+
+        val entry = iterator.next()
+
+        if (predicate(entry.getKey, entry.getValue)) {
+
+          weight -= weigher(entry.getKey, entry.getValue)
+          iterator.remove()
+          removed += 1
+        }
+      }
+
+      removed
+    }
+
+  def clear(): Unit =
+    entries.synchronized {
+
+      entries.clear()
+      weight = 0
+    }
+
+  def size: Int =
+    entries.synchronized {
+
+      entries.size
+    }
+
+  def statistics: LruCache.Statistics =
+    entries.synchronized {
+
+      LruCache.Statistics(hits, misses, evictions, entries.size, weight)
+    }
+
+  private def insert(key: K, value: V): Option[V] = {
+
+    val previous = Option(entries.put(key, value))
+
+    previous.foreach(x => weight -= weigher(key, x))
+    weight += weigher(key, value)
+
+    // the iteration order of an access ordered map starts with the least recently used entry
+    val iterator = entries.entrySet.iterator
+
+    while (iterator.hasNext && (entries.size > capacity || weight > maxWeight)) {
+
+      val eldest = iterator.next()
+
+      weight -= weigher(eldest.getKey, eldest.getValue)
+      iterator.remove()
+      evictions += 1
+    }
+
+    previous
+  }
+}
+
+object LruCache {
+
+  case class Statistics(hits: Long, misses: Long, evictions: Long, size: Int, weight: Long) {
+
+    def hitRate: Double =
+      if (hits + misses == 0) 0d else hits.toDouble / (hits + misses)
+  }
+}
@@ -0,0 +1,204 @@
+package systems.opalia.commons.utility.instrumentation
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray}
+import java.util.function.LongBinaryOperator
+
+
+final class Histogram {
+
+  private val counts = new AtomicLongArray(Histogram.bucketCount)
+  private val total = new AtomicLong(0)
+  private val sum = new AtomicLong(0)
+  private val min = new AtomicLong(Long.MaxValue)
+  private val max = new AtomicLong(Long.MinValue)
+
+  def record(value: Long): Unit =
+    record(value, 1)
+
+  def record(value: Long, count: Long): Unit = {
+
+    if (value < 0)
+      throw new IllegalArgumentException(s"Expect non-negative value but got $value.")
+
+    if (count > 0) {
+
+      val product = if (value != 0 && count > Long.MaxValue / value) Long.MaxValue else value * count
+
+      counts.addAndGet(Histogram.indexOf(value), count)
+      total.addAndGet(count)
+      sum.accumulateAndGet(product, Histogram.saturatedSum)
+      updateMin(value)
+      updateMax(value)
+    }
+  }
+
+  def count: Long =
+    total.get
+
+  def sumOfValues: Long =
+    sum.get
+
+  def minimum: Long =
+    if (total.get == 0) 0 else min.get
+
+  def maximum: Long =
+    if (total.get == 0) 0 else max.get
+
+  def mean: Double =
+    if (total.get == 0) 0d else sum.get.toDouble / total.get.toDouble
+
+  def percentile(p: Double): Long = {
+
+    if (p < 0 || p > 100)
+      throw new IllegalArgumentException(s"Expect percentile between 0 and 100 but got $p.")
+
+    val n = total.get
+
+    if (n == 0)
+      0
+    else {
+
+      val rank = math.max(1L, math.ceil(p / 100d * n).toLong)
+      var seen = 0L
+      var index = 0
+
+      while (index < Histogram.bucketCount - 1 && seen + counts.get(index) < rank) {
+
+        seen += counts.get(index)
+        index += 1
+      }
+
+      math.max(minimum, math.min(maximum, Histogram.highestValueOf(index)))
+    }
+  }
+
+  def p50: Long =
+    percentile(50)
+
+  def p99: Long =
+    percentile(99)
+
+  def p999: Long =
+    percentile(99.9)
+
+  def add(that: Histogram): Unit =
+    if (that.total.get > 0) {
+
+      for (i <- 0 until Histogram.bucketCount) {
+
+        val value = that.counts.get(i)
+
+        if (value != 0)
+          counts.addAndGet(i, value)
+      }
+
+      total.addAndGet(that.total.get)
+      sum.accumulateAndGet(that.sum.get, Histogram.saturatedSum)
+      updateMin(that.min.get)
+      updateMax(that.max.get)
+    }
+
+  def copy(): Histogram = {
+
+    val histogram = new Histogram()
+
+    histogram.add(this)
+    histogram
+  }
+
+  def reset(): Unit = {
+
+    for (i <- 0 until Histogram.bucketCount)
+      counts.set(i, 0)
+
+    total.set(0)
+    sum.set(0)
+    min.set(Long.MaxValue)
+    max.set(Long.MinValue)
+  }
+
+  private[instrumentation] def drainTo(that: Histogram): Unit = {
+
+    var drained = 0L
+
+    for (i <- 0 until Histogram.bucketCount) {
+
+      val value = counts.getAndSet(i, 0)
+
+      if (value != 0) {
+
+        that.counts.addAndGet(i, value)
+        drained += value
+      }
+    }
+
+    if (drained > 0) {
+
+      total.addAndGet(-drained)
+      that.total.addAndGet(drained)
+      that.sum.accumulateAndGet(sum.getAndSet(0), Histogram.saturatedSum)
+      that.updateMin(min.getAndSet(Long.MaxValue))
+      that.updateMax(max.getAndSet(Long.MinValue))
+    }
+  }
+
+  private def updateMin(value: Long): Unit = {
+
+    var current = min.get
+
+    while (value < current && !min.compareAndSet(current, value))
+      current = min.get
+  }
+
+  private def updateMax(value: Long): Unit = {
+
+    var current = max.get
+
+    while (value > current && !max.compareAndSet(current, value))
+      current = max.get
+  }
+
+  override def toString: String =
+    s"Histogram(count=$count, min=$minimum, p50=$p50, p99=$p99, p999=$p999, max=$maximum)"
+}
+
+object Histogram {
+
+  // values below 2^8 are counted exactly, every following power of two is split into 128 buckets
+  private val subBucketBits = 7
+  private val linearLimit = 1L << (subBucketBits + 1)
+  private val subBucketCount = 1 << subBucketBits
+
+  val highestTrackableValue: Long = (1L << 44) - 1
+
+  private[instrumentation] val bucketCount =
+    linearLimit.toInt + (63 - java.lang.Long.numberOfLeadingZeros(highestTrackableValue) - subBucketBits) * subBucketCount
+
+  private val saturatedSum: LongBinaryOperator =
+    (x: Long, y: Long) => if (x > Long.MaxValue - y) Long.MaxValue else x + y
+
+  private[instrumentation] def indexOf(value: Long): Int =
+    if (value < linearLimit)
+      value.toInt
+    else {
+
+      val clamped = math.min(value, highestTrackableValue)
+      val exponent = 63 - java.lang.Long.numberOfLeadingZeros(clamped)
+      val shift = exponent - subBucketBits
+
+      linearLimit.toInt + (exponent - subBucketBits - 1) * subBucketCount +
+        ((clamped >>> shift) & (subBucketCount - 1)).toInt
+    }
+
+  private[instrumentation] def highestValueOf(index: Int): Long =
+    if (index < linearLimit)
+      index
+    else {
+
+      val offset = index - linearLimit.toInt
+      val shift = offset / subBucketCount + 1
+      val mantissa = subBucketCount + offset % subBucketCount
+
+      ((mantissa.toLong + 1) << shift) - 1
+    }
+}
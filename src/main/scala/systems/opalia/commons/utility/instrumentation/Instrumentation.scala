@@ -0,0 +1,47 @@
+package systems.opalia.commons.utility.instrumentation
+
+import java.util.concurrent.ConcurrentHashMap
+import scala.collection.JavaConverters._
+
+
+object Instrumentation {
+
+  @volatile private var enabled = false
+  @volatile private var cpuTimeTracked = false
+  @volatile private var allocationTracked = false
+
+  private val registry = new ConcurrentHashMap[String, Timer]()
+
+  def enable(trackCpuTime: Boolean = false, trackAllocations: Boolean = false): Unit = {
+
+    Timer.enableMeasurements(trackCpuTime, trackAllocations)
+
+    cpuTimeTracked = trackCpuTime
+    allocationTracked = trackAllocations
+    enabled = true
+  }
+
+  def disable(): Unit =
+    enabled = false
+
+  def isEnabled: Boolean =
+    enabled
+
+  def isCpuTimeTracked: Boolean =
+    cpuTimeTracked
+
+  def isAllocationTracked: Boolean =
+    allocationTracked
+
+  def timer(name: String): Timer =
+    registry.computeIfAbsent(name, (x: String) => new Timer(x))
+
+  def timers: Map[String, Timer] =
+    registry.asScala.toMap
+
+  def snapshot(): Map[String, Timer.Snapshot] =
+    registry.asScala.map(x => x._1 -> x._2.snapshot()).toMap
+
+  def snapshotAndReset(): Map[String, Timer.Snapshot] =
+    registry.asScala.map(x => x._1 -> x._2.snapshotAndReset()).toMap
+}
@@ -0,0 +1,64 @@
+package systems.opalia.commons.utility.instrumentation
+
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentLinkedQueue
+import scala.collection.JavaConverters._
+
+
+final class Recorder {
+
+  private val slots = new ConcurrentLinkedQueue[Recorder.Slot]()
+  private val retired = new Histogram()
+
+  private val local =
+    ThreadLocal.withInitial[Histogram](() => {
+
+      val histogram = new Histogram()
+
+      sweep()
+      slots.add(new Recorder.Slot(new WeakReference(Thread.currentThread), histogram))
+      histogram
+    })
+
+  def record(value: Long): Unit =
+    local.get.record(value)
+
+  def snapshot(): Histogram = {
+
+    val result = new Histogram()
+
+    sweep()
+    result.add(retired)
+    slots.asScala.foreach(slot => result.add(slot.histogram))
+    result
+  }
+
+  def snapshotAndReset(): Histogram = {
+
+    val result = new Histogram()
+
+    sweep()
+    retired.drainTo(result)
+    slots.asScala.foreach(_.histogram.drainTo(result))
+    result
+  }
+
+  private[instrumentation] def threads: Int =
+    slots.size
+
+  private def sweep(): Unit =
+    slots.asScala.foreach {
+      slot =>
+
+        val thread = slot.thread.get
+
+        if ((thread == null || !thread.isAlive) && slots.remove(slot))
+          slot.histogram.drainTo(retired)
+    }
+}
+
+object Recorder {
+
+  private final class Slot(val thread: WeakReference[Thread], val histogram: Histogram)
+
+}
@@ -0,0 +1,82 @@
+package systems.opalia.commons.utility.instrumentation
+
+import java.lang.management.ManagementFactory
+
+
+final class Timer private[instrumentation](val name: String) {
+
+  val latency = new Recorder()
+  val cpuTime = new Recorder()
+  val allocatedBytes = new Recorder()
+
+  def time[R](block: => R): R =
+    if (!Instrumentation.isEnabled)
+      block
+    else {
+
+      val trackCpuTime = Instrumentation.isCpuTimeTracked && Timer.cpuTimeSupported
+      val trackAllocations = Instrumentation.isAllocationTracked && Timer.allocationSupported
+      val threadId = Thread.currentThread.getId
+      val cpuStart = if (trackCpuTime) Timer.threadBean.getCurrentThreadCpuTime else 0L
+      val allocationStart = if (trackAllocations) Timer.allocatedBytesOf(threadId) else 0L
+      val start = System.nanoTime()
+
+      try {
+
+        block
+
+      } finally {
+
+        latency.record(math.max(0L, System.nanoTime() - start))
+
+        if (trackCpuTime)
+          cpuTime.record(math.max(0L, Timer.threadBean.getCurrentThreadCpuTime - cpuStart))
+
+        if (trackAllocations)
+          allocatedBytes.record(math.max(0L, Timer.allocatedBytesOf(threadId) - allocationStart))
+      }
+    }
+
+  def record(nanos: Long): Unit =
+    if (Instrumentation.isEnabled)
+      latency.record(nanos)
+
+  def snapshot(): Timer.Snapshot =
+    Timer.Snapshot(name, latency.snapshot(), cpuTime.snapshot(), allocatedBytes.snapshot())
+
+  def snapshotAndReset(): Timer.Snapshot =
+    Timer.Snapshot(name, latency.snapshotAndReset(), cpuTime.snapshotAndReset(), allocatedBytes.snapshotAndReset())
+}
+
+object Timer {
+
+  case class Snapshot(name: String, latency: Histogram, cpuTime: Histogram, allocatedBytes: Histogram)
+
+  private val threadBean = ManagementFactory.getThreadMXBean
+
+  private val allocationBean =
+    threadBean match {
+      case x: com.sun.management.ThreadMXBean if (x.isThreadAllocatedMemorySupported) => Some(x)
+      case _ => None
+    }
+
+  private val cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported
+
+  private val allocationSupported = allocationBean.isDefined
+
+  private[instrumentation] def enableMeasurements(cpuTime: Boolean, allocations: Boolean): Unit = {
+
+    if (cpuTime && cpuTimeSupported && !threadBean.isThreadCpuTimeEnabled)
+      threadBean.setThreadCpuTimeEnabled(true)
+
+    allocationBean.foreach {
+      bean =>
+
+        if (allocations && !bean.isThreadAllocatedMemoryEnabled)
+          bean.setThreadAllocatedMemoryEnabled(true)
+    }
+  }
+
+  private def allocatedBytesOf(threadId: Long): Long =
+    allocationBean.map(_.getThreadAllocatedBytes(threadId)).getOrElse(0L)
+}
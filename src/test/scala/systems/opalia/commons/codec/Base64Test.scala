@@ -0,0 +1,74 @@
+package systems.opalia.commons.codec
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.nio.ByteBuffer
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class Base64Test
+  extends AnyFlatSpec
+    with Matchers {
+
+  val data: Array[Byte] = Array.tabulate(1000)(x => (x * 7).toByte)
+
+  it should "validate strings of different variants" in {
+
+    Base64.isValid("aGVsbG8=") should be(true)
+    Base64.isValid("aGVsbG8") should be(false)
+    Base64.isValid("a-_b") should be(false)
+    Base64.UrlSafe.isValid("a-_b") should be(true)
+    Base64.UrlSafe.isValid("aGVsbG8") should be(true)
+    Base64.Mime.isValid(Base64.Mime.encode(data)) should be(true)
+  }
+
+  it should "be able to encode and decode arrays and buffers" in {
+
+    Base64.encodeFromString("hello") should be("aGVsbG8=")
+    Base64.decodeToString("aGVsbG8=") should be("hello")
+
+    List(Base64, Base64.UrlSafe, Base64.Mime).foreach {
+      codec =>
+
+        val string = codec.encode(data)
+
+        codec.encode(data.toSeq) should be(string)
+        codec.encode(ByteBuffer.wrap(data)) should be(string)
+        new String(codec.encodeToBytes(data), "US-ASCII") should be(string)
+        codec.decodeToBytes(string).toSeq should be(data.toSeq)
+        codec.decodeToBytes(codec.encodeToBytes(data)).toSeq should be(data.toSeq)
+        codec.decode(string) should be(data.toSeq)
+
+        val buffer = codec.decodeToBuffer(codec.encodeToBuffer(ByteBuffer.wrap(data)))
+        val result = new Array[Byte](buffer.remaining)
+
+        buffer.get(result)
+        result.toSeq should be(data.toSeq)
+    }
+
+    Base64.decodeOpt("a") should be(None)
+  }
+
+  it should "be able to encode and decode streams" in {
+
+    List(Base64, Base64.UrlSafe, Base64.Mime, Hex).foreach {
+      codec =>
+
+        val target = new ByteArrayOutputStream()
+        val out = codec.encodeTo(target)
+
+        data.grouped(33).foreach(x => out.write(x))
+        out.close()
+
+        new String(target.toByteArray, "US-ASCII") should be(codec.encode(data))
+
+        val in = codec.wrap(new ByteArrayInputStream(target.toByteArray))
+        val result = new ByteArrayOutputStream()
+        val buffer = new Array[Byte](100)
+
+        Iterator.continually(in.read(buffer)).takeWhile(_ != -1).foreach(x => result.write(buffer, 0, x))
+
+        result.toByteArray.toSeq should be(data.toSeq)
+    }
+  }
+}
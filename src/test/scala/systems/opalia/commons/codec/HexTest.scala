@@ -1,5 +1,7 @@
 package systems.opalia.commons.codec
 
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, IOException}
+import java.nio.{ByteBuffer, CharBuffer}
 import org.scalatest.flatspec._
 import org.scalatest.matchers.should._
 
@@ -43,4 +45,57 @@ class HexTest
   it should "be unable to read a string which is not a valid hex bubble" in {
     Hex.decodeOpt("bb6a75737420616e6f746865722074657374ax").map(_.toSeq) should be(None)
   }
+
+  it should "be able to encode and decode arrays and buffers" in {
+
+    val data = (0 until 256).map(_.toByte).toArray
+    val string = Hex.encode(data)
+
+    string should be(data.map("%02x" format _).mkString)
+    Hex.encode(data, 250, 6) should be("fafbfcfdfeff")
+    Hex.decodeToBytes(string.toUpperCase).toSeq should be(data.toSeq)
+
+    val chars = CharBuffer.allocate(string.length)
+
+    Hex.encode(ByteBuffer.wrap(data), chars)
+    chars.flip()
+    chars.toString should be(string)
+
+    val bytes = ByteBuffer.allocateDirect(data.length)
+
+    Hex.decode(chars, bytes)
+    bytes.flip()
+    Hex.encode(bytes) should be(string)
+
+    an[IllegalArgumentException] should be thrownBy Hex.decodeToBytes("abc")
+    an[IllegalArgumentException] should be thrownBy Hex.decodeToBytes("ax")
+    an[IllegalArgumentException] should be thrownBy Hex.encode(ByteBuffer.wrap(data), CharBuffer.allocate(10))
+  }
+
+  it should "be able to encode and decode streams" in {
+
+    val data = Array.tabulate(100000)(x => (x * 31).toByte)
+    val target = new ByteArrayOutputStream()
+    val out = new HexEncodingOutputStream(target, 1000)
+
+    out.write(data, 0, 50000)
+    data.drop(50000).take(10).foreach(x => out.write(x))
+    out.write(data, 50010, data.length - 50010)
+    out.close()
+
+    new String(target.toByteArray, "US-ASCII") should be(Hex.encode(data))
+
+    val in = new HexDecodingInputStream(new ByteArrayInputStream(target.toByteArray), 333)
+    val result = new ByteArrayOutputStream()
+    val buffer = new Array[Byte](777)
+
+    result.write(in.read())
+
+    Iterator.continually(in.read(buffer)).takeWhile(_ != -1).foreach(x => result.write(buffer, 0, x))
+
+    result.toByteArray.toSeq should be(data.toSeq)
+
+    an[IOException] should be thrownBy new HexDecodingInputStream(new ByteArrayInputStream("abc".getBytes)).read(buffer)
+    an[IOException] should be thrownBy new HexDecodingInputStream(new ByteArrayInputStream("zz".getBytes)).read()
+  }
 }
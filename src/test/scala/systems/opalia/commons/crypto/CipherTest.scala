@@ -1,7 +1,7 @@
 package systems.opalia.commons.crypto
 
 import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
-import javax.crypto.{AEADBadTagException, BadPaddingException}
+import javax.crypto.{AEADBadTagException, BadPaddingException, Cipher => JCipher}
 import org.scalatest.flatspec._
 import org.scalatest.matchers.should._
 import scala.io.Source
@@ -99,4 +99,81 @@ class CipherTest
         new String(messageOut.toByteArray, Renderer.appDefaultCharset) should be(message)
     }
   }
+
+  it should "encrypt/decrypt using derived session keys" in {
+
+    configs.foreach {
+      config =>
+
+        val message = "this is a secret message"
+
+        val legacy = Cipher(config, "password")
+        val cipher1 = Cipher(config, "password", Cipher.KeyDerivation.Session())
+        val cipher2 = Cipher(config, "password", Cipher.KeyDerivation.Session(cacheSize = 1))
+        val cipher3 = Cipher(config, "other password", Cipher.KeyDerivation.Session())
+
+        val encrypted = cipher1.encrypt(message)
+
+        encrypted.take(4) should be(Seq(0x4F, 0x43, 0x45, 0x01).map(_.toByte))
+
+        new String(cipher1.decrypt(encrypted).toArray, Renderer.appDefaultCharset) should be(message)
+        new String(cipher2.decrypt(encrypted).toArray, Renderer.appDefaultCharset) should be(message)
+        new String(cipher2.decrypt(cipher1.encrypt(message)).toArray, Renderer.appDefaultCharset) should be(message)
+        new String(cipher1.decrypt(legacy.encrypt(message)).toArray, Renderer.appDefaultCharset) should be(message)
+
+        cipher1.encrypt(message) should not be cipher1.encrypt(message)
+
+        if (config.supportAEAD) {
+
+          an[AEADBadTagException] should be thrownBy cipher3.decrypt(encrypted)
+
+          (0 until encrypted.length by 7).foreach {
+            position =>
+
+              val corrupted = encrypted.updated(position, (encrypted(position) + 1).toByte)
+
+              an[AEADBadTagException] should be thrownBy cipher1.decrypt(corrupted)
+          }
+        }
+
+        val messageOut = new ByteArrayOutputStream()
+        val decryptOut = cipher2.decrypt(messageOut)
+        val encryptOut = cipher1.encrypt(decryptOut)
+
+        encryptOut.write(message.getBytes(Renderer.appDefaultCharset))
+        encryptOut.close()
+
+        val messageIn = new ByteArrayInputStream(message.getBytes(Renderer.appDefaultCharset))
+        val decryptIn = cipher2.decrypt(cipher1.encrypt(messageIn))
+
+        new String(messageOut.toByteArray, Renderer.appDefaultCharset) should be(message)
+        Source.fromInputStream(decryptIn, Renderer.appDefaultCharset.name).mkString should be(message)
+    }
+  }
+
+  it should "decrypt per-message ciphertexts with a salt starting like a session header" in {
+
+    configs.filter(_.supportAEAD).foreach {
+      config =>
+
+        val message = "this is a secret message"
+
+        val cipher = Cipher(config, "password", Cipher.KeyDerivation.Session())
+
+        val salt = Array[Byte](0x4F, 0x43, 0x45, 0x01) ++ Array.fill[Byte](config.keySaltLength - 4)(7)
+        val iv = Array.fill[Byte](config.ivLength)(3)
+        val header = salt ++ iv
+        val handler = Provider.BouncyCastle.createCipher(config.transformation)
+
+        handler.init(JCipher.ENCRYPT_MODE, config.createSecretKeySpec("password", salt), config.createAlgorithmParameterSpec(iv))
+        handler.updateAAD(header)
+
+        val encrypted = header ++ handler.doFinal(message.getBytes(Renderer.appDefaultCharset))
+
+        new String(cipher.decrypt(encrypted).toArray, Renderer.appDefaultCharset) should be(message)
+        new String(Cipher(config, "password").decrypt(encrypted).toArray, Renderer.appDefaultCharset) should be(message)
+
+        an[AEADBadTagException] should be thrownBy cipher.decrypt(encrypted.updated(header.length, (encrypted(header.length) ^ 1).toByte))
+    }
+  }
 }
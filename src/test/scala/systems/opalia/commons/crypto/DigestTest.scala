@@ -1,5 +1,7 @@
 package systems.opalia.commons.crypto
 
+import java.io.ByteArrayInputStream
+import java.nio.ByteBuffer
 import org.scalatest.flatspec._
 import org.scalatest.matchers.should._
 
@@ -59,4 +61,44 @@ class DigestTest
       be("16b03a48027ed92eb632371a42930ef7cab9827a72d6d7d55004612890ab2310" +
         "56e6e4fc95c80f2c88d2c2881ba590098abddcbec89e0a0e8f80e21fa3f481b9")
   }
+
+  it should "produce the same results with all providers" in {
+
+    val data = "this is a test".getBytes("UTF-8")
+    val secret = "secret key".getBytes("UTF-8").toIndexedSeq
+
+    Digest.Algorithm.values.foreach {
+      algorithm =>
+
+        val digests = Provider.values.map(provider => Digest(algorithm, provider))
+        val macs = Provider.values.map(provider => Digest(algorithm, secret, provider))
+
+        digests.map(_.sign(data.toIndexedSeq)).distinct.size shouldBe 1
+        macs.map(_.sign(data.toIndexedSeq)).distinct.size shouldBe 1
+        macs.head.sign(data.toIndexedSeq) shouldBe Digest(algorithm, "secret key").sign("this is a test")
+    }
+  }
+
+  it should "sign arrays, buffers and streams with the same result" in {
+
+    val digest = Digest(Digest.Algorithm.SHA256, "secret key")
+    val data = "xxthis is a testxx".getBytes("UTF-8")
+    val expected = digest.sign("this is a test")
+    val stream = digest.sign(new ByteArrayInputStream(data, 2, 14))
+
+    stream.readAll()
+
+    digest.sign(data, 2, 14) shouldBe expected
+    digest.sign(ByteBuffer.wrap(data, 2, 14)) shouldBe expected
+    (stream.doFinal(): IndexedSeq[Byte]) shouldBe expected
+    digest.sign(ByteBuffer.wrap(data, 2, 14).asReadOnlyBuffer()) shouldBe expected
+  }
+
+  it should "sign concurrently with pooled engines" in {
+
+    val digest = Digest(Digest.Algorithm.SHA1)
+    val expected = digest.sign("this is a test")
+
+    (1 to 1000).par.map(_ => digest.sign("this is a test")).distinct.toList shouldBe List(expected)
+  }
 }
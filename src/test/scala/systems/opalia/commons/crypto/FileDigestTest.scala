@@ -0,0 +1,127 @@
+package systems.opalia.commons.crypto
+
+import java.io.ByteArrayInputStream
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.concurrent.ForkJoinPool
+import java.util.Random
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class FileDigestTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  def withFile(bytes: Array[Byte])(block: java.nio.file.Path => Unit): Unit = {
+
+    val path = Files.createTempFile("file-digest", ".bin")
+
+    try {
+
+      Files.write(path, bytes)
+      block(path)
+
+    } finally {
+
+      Files.delete(path)
+    }
+  }
+
+  def randomBytes(length: Int): Array[Byte] = {
+
+    val bytes = new Array[Byte](length)
+
+    new Random(length).nextBytes(bytes)
+
+    bytes
+  }
+
+  def sha256(parts: Array[Byte]*): Array[Byte] = {
+
+    val handler = MessageDigest.getInstance("SHA-256")
+
+    parts.foreach(part => handler.update(part))
+    handler.digest()
+  }
+
+  it should "compute multiple digests in a single pass" in {
+
+    List(0, 1, 3000000).foreach {
+      length =>
+
+        val bytes = randomBytes(length)
+
+        withFile(bytes) {
+          path =>
+
+            val expected =
+              Digest.Algorithm.values.map(algorithm => algorithm -> Digest(algorithm).sign(bytes.toIndexedSeq)).toMap
+
+            FileDigest.sign(path, Digest.Algorithm.values) shouldBe expected
+            FileDigest.sign(new ByteArrayInputStream(bytes), Digest.Algorithm.values) shouldBe expected
+        }
+    }
+  }
+
+  it should "reject invalid algorithm lists" in {
+
+    an[IllegalArgumentException] should be thrownBy
+      FileDigest.sign(new ByteArrayInputStream(Array[Byte]()), Nil)
+
+    an[IllegalArgumentException] should be thrownBy
+      FileDigest.sign(new ByteArrayInputStream(Array[Byte]()), List(Digest.Algorithm.MD5, Digest.Algorithm.MD5))
+  }
+
+  it should "compute tree hashes with correct result" in {
+
+    val bytes = randomBytes(2500)
+    val leaf = (from: Int, to: Int) => sha256(Array[Byte](0), bytes.slice(from, to))
+    val node = (left: Array[Byte], right: Array[Byte]) => sha256(Array[Byte](1), left, right)
+
+    withFile(bytes) {
+      path =>
+
+        val pool = ForkJoinPool.commonPool()
+
+        FileDigest.signTree(path, Digest.Algorithm.SHA256, 4096, pool) shouldBe
+          leaf(0, 2500).toIndexedSeq
+
+        FileDigest.signTree(path, Digest.Algorithm.SHA256, 1000, pool) shouldBe
+          node(node(leaf(0, 1000), leaf(1000, 2000)), leaf(2000, 2500)).toIndexedSeq
+
+        FileDigest.signTree(path, Digest.Algorithm.SHA256, 16 << 20, pool) shouldBe
+          leaf(0, 2500).toIndexedSeq
+    }
+
+    withFile(Array[Byte]()) {
+      path =>
+
+        FileDigest.signTree(path, Digest.Algorithm.SHA256) shouldBe sha256(Array[Byte](0)).toIndexedSeq
+    }
+  }
+
+  it should "compute the same tree hash sequentially and in parallel" in {
+
+    val bytes = randomBytes(20000000)
+
+    withFile(bytes) {
+      path =>
+
+        val pool = new ForkJoinPool(1)
+
+        try {
+
+          val parallel = FileDigest.signTree(path, Digest.Algorithm.SHA256, 1 << 16, ForkJoinPool.commonPool())
+          val sequential = FileDigest.signTree(path, Digest.Algorithm.SHA256, 1 << 16, pool)
+
+          parallel shouldBe sequential
+          FileDigest.signTree(path, Digest.Algorithm.SHA256, 1 << 20, ForkJoinPool.commonPool()) should not be parallel
+
+        } finally {
+
+          pool.shutdown()
+        }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package systems.opalia.commons.crypto
+
+import java.nio.ByteBuffer
+import java.nio.file.{Files, Path}
+import java.util.Random
+import javax.crypto.AEADBadTagException
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class SegmentedCipherTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  val configs = List(CipherSettings.AES_GCM, CipherSettings.AES_CTR)
+
+  def withDirectory(block: Path => Unit): Unit = {
+
+    val directory = Files.createTempDirectory("segmented-cipher")
+
+    try {
+
+      block(directory)
+
+    } finally {
+
+      Files.list(directory).forEach(path => Files.delete(path))
+      Files.delete(directory)
+    }
+  }
+
+  def randomBytes(length: Int): Array[Byte] = {
+
+    val bytes = new Array[Byte](length)
+
+    new Random(length).nextBytes(bytes)
+
+    bytes
+  }
+
+  it should "encrypt/decrypt files of different sizes" in {
+
+    configs.foreach {
+      config =>
+
+        val cipher = SegmentedCipher(config, "password", 1024)
+
+        withDirectory {
+          directory =>
+
+            List(0, 1, 1023, 1024, 1025, 100000).foreach {
+              length =>
+
+                val plain = directory.resolve("plain")
+                val encrypted = directory.resolve("encrypted")
+                val decrypted = directory.resolve("decrypted")
+                val bytes = randomBytes(length)
+
+                Files.write(plain, bytes)
+
+                cipher.encrypt(plain, encrypted)
+                cipher.decrypt(encrypted, decrypted)
+
+                Files.size(encrypted) shouldBe cipher.encryptedSize(length)
+                cipher.plaintextSize(Files.size(encrypted)) shouldBe length
+                Files.readAllBytes(decrypted) shouldBe bytes
+            }
+        }
+    }
+  }
+
+  it should "decrypt files with another instance sharing the secret" in {
+
+    configs.foreach {
+      config =>
+
+        withDirectory {
+          directory =>
+
+            val plain = directory.resolve("plain")
+            val encrypted = directory.resolve("encrypted")
+            val decrypted = directory.resolve("decrypted")
+            val bytes = randomBytes(5000)
+
+            Files.write(plain, bytes)
+
+            SegmentedCipher(config, "password", 256).encrypt(plain, encrypted)
+            SegmentedCipher(config, "password", 4096).decrypt(encrypted, decrypted)
+
+            Files.readAllBytes(decrypted) shouldBe bytes
+        }
+    }
+  }
+
+  it should "be able to read arbitrary ranges from a seekable channel" in {
+
+    configs.foreach {
+      config =>
+
+        val cipher = SegmentedCipher(config, "password", 100)
+
+        withDirectory {
+          directory =>
+
+            val plain = directory.resolve("plain")
+            val encrypted = directory.resolve("encrypted")
+            val bytes = randomBytes(10050)
+
+            Files.write(plain, bytes)
+            cipher.encrypt(plain, encrypted)
+
+            val channel = cipher.open(encrypted)
+
+            try {
+
+              channel.size shouldBe bytes.length
+
+              List((0, 10), (95, 10), (250, 1000), (9990, 60), (10049, 1)).foreach {
+                case (offset, length) =>
+
+                  val buffer = ByteBuffer.allocate(length)
+
+                  channel.position(offset)
+
+                  while (buffer.hasRemaining)
+                    channel.read(buffer)
+
+                  buffer.array shouldBe bytes.slice(offset, offset + length)
+                  channel.position shouldBe offset + length
+              }
+
+              channel.read(ByteBuffer.allocate(1)) shouldBe -1
+
+            } finally {
+
+              channel.close()
+            }
+        }
+    }
+  }
+
+  it should "detect corrupted and truncated files" in {
+
+    configs.foreach {
+      config =>
+
+        val cipher = SegmentedCipher(config, "password", 100)
+
+        withDirectory {
+          directory =>
+
+            val plain = directory.resolve("plain")
+            val encrypted = directory.resolve("encrypted")
+            val corrupted = directory.resolve("corrupted")
+            val decrypted = directory.resolve("decrypted")
+
+            Files.write(plain, randomBytes(1000))
+            cipher.encrypt(plain, encrypted)
+
+            val bytes = Files.readAllBytes(encrypted)
+            val position = bytes.length / 2
+
+            Files.write(corrupted, bytes.updated(position, (bytes(position) + 1).toByte))
+
+            an[AEADBadTagException] should be thrownBy cipher.decrypt(corrupted, decrypted)
+
+            Files.write(corrupted, bytes.take(bytes.length - (100 + 16)))
+
+            an[AEADBadTagException] should be thrownBy cipher.decrypt(corrupted, decrypted)
+
+            val channel = cipher.open(corrupted)
+
+            try {
+
+              an[AEADBadTagException] should be thrownBy channel.read(ByteBuffer.allocate(1000))
+
+            } finally {
+
+              channel.close()
+            }
+        }
+    }
+  }
+
+  it should "only accept supported settings" in {
+
+    an[IllegalArgumentException] should be thrownBy SegmentedCipher(CipherSettings.AES_CBC, "password")
+    an[IllegalArgumentException] should be thrownBy SegmentedCipher(CipherSettings.AES_GCM, "password", 0)
+  }
+}
@@ -0,0 +1,31 @@
+package systems.opalia.commons.identifier
+
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class IdMapTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  it should "be able to put, get and remove values" in {
+
+    val ids = (1 to 10000).map(_ => UniversallyUniqueId.getNew)
+    val map = new IdMap[UniversallyUniqueId, Int](UniversallyUniqueId)
+
+    ids.zipWithIndex.foreach(x => map.put(x._1, x._2) shouldBe None)
+
+    map.size should be(ids.size)
+    ids.zipWithIndex.forall(x => map.get(x._1).contains(x._2)) shouldBe true
+
+    map.put(ids.head, -1) shouldBe Some(0)
+    map(ids.head) should be(-1)
+
+    ids.take(5000).foreach(x => map.remove(x).isDefined shouldBe true)
+
+    map.size should be(5000)
+    map.get(ids.head) shouldBe None
+    map.getOrElse(ids.head, 42) should be(42)
+    map.toMap should be(ids.zipWithIndex.drop(5000).toMap)
+  }
+}
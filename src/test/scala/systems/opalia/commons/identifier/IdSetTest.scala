@@ -0,0 +1,49 @@
+package systems.opalia.commons.identifier
+
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class IdSetTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  it should "be able to add, find and remove identifiers" in {
+
+    val ids = ObjectId.getNew(10000)
+    val set = new IdSet(ObjectId)
+
+    ids.foreach(x => set.add(x) shouldBe true)
+    ids.foreach(x => set.add(x) shouldBe false)
+
+    set.size should be(ids.size)
+    ids.forall(x => set.contains(x)) shouldBe true
+    set.toSet should be(ids.toSet)
+
+    ids.take(5000).foreach(x => set.remove(x) shouldBe true)
+    ids.take(5000).foreach(x => set.remove(x) shouldBe false)
+
+    set.size should be(5000)
+    ids.take(5000).exists(x => set.contains(x)) shouldBe false
+    ids.drop(5000).forall(x => set.contains(x)) shouldBe true
+
+    set.clear()
+
+    set.isEmpty shouldBe true
+    set.iterator.hasNext shouldBe false
+  }
+
+  it should "handle colliding keys" in {
+
+    val set = new IdSet(UniversallyUniqueId, 0)
+    val ids = (0L until 1000L).map(x => UniversallyUniqueId.getFrom(x, 0L)) ++ (0L until 1000L).map(x => UniversallyUniqueId.getFrom(0L, x))
+
+    ids.foreach(x => set.add(x))
+
+    set.size should be(ids.distinct.size)
+
+    ids.filter(_.mostSignificantBits % 2 == 0).foreach(x => set.remove(x))
+
+    ids.forall(x => set.contains(x) == (x.mostSignificantBits % 2 != 0)) shouldBe true
+  }
+}
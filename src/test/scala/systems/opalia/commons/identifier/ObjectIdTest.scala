@@ -1,6 +1,6 @@
 package systems.opalia.commons.identifier
 
-import java.nio.ByteBuffer
+import java.nio.{ByteBuffer, ByteOrder}
 import org.scalatest.flatspec._
 import org.scalatest.matchers.should._
 import systems.opalia.interfaces.rendering.Renderer
@@ -157,4 +157,48 @@ class ObjectIdTest
     ObjectId.getFromOpt(stringA).map(_.toString) shouldBe Some(stringA)
     ObjectId.getFromOpt(stringB) shouldBe None
   }
+
+  it should "be able to generate identifiers in bulk" in {
+
+    val bulk = ObjectId.getNew(5000).toList
+
+    bulk.distinct.size should be(5000)
+    (bulk ++ list).distinct.size should be(bulk.size + list.size)
+    bulk.forall(x => (0 until 4).forall(i => x(i) == list.head(i))) shouldBe true
+
+    val bytes = new Array[Byte](ObjectId.length * 3 + 2)
+
+    ObjectId.fill(bytes, 2, 3)
+
+    bytes.take(2).toSeq shouldBe Seq(0, 0)
+    bytes.drop(2).grouped(ObjectId.length).map(x => ObjectId.getFrom(x.toSeq)).toList.distinct.size should be(3)
+
+    an[IllegalArgumentException] should be thrownBy ObjectId.fill(bytes, 3, 3)
+    an[IllegalArgumentException] should be thrownBy ObjectId.getNew(-1)
+    an[IllegalArgumentException] should be thrownBy ObjectId.getNew(Int.MaxValue / 8)
+  }
+
+  it should "be able to write to and read from buffers" in {
+
+    val id = ObjectId.getFrom("9bdf526da36f09a1b1594d2cf7e6108e")
+
+    Seq(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN).foreach {
+      order =>
+
+        val buffer = id.writeTo(ByteBuffer.allocate(ObjectId.length).order(order))
+
+        buffer.array.toSeq should be((0 until ObjectId.length).map(id(_)))
+        buffer.flip()
+        ObjectId.readFrom(buffer) should be(id)
+    }
+  }
+
+  it should "be ordered by its bytes" in {
+
+    val sorted = list.sorted.map(_.toString)
+
+    sorted should be(list.map(_.toString).sorted)
+    list.head.compare(list.head) should be(0)
+    list.map(_.hashCode).distinct.size should be > 990
+  }
 }
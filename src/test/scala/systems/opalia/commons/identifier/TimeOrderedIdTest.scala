@@ -0,0 +1,65 @@
+package systems.opalia.commons.identifier
+
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+import scala.collection.JavaConverters._
+
+
+class TimeOrderedIdTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  it should "be strictly increasing under concurrent use" in {
+
+    val executor = Executors.newFixedThreadPool(8)
+
+    val tasks =
+      (1 to 8).map {
+        _ =>
+
+          new Callable[IndexedSeq[UniversallyUniqueId]] {
+
+            def call(): IndexedSeq[UniversallyUniqueId] =
+              (1 to 10000).map(_ => TimeOrderedId.getNew) ++ TimeOrderedId.getNew(1000)
+          }
+      }
+
+    val results = executor.invokeAll(tasks.asJava).asScala.map(_.get).toList
+
+    executor.shutdown()
+    executor.awaitTermination(10, TimeUnit.SECONDS)
+
+    results.foreach(x => x.sliding(2).forall(pair => pair.head < pair.last) shouldBe true)
+    results.flatten.distinct.size should be(8 * 11000)
+  }
+
+  it should "sort by creation time as bytes and as strings" in {
+
+    val list = (1 to 1000).map(_ => TimeOrderedId.getNew).toList
+
+    list.sorted should be(list)
+    list.map(_.toString).sorted should be(list.map(_.toString))
+  }
+
+  it should "embed the timestamp" in {
+
+    val before = System.currentTimeMillis()
+    val id = TimeOrderedId.getNew
+    val after = System.currentTimeMillis()
+
+    TimeOrderedId.isTimeOrdered(id) shouldBe true
+    TimeOrderedId.isTimeOrdered(UniversallyUniqueId.getNew) shouldBe false
+    (id(6) >> 4) shouldBe 7
+
+    TimeOrderedId.timestampOf(id) should be >= before
+    TimeOrderedId.timestampOf(id) should be <= after + 100
+    TimeOrderedId.instantOf(id).toEpochMilli should be(TimeOrderedId.timestampOf(id))
+
+    TimeOrderedId.lowerBound(TimeOrderedId.timestampOf(id)) should be <= id
+    TimeOrderedId.upperBound(TimeOrderedId.timestampOf(id)) should be >= id
+    TimeOrderedId.upperBound(before - 1) should be < id
+
+    an[IllegalArgumentException] should be thrownBy TimeOrderedId.timestampOf(UniversallyUniqueId.getNew)
+  }
+}
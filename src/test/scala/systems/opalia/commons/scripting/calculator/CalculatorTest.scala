@@ -13,12 +13,21 @@ class CalculatorTest
   val scriptEngine: ScriptEngine =
     (new JsScriptService()).newScriptEngine()
 
-  it should "deal with simple declarations" in {
+  def withCalculator(f: (Calculator) => Unit): Unit = {
 
     scriptEngine.withSession {
       session =>
 
-        val calc = new Calculator(session)
+        f(new Calculator(session))
+    }
+
+    f(new Calculator())
+  }
+
+  it should "deal with simple declarations" in {
+
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -41,10 +50,8 @@ class CalculatorTest
 
   it should "handle operator priority correctly" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -64,10 +71,8 @@ class CalculatorTest
 
   it should "support single line comments" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -83,10 +88,8 @@ class CalculatorTest
 
   it should "support multiple declarations per line" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -105,10 +108,8 @@ class CalculatorTest
 
   it should "support comparison operators" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -133,10 +134,8 @@ class CalculatorTest
 
   it should "be free from name collisions" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -160,10 +159,8 @@ class CalculatorTest
 
   it should "support higher order functions" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -185,10 +182,8 @@ class CalculatorTest
 
   it should "handle signatures correctly" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -235,10 +230,8 @@ class CalculatorTest
 
   it should "support recursion" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -261,10 +254,8 @@ class CalculatorTest
 
   it should "support lambda expressions" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -301,10 +292,8 @@ class CalculatorTest
 
   it should "be possible to handle interim results with lambda expressions" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -322,10 +311,8 @@ class CalculatorTest
 
   it should "be able to deal with real world problems" in {
 
-    scriptEngine.withSession {
-      session =>
-
-        val calc = new Calculator(session)
+    withCalculator {
+      calc =>
 
         calc.bindDefaultFunctions()
 
@@ -488,4 +475,153 @@ class CalculatorTest
         )).value() shouldBe 0d
     }
   }
+
+  it should "evaluate functions over columns of values" in {
+
+    withCalculator {
+      calc =>
+
+        calc.bindDefaultFunctions()
+
+        calc.bindFunctions(
+          """
+            |foo a b : if (a < b) (a * b) (hyp a b)
+            |
+            |hyp a b : sqrt (a ^ 2 + b ^ 2)
+            |
+          """.stripMargin)
+
+        val as = Array(1d, 6d, 3d, 8d)
+        val bs = Array(2d, 4d, 4d, 6d)
+        val output = new Array[Double](4)
+
+        calc.evaluate("foo", Array(as, bs), output)
+
+        output shouldBe Array(2d, math.sqrt(52d), 12d, 10d)
+
+        an[CalculatorRuntimeException] should be thrownBy calc.evaluate("foo", Array(as), output)
+        an[IllegalArgumentException] should be thrownBy calc.evaluate("foo", Array(as, Array(1d)), output)
+    }
+
+    val calc = new Calculator()
+
+    calc.bindDefaultFunctions()
+    calc.bindFunctions("foo a b : a * b + 1")
+
+    val size = 100000
+    val as = Array.tabulate(size)(_.toDouble)
+    val bs = Array.tabulate(size)(i => (i % 7).toDouble)
+    val output = new Array[Double](size)
+
+    calc.evaluate("foo", Array(as, bs), output, parallel = true)
+
+    output shouldBe Array.tabulate(size)(i => as(i) * bs(i) + 1)
+  }
+
+  it should "serve concurrent evaluations and bindings" in {
+
+    val calc = new Calculator()
+
+    calc.bindDefaultFunctions()
+    calc.bindFunctions("foo a b : a * b + 1")
+
+    val results =
+      (0 until 64).par.map {
+        i =>
+
+          if (i % 8 == 0)
+            calc.bindFunctions(s"bar$i a : a + $i")
+
+          calc.eval(s"foo $i 2").value()
+      }.toList
+
+    results shouldBe (0 until 64).map(i => i * 2 + 1d).toList
+
+    calc.eval("bar8 1").value() shouldBe 9d
+    calc.functionRegistry.findOperator("+", 2).map(_.descriptor) shouldBe Some("add")
+    calc.functionRegistry.findOperator("+", 1).map(_.descriptor) shouldBe Some("pos")
+  }
+
+  it should "optimize function bodies without changing results" in {
+
+    withCalculator {
+      calc =>
+
+        calc.bindDefaultFunctions()
+
+        calc.bindFunctions(
+          """
+            |foo a : a * (2 + 3) + π
+            |
+            |hyp a b : sqrt (a ^ 2 + b ^ 2)
+            |
+            |dist x : hyp x (1 + 2)
+            |
+            |fib n : if (n < 2) n (fib (n - 1) + fib (n - 2))
+            |
+            |sq x : (x * x + 1) * (x * x + 1) + x * x + 1
+            |
+          """.stripMargin)
+
+        calc.eval("foo 2").value() shouldBe 10d + math.Pi
+        calc.eval("dist 4").value() shouldBe 5d
+
+        val statistics = calc.functionRegistry.statistics("foo")
+
+        statistics.nodesAfter should be < statistics.nodesBefore
+
+        calc.memoize("fib")
+        calc.memoize("sq")
+
+        calc.eval("fib 60").value() shouldBe 1548008755920d
+        calc.eval("sq 3").value() shouldBe 110d
+
+        val shared = calc.functionRegistry.statistics("sq")
+
+        shared.nodesAfter should be < shared.nodesBefore
+
+        an[CalculatorRuntimeException] should be thrownBy calc.memoize("sq")
+        an[CalculatorRuntimeException] should be thrownBy calc.memoize("unknown")
+    }
+  }
+
+  it should "reuse compiled sources until their dependencies change" in {
+
+    withCalculator {
+      calc =>
+
+        calc.bindDefaultFunctions()
+
+        calc.bindFunctions(
+          """
+            |square x : x * x
+            |
+          """.stripMargin)
+
+        val signature = FunctionDef.Signature("", List(FunctionDef.Signature("y", Nil, None)), None)
+        val first = calc.bindFunction("square y + 1", signature)
+
+        calc.bindFunction("square y + 1", signature) should be theSameInstanceAs first
+        calc.cacheStatistics.hits shouldBe 1
+
+        calc.memoize("square")
+
+        val second = calc.bindFunction("square y + 1", signature)
+
+        second should not be theSameInstanceAs(first)
+        second.invoke(Vector(FunctionApp.wrap(FunctionApp.fromDouble(3)))).value() shouldBe 10d
+
+        calc.eval("square 4").value() shouldBe 16d
+        calc.eval("square 4").value() shouldBe 16d
+
+        calc.bindFunctions(
+          """
+            |{square : ‰ 10}
+            |
+          """.stripMargin)
+
+        calc.bindFunction("square y + 1", signature) should not be theSameInstanceAs(second)
+        calc.cacheStatistics.hits shouldBe 2
+    }
+  }
 }
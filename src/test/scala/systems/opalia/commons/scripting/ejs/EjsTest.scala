@@ -2,6 +2,7 @@ package systems.opalia.commons.scripting.ejs
 
 import java.io.IOException
 import java.nio.file.{Path, Paths}
+import java.util.concurrent.atomic.AtomicInteger
 import org.scalatest.flatspec._
 import org.scalatest.matchers.should._
 import scala.collection.immutable.ListMap
@@ -9,7 +10,7 @@ import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.duration._
 import scala.concurrent.{Await, ExecutionContext, Future}
 import scala.io.Source
-import systems.opalia.commons.scripting.js.JsScriptService
+import systems.opalia.commons.scripting.js.{JsContextPool, JsScriptService}
 import systems.opalia.interfaces.json.JsonAst
 import systems.opalia.interfaces.scripting._
 
@@ -125,8 +126,8 @@ class EjsTest
       "text" -> JsonAst.JsonString("Hello from EJS!")
     ))
 
-  val ejs =
-    Ejs(scriptEngine, new EjsConfiguration {
+  val configuration =
+    new EjsConfiguration {
 
       val openWith = EjsDefaultConfiguration.openWith
       val closeWith = EjsDefaultConfiguration.closeWith
@@ -135,7 +136,10 @@ class EjsTest
                  (implicit executor: ExecutionContext): Future[Source] =
         Future.successful(files.get(path).map(Source.fromString)
           .getOrElse(throw new IOException(s"Cannot resolve path $path.")))
-    })
+    }
+
+  val ejs =
+    Ejs(scriptEngine, configuration)
 
   it should "generate the same result for compiling and direct rendering" in {
 
@@ -223,4 +227,117 @@ class EjsTest
 
     thrownCompiling.getMessage should be(message)
   }
+
+  it should "serve documents from the cache until an included file changes" in {
+
+    val resolved = new AtomicInteger()
+
+    @volatile
+    var documents = files
+
+    @volatile
+    var versions = Map.empty[Path, Long]
+
+    val cachedEjs =
+      Ejs(scriptEngine, new EjsConfiguration {
+
+        val openWith = EjsDefaultConfiguration.openWith
+        val closeWith = EjsDefaultConfiguration.closeWith
+
+        override val checkInterval = Duration.Zero
+
+        def resolve(path: Path)
+                   (implicit executor: ExecutionContext): Future[Source] = {
+
+          resolved.incrementAndGet()
+
+          Future.successful(Source.fromString(documents(path)))
+        }
+
+        override def lastModified(path: Path): Option[Long] =
+          Some(versions.getOrElse(path, 0L))
+      })
+
+    val path = Paths.get("/html/content/success.html.ejs")
+
+    val results =
+      Await.result(Future.sequence((1 to 8).map(_ => cachedEjs.render(path, data))), Duration.Inf)
+
+    results.distinct.size shouldBe 1
+    resolved.get shouldBe 5
+
+    Await.result(cachedEjs.compile(path).flatMap(_.render(data)), Duration.Inf) shouldBe results.head
+    resolved.get shouldBe 5
+
+    documents += Paths.get("/html/inc/footer.html.ejs") ->
+      """
+        |<% macros.footer = function() { -%>
+        |    <footer>changed</footer>
+        |<% } -%>
+      """.stripMargin.trim
+
+    versions += Paths.get("/html/inc/footer.html.ejs") -> 1L
+
+    Await.result(cachedEjs.render(path, data), Duration.Inf) should include("<footer>changed</footer>")
+    resolved.get shouldBe 10
+
+    cachedEjs.cacheStatistics.hits should be > 0L
+  }
+
+  it should "report errors correctly within reused pooled contexts" in {
+
+    val pooledEjs =
+      Ejs((new JsScriptService()).newScriptEngine(poolSettings = Some(JsContextPool.Settings(maxSize = 1))), configuration)
+
+    val success = Await.result(ejs.render(Paths.get("/html/content/success.html.ejs"), data), Duration.Inf)
+
+    for (_ <- 1 to 2) {
+
+      Await.result(pooledEjs.render(Paths.get("/html/content/success.html.ejs"), data), Duration.Inf) should be(success)
+
+      val thrownSyntax = intercept[ScriptException] {
+
+        Await.result(pooledEjs.render(Paths.get("/html/content/failure1.html.ejs"), data), Duration.Inf)
+      }
+
+      thrownSyntax.getMessage should be("SyntaxError: Expected an operand but found }")
+
+      Await.result(pooledEjs.render(Paths.get("/html/content/success.html.ejs"), data), Duration.Inf) should be(success)
+
+      val thrownExecution = intercept[ScriptException] {
+
+        Await.result(pooledEjs.render(Paths.get("/html/content/failure3.html.ejs"), data), Duration.Inf)
+      }
+
+      thrownExecution.getMessage should be("TypeError: in /html/content/failure3.html.ejs" +
+        " on line 8: Cannot set property 'bla' of undefined")
+    }
+  }
+
+  it should "read documents again without known modification times" in {
+
+    val resolved = new AtomicInteger()
+
+    val uncachedEjs =
+      Ejs(scriptEngine, new EjsConfiguration {
+
+        val openWith = EjsDefaultConfiguration.openWith
+        val closeWith = EjsDefaultConfiguration.closeWith
+
+        def resolve(path: Path)
+                   (implicit executor: ExecutionContext): Future[Source] = {
+
+          resolved.incrementAndGet()
+
+          configuration.resolve(path)
+        }
+      })
+
+    val path = Paths.get("/html/content/success.html.ejs")
+
+    Await.result(uncachedEjs.render(path, data), Duration.Inf)
+    Await.result(uncachedEjs.render(path, data), Duration.Inf)
+
+    resolved.get shouldBe 10
+  }
 }
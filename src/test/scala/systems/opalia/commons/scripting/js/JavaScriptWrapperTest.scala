@@ -196,4 +196,82 @@ class JavaScriptWrapperTest
         e.getCause.asInstanceOf[PolyglotException].isCancelled shouldBe true
     }
   }
+
+  it should "reuse pooled contexts with reset global bindings" in {
+
+    val pooledEngine =
+      scriptService.newScriptEngine(poolSettings = Some(JsContextPool.Settings(maxSize = 2, maxUses = 3, prewarm = 1)))
+
+    val pool = pooledEngine.asInstanceOf[JsScriptEngine].contextPool.get
+
+    pool.statistics shouldBe JsContextPool.Statistics(size = 1, idle = 1, created = 1, evicted = 0)
+
+    for (_ <- 1 to 3) {
+
+      pooledEngine.withSession {
+        session =>
+
+          session.withContext {
+            context =>
+
+              context.bindings.hasMember("leaked") shouldBe false
+              context.eval("typeof obj").asString shouldBe "undefined"
+              context.eval("var obj = 42; leaked = 73;")
+          }
+      }
+    }
+
+    pool.statistics shouldBe JsContextPool.Statistics(size = 0, idle = 0, created = 1, evicted = 1)
+
+    a[ScriptException] should be thrownBy {
+
+      pooledEngine.withSession {
+        session =>
+
+          session.withContext {
+            context =>
+
+              context.eval("}")
+          }
+      }
+    }
+
+    pool.statistics shouldBe JsContextPool.Statistics(size = 0, idle = 0, created = 2, evicted = 2)
+
+    pool.close()
+  }
+
+  it should "evict pooled contexts with reassigned global bindings" in {
+
+    val pooledEngine =
+      scriptService.newScriptEngine(poolSettings = Some(JsContextPool.Settings(maxSize = 1)))
+
+    val pool = pooledEngine.asInstanceOf[JsScriptEngine].contextPool.get
+
+    pooledEngine.withSession {
+      session =>
+
+        session.withContext {
+          context =>
+
+            context.eval("parseInt = function () { return 0; };")
+        }
+    }
+
+    pool.statistics shouldBe JsContextPool.Statistics(size = 0, idle = 0, created = 1, evicted = 1)
+
+    pooledEngine.withSession {
+      session =>
+
+        session.withContext {
+          context =>
+
+            context.eval("parseInt('7')").asInt shouldBe 7
+        }
+    }
+
+    pool.statistics shouldBe JsContextPool.Statistics(size = 1, idle = 1, created = 2, evicted = 1)
+
+    pool.close()
+  }
 }
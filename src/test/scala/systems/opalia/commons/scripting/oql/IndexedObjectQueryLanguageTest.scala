@@ -0,0 +1,133 @@
+package systems.opalia.commons.scripting.oql
+
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class IndexedObjectQueryLanguageTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  class Values(val id: Int, val a: Any, val b: String)
+
+  def create(): IndexedObjectQueryLanguage =
+    new IndexedObjectQueryLanguage {
+
+      def checkRootKey(obj: AnyRef, key: String): Boolean =
+        obj match {
+
+          case x: Values if (x.id.toString == key) => true
+          case _ => false
+        }
+
+      def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+        None
+
+      def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+        (obj, segment) match {
+          case (x: Values, Ast.FieldSegment("a")) => Option(x.a)
+          case (x: Values, Ast.FieldSegment("b")) => Option(x.b)
+          case _ => None
+        }
+    }
+
+  def query(oql: ObjectQueryLanguage, clause: String): List[Int] =
+    oql
+      .doFilter()
+      .filter(clause)
+      .doPagination()
+      .doResolution()
+      .fetchResult()
+      .initials.map(_.asInstanceOf[Values].id)
+
+  it should "produce the same results with and without indexes" in {
+
+    val values = (0 until 1000).map(i => new Values(i, i % 100, s"name${i % 37}"))
+
+    val plain = create()
+    val indexed = create()
+
+    plain.insertAll(values)
+    indexed.insertAll(values)
+    indexed.createHashIndex("a")
+    indexed.createSortedIndex("a")
+    indexed.createSortedIndex("b")
+
+    val clauses =
+      List(
+        "a?eq(42)",
+        "a?eq(42.0)",
+        "a?lt(3)",
+        "a?le(3)",
+        "a?gt(97)",
+        "a?ge(97)",
+        "b?sw(name3)",
+        "b?ge(name35)",
+        "and(a?ge(50),b?eq(name1))",
+        "a?eq(7);b?sw(name7)",
+        "or(a?eq(1),a?eq(2))"
+      )
+
+    clauses.foreach {
+      clause =>
+
+        query(indexed, clause) shouldBe query(plain, clause)
+    }
+
+    indexed.explain("a?eq(42)") should startWith("hash index on a")
+    indexed.explain("and(a?gt(97),b?eq(name1))") should startWith("sorted index on a")
+    indexed.explain("or(a?eq(1),a?eq(2))") should startWith("scan")
+  }
+
+  it should "keep indexes up to date on insertion and removal" in {
+
+    val oql = create()
+    val first = new Values(0, 5, "x")
+    val second = new Values(1, 5, "y")
+
+    oql.createHashIndex("a")
+    oql.insert(first)
+    oql.insert(second)
+
+    query(oql, "a?eq(5)") shouldBe List(0, 1)
+
+    oql.remove(first) shouldBe true
+    oql.remove(first) shouldBe false
+
+    query(oql, "a?eq(5)") shouldBe List(1)
+    oql.elements.size shouldBe 1
+
+    an[IllegalArgumentException] should be thrownBy oql.createHashIndex("a")
+  }
+
+  it should "keep objects without indexable values as candidates" in {
+
+    val oql = create()
+
+    oql.createSortedIndex("a")
+    oql.insertAll(List(new Values(0, 1, "x"), new Values(1, true, "y")))
+
+    // comparing a boolean fails on a scan and must fail with an index as well
+    an[IllegalArgumentException] should be thrownBy query(oql, "a?lt(2)")
+
+    oql.insert(new Values(2, null, "z"))
+
+    query(oql, "b?eq(z)") shouldBe List(2)
+  }
+
+  it should "apply the remaining conjuncts to index candidates only" in {
+
+    val values = List(new Values(0, 1, "a"), new Values(1, 2, null))
+
+    val plain = create()
+    val indexed = create()
+
+    plain.insertAll(values)
+    indexed.insertAll(values)
+    indexed.createHashIndex("a")
+
+    an[IllegalArgumentException] should be thrownBy query(plain, "and(b?lt(x),a?eq(1))")
+
+    query(indexed, "and(b?lt(x),a?eq(1))") shouldBe List(0)
+  }
+}
@@ -5,6 +5,7 @@ import java.time.{OffsetDateTime, OffsetTime}
 import org.parboiled2.ParseError
 import org.scalatest.flatspec._
 import org.scalatest.matchers.should._
+import scala.collection.JavaConverters._
 
 
 class ObjectQueryLanguageTest
@@ -210,6 +211,79 @@ class ObjectQueryLanguageTest
         .resolve("~6")
   }
 
+  it should "be able to resolve large graphs with limited depth and number of nodes" in {
+
+    class Node(val id: Int)
+      extends Model {
+
+      var next: List[Node] = Nil
+    }
+
+    val nodes = (0 until 10000).map(new Node(_))
+
+    // every node points to its successor and back to the first one
+    nodes.sliding(2).foreach(x => x.head.next = List(x.last, nodes.head))
+
+    val oql =
+      new ObjectQueryLanguage(List(nodes.head)) {
+
+        def checkRootKey(obj: AnyRef, key: String): Boolean =
+          obj match {
+
+            case model: Model if (model.id.toString == key) => true
+            case _ => false
+          }
+
+        def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+          (obj, segment) match {
+            case (m: Node, Ast.FieldSegment("next")) => Some(m.next)
+            case _ => None
+          }
+
+        def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+          None
+      }
+
+    oql
+      .doFilter()
+      .doPagination()
+      .doResolution()
+      .resolve("next")
+      .fetchResult()
+      .includes.map(_.asInstanceOf[Model].id) shouldBe (1 until 10000).toList
+
+    oql
+      .doFilter()
+      .doPagination()
+      .doResolution()
+      .resolve("next", 3, Int.MaxValue)
+      .fetchResult()
+      .includes.map(_.asInstanceOf[Model].id) shouldBe List(1, 2, 3)
+
+    oql
+      .doFilter()
+      .doPagination()
+      .doResolution()
+      .resolve("next", Int.MaxValue, 5)
+      .fetchResult()
+      .includes.map(_.asInstanceOf[Model].id) shouldBe List(1, 2, 3, 4, 5)
+
+    oql
+      .doFilter()
+      .doPagination()
+      .doResolution()
+      .resolve("next", 0, Int.MaxValue)
+      .fetchResult()
+      .includes shouldBe Nil
+
+    an[IllegalArgumentException] should be thrownBy
+      oql
+        .doFilter()
+        .doPagination()
+        .doResolution()
+        .resolve("next", -1, Int.MaxValue)
+  }
+
   it should "handle some types correctly" in {
 
     case class Values(id: Int,
@@ -691,6 +765,53 @@ class ObjectQueryLanguageTest
       .initials.map(_.asInstanceOf[Values].id) shouldBe List(2, 4, 0, 3, 5, 1)
   }
 
+  it should "order large sets of objects stable and with partial results" in {
+
+    case class Values(id: Int, a: Int, b: Int)
+      extends Model
+
+    val random = new scala.util.Random(42)
+    val values = (0 until 20000).map(i => Values(i, random.nextInt(100), random.nextInt(10))).toList
+
+    val oql =
+      new ObjectQueryLanguage(values) {
+
+        def checkRootKey(obj: AnyRef, key: String): Boolean =
+          obj match {
+
+            case model: Model if (model.id.toString == key) => true
+            case _ => false
+          }
+
+        def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+          None
+
+        def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+          (obj, segment) match {
+            case (m: Values, Ast.FieldSegment("a")) => Some(m.a)
+            case (m: Values, Ast.FieldSegment("b")) => Some(m.b)
+            case _ => None
+          }
+      }
+
+    val expected = values.sortBy(x => (x.b, -x.a)).map(_.id)
+
+    def query(pagination: ObjectQueryLanguage.Pagination => ObjectQueryLanguage.Pagination): List[Int] =
+      pagination(oql.doFilter().doPagination())
+        .doResolution()
+        .fetchResult()
+        .initials.map(_.asInstanceOf[Values].id)
+
+    query(_.order("(-)a;(+)b")) shouldBe expected
+    query(_.order("(-)a").order("(+)b")) shouldBe expected
+    query(_.order("(-)a;(+)b").limit(10)) shouldBe expected.take(10)
+    query(_.order("(-)a;(+)b").skip(100).limit(10)) shouldBe expected.slice(100, 110)
+    query(_.order("(-)a;(+)b").skip(5).skip(5).limit(15000)) shouldBe expected.slice(10, 15010)
+    query(_.order("(-)a;(+)b").limit(-10)) shouldBe expected.takeRight(10)
+    query(_.order("(-)a;(+)b").skip(-10)) shouldBe expected.dropRight(10)
+    query(_.order("(-)a;(+)b").limit(0)) shouldBe Nil
+  }
+
   it should "be able to truncate the number of resulting objects" in {
 
     case class Values(id: Int)
@@ -777,4 +898,174 @@ class ObjectQueryLanguageTest
       .fetchResult()
       .initials.map(_.asInstanceOf[Values].id) shouldBe List(2)
   }
+
+  it should "reuse compiled plans for equal clauses" in {
+
+    case class Values(id: Int, a: Int)
+      extends Model
+
+    def create(objects: List[AnyRef]): ObjectQueryLanguage =
+      new ObjectQueryLanguage(objects) {
+
+        def checkRootKey(obj: AnyRef, key: String): Boolean =
+          obj match {
+
+            case model: Model if (model.id.toString == key) => true
+            case _ => false
+          }
+
+        def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+          None
+
+        def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+          (obj, segment) match {
+            case (m: Values, Ast.FieldSegment("a")) => Some(m.a)
+            case _ => None
+          }
+      }
+
+    QueryCompiler.compileFilter("a?ge(12)") should be theSameInstanceAs QueryCompiler.compileFilter("a?ge(12)")
+    QueryCompiler.compileOrder("(-)a") should be theSameInstanceAs QueryCompiler.compileOrder("(-)a")
+
+    create(List(Values(0, 10), Values(1, 12), Values(2, 14)))
+      .doFilter()
+      .filter("a?ge(12)")
+      .doPagination()
+      .order("(-)a")
+      .doResolution()
+      .fetchResult()
+      .initials.map(_.asInstanceOf[Values].id) shouldBe List(2, 1)
+
+    create(List(Values(3, 13), Values(4, 11), Values(5, 15)))
+      .doFilter()
+      .filter("a?ge(12)")
+      .doPagination()
+      .order("(-)a")
+      .doResolution()
+      .fetchResult()
+      .initials.map(_.asInstanceOf[Values].id) shouldBe List(5, 3)
+  }
+
+  it should "stream objects lazily with skip and limit" in {
+
+    case class Values(id: Int, a: Int)
+      extends Model
+
+    val oql =
+      new ObjectQueryLanguage(Nil) {
+
+        def checkRootKey(obj: AnyRef, key: String): Boolean =
+          obj match {
+
+            case model: Model if (model.id.toString == key) => true
+            case _ => false
+          }
+
+        def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+          None
+
+        def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+          (obj, segment) match {
+            case (m: Values, Ast.FieldSegment("a")) => Some(m.a)
+            case _ => None
+          }
+      }
+
+    var consumed = 0
+
+    def source(): Iterator[AnyRef] =
+      Iterator.from(0).map {
+        i =>
+
+          consumed += 1
+          Values(i, i % 10)
+      }
+
+    oql.doStream(source())
+      .filter("a?ge(5)")
+      .skip(2)
+      .limit(3)
+      .toList.map(_.asInstanceOf[Values].id) shouldBe List(7, 8, 9)
+
+    consumed shouldBe 10
+
+    val values = (0 until 100).map(i => Values(i, (i * 7) % 13)).toList
+    val expected = values.sortBy(x => -x.a).map(_.id)
+
+    oql.doStream(values.iterator)
+      .order("(-)a")
+      .skip(5)
+      .limit(10)
+      .toList.map(_.asInstanceOf[Values].id) shouldBe expected.slice(5, 15)
+
+    oql.doStream(values.asJava.stream())
+      .order("(-)a")
+      .toList.map(_.asInstanceOf[Values].id) shouldBe expected
+
+    oql.doStream(values.iterator)
+      .skip(-90)
+      .toList.map(_.asInstanceOf[Values].id) shouldBe (0 until 10).toList
+
+    oql.doStream(values.iterator)
+      .limit(-3)
+      .toList.map(_.asInstanceOf[Values].id) shouldBe List(97, 98, 99)
+  }
+
+  it should "filter and resolve in parallel with preserved order" in {
+
+    case class Values(id: Int, a: Int, var next: List[Values])
+      extends Model
+
+    val values = (0 until 50000).map(i => Values(i, i % 7, Nil)).toList
+
+    values.sliding(3).foreach(x => x.head.next = x.tail)
+
+    def create(threadSafe: Boolean, threshold: Option[Int]): ObjectQueryLanguage =
+      new ObjectQueryLanguage(values) {
+
+        override def isThreadSafe: Boolean =
+          threadSafe
+
+        override def parallelism: Option[ObjectQueryLanguage.Parallelism] =
+          threshold.map(x => ObjectQueryLanguage.Parallelism(threshold = x))
+
+        def checkRootKey(obj: AnyRef, key: String): Boolean =
+          obj match {
+
+            case model: Model if (model.id.toString == key) => true
+            case _ => false
+          }
+
+        def getObject(obj: AnyRef, segment: Ast.Segment): Option[AnyRef] =
+          (obj, segment) match {
+            case (m: Values, Ast.FieldSegment("next")) => Some(m.next)
+            case _ => None
+          }
+
+        def getValue(obj: AnyRef, segment: Ast.Segment): Option[Any] =
+          (obj, segment) match {
+            case (m: Values, Ast.FieldSegment("a")) => Some(m.a)
+            case _ => None
+          }
+      }
+
+    def query(oql: ObjectQueryLanguage): (List[Int], List[Int]) = {
+
+      val result =
+        oql
+          .doFilter()
+          .filter("a?eq(3)")
+          .doPagination()
+          .limit(100)
+          .doResolution()
+          .resolve("next")
+          .fetchResult()
+
+      (result.initials.map(_.asInstanceOf[Values].id), result.includes.map(_.asInstanceOf[Values].id))
+    }
+
+    query(create(threadSafe = true, Some(16))) shouldBe query(create(threadSafe = false, None))
+
+    an[IllegalStateException] should be thrownBy query(create(threadSafe = false, Some(16)))
+  }
 }
@@ -0,0 +1,111 @@
+package systems.opalia.commons.scripting.oql
+
+import java.util
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class ReflectiveObjectQueryLanguageTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  case class Author(id: Int, firstName: String, nickname: Option[String])
+
+  case class Book(id: Int, title: String, authors: List[Author], details: util.Map[String, AnyRef])
+
+  class Publisher(id: Int, name: String, books: Set[Book]) {
+
+    def getId: Int =
+      id
+
+    def getName: String =
+      name
+
+    def getBooks: Set[Book] =
+      books
+  }
+
+  def details(pages: Int): util.Map[String, AnyRef] = {
+
+    val map = new util.HashMap[String, AnyRef]()
+
+    map.put("pages", Int.box(pages))
+    map
+  }
+
+  val alice = Author(1, "Alice", Some("ali"))
+  val bob = Author(2, "Bob", None)
+  val first = Book(10, "First", List(alice), details(120))
+  val second = Book(11, "Second", List(alice, bob), details(300))
+  val publisher = new Publisher(100, "Press", Set(first, second))
+
+  it should "resolve case class fields, bean properties and map entries" in {
+
+    val oql = new ReflectiveObjectQueryLanguage(List(first, second))
+
+    oql
+      .doFilter()
+      .filter("details.pages?gt(200)")
+      .doPagination()
+      .doResolution()
+      .fetchResult()
+      .initials shouldBe List(second)
+
+    oql
+      .doFilter()
+      .filter("~2!authors.first_name?exists")
+      .doPagination()
+      .doResolution()
+      .fetchResult()
+      .initials shouldBe List(second)
+
+    oql
+      .doFilter()
+      .doPagination()
+      .doResolution()
+      .resolve("~11!(authors)")
+      .fetchResult()
+      .includes shouldBe List(alice, bob)
+
+    new ReflectiveObjectQueryLanguage(List(publisher))
+      .doFilter()
+      .filter("name?eq(Press)")
+      .doPagination()
+      .doResolution()
+      .resolve("books")
+      .fetchResult()
+      .includes.toSet shouldBe Set(first, second)
+  }
+
+  it should "unwrap options and treat missing values as absent" in {
+
+    val oql = new ReflectiveObjectQueryLanguage(List(alice, bob))
+
+    oql
+      .doFilter()
+      .filter("nickname?exists")
+      .doPagination()
+      .doResolution()
+      .fetchResult()
+      .initials shouldBe List(alice)
+
+    oql
+      .doFilter()
+      .filter("not(unknown?exists)")
+      .doPagination()
+      .doResolution()
+      .fetchResult()
+      .initials shouldBe List(alice, bob)
+  }
+
+  it should "use another root key field if requested" in {
+
+    new ReflectiveObjectQueryLanguage(List(alice, bob), "firstName")
+      .doFilter()
+      .filter("~Bob!(id?eq(0))")
+      .doPagination()
+      .doResolution()
+      .fetchResult()
+      .initials shouldBe List(alice)
+  }
+}
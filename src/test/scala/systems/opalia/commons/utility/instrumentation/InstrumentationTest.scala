@@ -0,0 +1,129 @@
+package systems.opalia.commons.utility.instrumentation
+
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+
+
+class InstrumentationTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  it should "compute percentiles with bounded relative error" in {
+
+    val histogram = new Histogram()
+
+    (1L to 100000L).foreach(histogram.record)
+
+    histogram.count shouldBe 100000
+    histogram.minimum shouldBe 1
+    histogram.maximum shouldBe 100000
+    histogram.mean shouldBe 50000.5
+
+    List(50d -> 50000L, 99d -> 99000L, 99.9d -> 99900L).foreach {
+      case (p, expected) =>
+
+        histogram.percentile(p).toDouble shouldBe expected.toDouble +- (expected / 100d)
+    }
+
+    histogram.percentile(100) shouldBe 100000
+    histogram.percentile(0) shouldBe 1
+  }
+
+  it should "count small values exactly and clamp huge values" in {
+
+    val histogram = new Histogram()
+
+    histogram.record(0)
+    histogram.record(3, 2)
+    histogram.record(255)
+    histogram.record(Long.MaxValue)
+
+    histogram.percentile(20) shouldBe 0
+    histogram.percentile(60) shouldBe 3
+    histogram.percentile(80) shouldBe 255
+    histogram.maximum shouldBe Long.MaxValue
+    histogram.sumOfValues shouldBe Long.MaxValue
+
+    histogram.record(Long.MaxValue / 2, 3)
+    histogram.record(1)
+
+    histogram.sumOfValues shouldBe Long.MaxValue
+    histogram.mean should be > 0d
+
+    an[IllegalArgumentException] should be thrownBy histogram.record(-1)
+    an[IllegalArgumentException] should be thrownBy histogram.percentile(101)
+  }
+
+  it should "merge per-thread histograms on snapshot" in {
+
+    val recorder = new Recorder()
+
+    val threads =
+      (0 until 4).map {
+        i =>
+
+          new Thread(() => (1 to 1000).foreach(x => recorder.record(x + i * 1000)))
+      }
+
+    threads.foreach(_.start())
+    threads.foreach(_.join())
+
+    val snapshot = recorder.snapshot()
+
+    snapshot.count shouldBe 4000
+    snapshot.minimum shouldBe 1
+    snapshot.maximum shouldBe 4000
+
+    recorder.snapshotAndReset().count shouldBe 4000
+    recorder.snapshot().count shouldBe 0
+  }
+
+  it should "retain values but not histograms of terminated threads" in {
+
+    val recorder = new Recorder()
+
+    for (i <- 0 until 50) {
+
+      val thread = new Thread(() => recorder.record(i))
+
+      thread.start()
+      thread.join()
+    }
+
+    recorder.record(100)
+
+    recorder.threads shouldBe 1
+    recorder.snapshot().count shouldBe 51
+    recorder.snapshot().maximum shouldBe 100
+    recorder.snapshotAndReset().count shouldBe 51
+    recorder.snapshot().count shouldBe 0
+  }
+
+  it should "record timers only if enabled" in {
+
+    val timer = Instrumentation.timer("test.timer")
+
+    Instrumentation.disable()
+
+    timer.time(42) shouldBe 42
+    timer.snapshot().latency.count shouldBe 0
+
+    Instrumentation.enable(trackCpuTime = true, trackAllocations = true)
+
+    try {
+
+      timer.time(new Array[Byte](1024 * 1024).length) shouldBe 1024 * 1024
+
+      val snapshot = timer.snapshotAndReset()
+
+      snapshot.latency.count shouldBe 1
+      snapshot.cpuTime.count should be <= 1L
+      snapshot.allocatedBytes.count should be <= 1L
+      Instrumentation.timers.get("test.timer") shouldBe Some(timer)
+
+    } finally {
+
+      Instrumentation.disable()
+    }
+  }
+}